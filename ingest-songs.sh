@@ -0,0 +1,12 @@
+#!/bin/bash
+
+echo "-----BEGIN INGESTING TEST DATA-----"
+
+# Streams ./MOCK_DATA.json into the running song microservice, which adds the songs to both the
+# song and profile databases. The mongo shell ObjectId("...") ids are rewritten to extended JSON.
+sed -E 's/ObjectId\(("[0-9a-fA-F]{24}")\)/{"$oid": \1}/' "./MOCK_DATA.json" \
+  | curl -sS -X POST -H "Content-Type: application/json" --data-binary @- "http://localhost:3001/addSongs" \
+  || (echo "[ERROR] Could not ingest test data" && exit 1)
+
+echo
+echo "-----END INGESTING TEST DATA-----"
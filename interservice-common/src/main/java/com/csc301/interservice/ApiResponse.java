@@ -0,0 +1,101 @@
+package com.csc301.interservice;
+
+import java.io.IOException;
+import org.springframework.http.HttpStatus;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * Body of every JSON route: the path that was called, a message, the status and the data of the
+ * result. It is written straight to the response by Jackson, field by field, instead of being
+ * copied into a map first. The path is left out when api.response.includePath is false.
+ *
+ * Shared by both microservices, each of which creates it with its own ApiResponseFactory.
+ */
+public class ApiResponse implements JsonSerializable {
+
+  private final String path;
+  private String message;
+  private HttpStatus status;
+  private DbQueryExecResult result;
+  private Object data;
+
+  public ApiResponse(String path) {
+    this.path = path;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public HttpStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * Sets the status of the response from the result of a query, keeping the data only if the
+   * query succeeded, the same as Utils.setResponseStatus of each microservice
+   *
+   * @param dbQueryExecResult: The result of the query
+   * @param data: The data of the result
+   */
+  public void setStatus(DbQueryExecResult dbQueryExecResult, Object data) {
+    result = dbQueryExecResult;
+    switch (dbQueryExecResult) {
+      case QUERY_OK:
+        status = HttpStatus.OK;
+        this.data = data;
+        break;
+      case QUERY_ERROR_NOT_FOUND:
+        status = HttpStatus.NOT_FOUND;
+        break;
+      case QUERY_ERROR_GENERIC:
+        status = HttpStatus.INTERNAL_SERVER_ERROR;
+        break;
+    }
+  }
+
+  public DbQueryExecResult getResult() {
+    return result;
+  }
+
+  public Object getData() {
+    return data;
+  }
+
+  public void setData(Object data) {
+    this.data = data;
+  }
+
+  @Override
+  public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+    gen.writeStartObject();
+    if (path != null) {
+      gen.writeStringField("path", path);
+    }
+    gen.writeStringField("message", message);
+    if (status != null) {
+      gen.writeStringField("status", status.name());
+    }
+    if (data != null) {
+      serializers.defaultSerializeField("data", data, gen);
+    }
+    gen.writeEndObject();
+  }
+
+  @Override
+  public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+      TypeSerializer typeSer) throws IOException {
+    serialize(gen, serializers);
+  }
+}
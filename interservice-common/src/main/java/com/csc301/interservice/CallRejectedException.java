@@ -0,0 +1,17 @@
+package com.csc301.interservice;
+
+import java.io.IOException;
+
+/**
+ * Thrown by InterServiceClient when the bulkhead or circuit breaker of the downstream turns a call
+ * away. Unlike other IOExceptions, it means the request was never sent, so the downstream cannot
+ * have acted on it.
+ */
+public class CallRejectedException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CallRejectedException(String message) {
+    super(message);
+  }
+}
@@ -1,4 +1,4 @@
-package com.csc301.songmicroservice;
+package com.csc301.interservice;
 
 public enum DbQueryExecResult {
 	QUERY_OK,
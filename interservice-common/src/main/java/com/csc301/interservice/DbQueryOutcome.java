@@ -0,0 +1,10 @@
+package com.csc301.interservice;
+
+/**
+ * What a data access method of either microservice returns: the DbQueryExecResult of the query,
+ * which the TimingAspect tags the call with.
+ */
+public interface DbQueryOutcome {
+
+  DbQueryExecResult getdbQueryExecResult();
+}
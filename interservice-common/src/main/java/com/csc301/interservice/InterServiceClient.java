@@ -0,0 +1,498 @@
+package com.csc301.interservice;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import brave.http.HttpTracing;
+import brave.okhttp3.TracingInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Client for calls between the song and profile microservices, shared by both and registered in
+ * each with @Import. Every downstream service has its base url, a bulkhead limiting how many calls
+ * to it can be in flight, and a circuit breaker that fails calls straight away after repeated
+ * failures until the service has had time to recover. Every route has its own timeout and latency
+ * and error counters. Responses are always read and closed. Calls can also be made without
+ * waiting, in which case the response is read on a thread of the client.
+ *
+ * Every call is also timed as interservice.client.requests, tagged with the downstream, the route
+ * and the outcome: OK, CLIENT_ERROR or SERVER_ERROR by the status of the response, IO_ERROR if no
+ * response arrived, REJECTED if the bulkhead or circuit breaker turned the call away, or CANCELLED
+ * if the caller gave up on a call made without waiting, which does not count against the circuit
+ * breaker. Calls carry the trace context of the current request, and each one is recorded as a
+ * client span. Calls the bulkhead or circuit breaker turn away fail with CallRejectedException,
+ * so callers can tell that the request was never sent.
+ *
+ * Downstreams are configured with interservice.{name}.* properties, and route timeouts with
+ * interservice.{name}.routes.{route}.timeoutMs, where the route is the first segment of the path.
+ */
+@Component
+public class InterServiceClient {
+
+  private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+  private static final MediaType BINARY = MediaType.get(SongWireCodec.CONTENT_TYPE);
+
+  public static final String TIMER = "interservice.client.requests";
+
+  private final Environment env;
+  private final MeterRegistry registry;
+  private final OkHttpClient client;
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private final ConcurrentHashMap<String, Downstream> downstreams =
+      new ConcurrentHashMap<String, Downstream>();
+  private final ConcurrentHashMap<String, RouteStats> routes =
+      new ConcurrentHashMap<String, RouteStats>();
+
+  @Autowired
+  public InterServiceClient(Environment env, MeterRegistry registry, HttpTracing httpTracing) {
+    this.env = env;
+    this.registry = registry;
+
+    // Asynchronous calls run on the threads of the dispatcher, which carry on the trace context of
+    // the request that made the call. Keep enough idle connections for every concurrent call to
+    // reuse one
+    ThreadPoolExecutor callExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), runnable -> {
+          Thread thread = new Thread(runnable, "interservice-dispatcher");
+          thread.setDaemon(true);
+          return thread;
+        });
+    Dispatcher dispatcher = new Dispatcher(
+        httpTracing.tracing().currentTraceContext().executorService(callExecutor));
+    dispatcher.setMaxRequests(env.getProperty("interservice.maxRequests", Integer.class, 64));
+    dispatcher.setMaxRequestsPerHost(
+        env.getProperty("interservice.maxRequestsPerHost", Integer.class, 32));
+    this.client = new OkHttpClient.Builder().dispatcher(dispatcher)
+        .connectionPool(new ConnectionPool(
+            env.getProperty("interservice.maxIdleConnections", Integer.class, 32),
+            env.getProperty("interservice.keepAliveMs", Long.class, 300000L),
+            TimeUnit.MILLISECONDS))
+        .connectTimeout(env.getProperty("interservice.connectTimeoutMs", Long.class, 1000L),
+            TimeUnit.MILLISECONDS)
+        .addNetworkInterceptor(TracingInterceptor.create(httpTracing))
+        .build();
+  }
+
+  @PreDestroy
+  public void stop() {
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+  }
+
+  /**
+   * Sends a PUT to another microservice
+   *
+   * @param downstream: The name of the microservice
+   * @param path: The path and query of the route
+   * @param body: Sent as JSON, or null for an empty body
+   * @return Map: The JSON response body
+   */
+  public Map<String, Object> put(String downstream, String path, Object body) throws IOException {
+    return call(downstream, "PUT", path, body);
+  }
+
+  /**
+   * Sends a request with a JSON body to another microservice through its bulkhead and circuit
+   * breaker
+   *
+   * @param downstream: The name of the microservice
+   * @param method: The HTTP method
+   * @param path: The path and query of the route
+   * @param body: Sent as JSON, or null for an empty body
+   * @return Map: The JSON response body
+   * @throws IOException if the call failed, timed out or was rejected
+   */
+  public Map<String, Object> call(String downstream, String method, String path, Object body)
+      throws IOException {
+    RequestBody requestBody = body == null ? RequestBody.create(new byte[0], null)
+        : RequestBody.create(mapper.writeValueAsBytes(body), JSON);
+    return execute(downstream, method, path, requestBody,
+        response -> mapper.readValue(response.body().byteStream(), Map.class));
+  }
+
+  /**
+   * Sends a request with a binary body to another microservice through its bulkhead and circuit
+   * breaker
+   *
+   * @param downstream: The name of the microservice
+   * @param method: The HTTP method
+   * @param path: The path and query of the route
+   * @param body: The encoded request
+   * @return byte[]: The encoded response body
+   * @throws IOException if the call failed, timed out, was rejected or answered with an error
+   *         status
+   */
+  public byte[] callBinary(String downstream, String method, String path, byte[] body)
+      throws IOException {
+    return execute(downstream, method, path, RequestBody.create(body, BINARY), response -> {
+      if (!response.isSuccessful()) {
+        throw new IOException(downstream + " returned " + response.code() + " for " + path);
+      }
+      return response.body().bytes();
+    });
+  }
+
+  /**
+   * Sends a request with a binary body to another microservice through its bulkhead and circuit
+   * breaker without waiting for the response. Cancelling the returned future gives up on the call.
+   *
+   * @param downstream: The name of the microservice
+   * @param method: The HTTP method
+   * @param path: The path and query of the route
+   * @param body: The encoded request
+   * @return CompletableFuture: The encoded response body, or an IOException if the call failed,
+   *         timed out, was rejected or answered with an error status
+   */
+  public CompletableFuture<byte[]> callBinaryAsync(String downstream, String method, String path,
+      byte[] body) {
+    return executeAsync(downstream, method, path, RequestBody.create(body, BINARY), response -> {
+      if (!response.isSuccessful()) {
+        throw new IOException(downstream + " returned " + response.code() + " for " + path);
+      }
+      return response.body().bytes();
+    });
+  }
+
+  /**
+   * Sends a request with a JSON body to another microservice through its bulkhead and circuit
+   * breaker without waiting for the response. Cancelling the returned future gives up on the call.
+   *
+   * @param downstream: The name of the microservice
+   * @param method: The HTTP method
+   * @param path: The path and query of the route
+   * @param body: Sent as JSON, or null for an empty body
+   * @return CompletableFuture: The JSON response body, or an IOException if the call failed, timed
+   *         out or was rejected
+   */
+  public CompletableFuture<Map<String, Object>> callAsync(String downstream, String method,
+      String path, Object body) {
+    RequestBody requestBody;
+    try {
+      requestBody = body == null ? RequestBody.create(new byte[0], null)
+          : RequestBody.create(mapper.writeValueAsBytes(body), JSON);
+    } catch (IOException e) {
+      CompletableFuture<Map<String, Object>> failed = new CompletableFuture<Map<String, Object>>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+    return executeAsync(downstream, method, path, requestBody,
+        response -> mapper.readValue(response.body().byteStream(), Map.class));
+  }
+
+  private <T> T execute(String downstream, String method, String path, RequestBody requestBody,
+      ResponseReader<T> reader) throws IOException {
+    Downstream target = downstreams.computeIfAbsent(downstream, Downstream::new);
+    RouteStats stats = routeStats(downstream, route(path));
+    long start = System.nanoTime();
+    admit(target, stats, start);
+
+    boolean failed = true;
+    String outcome = "IO_ERROR";
+    try {
+      try (Response response = newCall(target, method, path, requestBody).execute()) {
+        failed = response.code() >= 500;
+        outcome = outcome(response);
+        return reader.read(response);
+      }
+    } finally {
+      finish(target, stats, start, failed, outcome);
+    }
+  }
+
+  private <T> CompletableFuture<T> executeAsync(String downstream, String method, String path,
+      RequestBody requestBody, ResponseReader<T> reader) {
+    CompletableFuture<T> future = new CompletableFuture<T>();
+    Downstream target = downstreams.computeIfAbsent(downstream, Downstream::new);
+    RouteStats stats = routeStats(downstream, route(path));
+    long start = System.nanoTime();
+    try {
+      admit(target, stats, start);
+    } catch (IOException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    Call call = newCall(target, method, path, requestBody);
+    call.enqueue(new Callback() {
+      @Override
+      public void onFailure(Call call, IOException e) {
+        if (call.isCanceled()) {
+          // Given up on by the caller, which says nothing about the health of the service
+          cancelled(target, stats, start);
+        } else {
+          finish(target, stats, start, true, "IO_ERROR");
+        }
+        future.completeExceptionally(e);
+      }
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        try (Response closed = response) {
+          future.complete(reader.read(response));
+        } catch (Exception e) {
+          future.completeExceptionally(e);
+        } finally {
+          finish(target, stats, start, response.code() >= 500, outcome(response));
+        }
+      }
+    });
+    future.whenComplete((value, e) -> {
+      if (future.isCancelled()) {
+        call.cancel();
+      }
+    });
+    return future;
+  }
+
+  private RouteStats routeStats(String downstream, String route) {
+    RouteStats stats = routes.get(downstream + " " + route);
+    if (stats == null) {
+      stats = routes.computeIfAbsent(downstream + " " + route,
+          key -> new RouteStats(downstream, route));
+    }
+    return stats;
+  }
+
+  // Fails fast instead of queueing behind a service that is down or overloaded
+  private void admit(Downstream target, RouteStats stats, long start) throws IOException {
+    if (!target.breaker.allowCall()) {
+      stats.reject(start);
+      throw new CallRejectedException("Circuit open for " + target.name);
+    }
+    if (!target.bulkhead.tryAcquire()) {
+      target.breaker.release();
+      stats.reject(start);
+      throw new CallRejectedException("Too many concurrent calls to " + target.name);
+    }
+  }
+
+  private void finish(Downstream target, RouteStats stats, long start, boolean failed,
+      String outcome) {
+    stats.record(System.nanoTime() - start, failed, outcome);
+    target.bulkhead.release();
+    target.breaker.record(failed);
+  }
+
+  private void cancelled(Downstream target, RouteStats stats, long start) {
+    stats.record(System.nanoTime() - start, false, "CANCELLED");
+    target.bulkhead.release();
+    target.breaker.release();
+  }
+
+  private Call newCall(Downstream target, String method, String path, RequestBody requestBody) {
+    Request request =
+        new Request.Builder().url(target.url + path).method(method, requestBody).build();
+    Call call = client.newCall(request);
+    call.timeout().timeout(timeoutMs(target.name, route(path)), TimeUnit.MILLISECONDS);
+    return call;
+  }
+
+  // Server errors count against the breaker, other statuses are answers from a healthy service
+  private static String outcome(Response response) {
+    return response.code() >= 500 ? "SERVER_ERROR"
+        : response.code() >= 400 ? "CLIENT_ERROR" : "OK";
+  }
+
+  // Reads the body of a response before it is closed
+  private interface ResponseReader<T> {
+    T read(Response response) throws IOException;
+  }
+
+  // The first segment of the path, which names the route
+  private static String route(String path) {
+    String route = path.startsWith("/") ? path.substring(1) : path;
+    int end = route.length();
+    for (char separator : new char[] {'/', '?'}) {
+      int index = route.indexOf(separator);
+      if (index >= 0 && index < end) {
+        end = index;
+      }
+    }
+    return route.substring(0, end);
+  }
+
+  private long timeoutMs(String downstream, String route) {
+    long timeoutMs =
+        env.getProperty("interservice." + downstream + ".timeoutMs", Long.class, 2000L);
+    return env.getProperty("interservice." + downstream + ".routes." + route + ".timeoutMs",
+        Long.class, timeoutMs);
+  }
+
+  /**
+   * Gets the state of every downstream and the counters of every route called so far
+   *
+   * @return Map: The downstreams and routes by name
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> downstreamStats = new HashMap<String, Object>();
+    for (Downstream downstream : downstreams.values()) {
+      Map<String, Object> state = new HashMap<String, Object>();
+      state.put("url", downstream.url);
+      state.put("circuit", downstream.breaker.getState());
+      state.put("inFlight", downstream.maxConcurrentCalls - downstream.bulkhead.availablePermits());
+      downstreamStats.put(downstream.name, state);
+    }
+
+    Map<String, Object> routeStats = new HashMap<String, Object>();
+    for (Map.Entry<String, RouteStats> entry : routes.entrySet()) {
+      routeStats.put(entry.getKey(), entry.getValue().toJson());
+    }
+
+    Map<String, Object> statsMap = new HashMap<String, Object>();
+    statsMap.put("downstreams", downstreamStats);
+    statsMap.put("routes", routeStats);
+    statsMap.put("idleConnections", client.connectionPool().idleConnectionCount());
+    statsMap.put("connections", client.connectionPool().connectionCount());
+    return statsMap;
+  }
+
+  // Base url, bulkhead and circuit breaker of one downstream microservice
+  private final class Downstream {
+    private final String name;
+    private final String url;
+    private final int maxConcurrentCalls;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker breaker;
+
+    private Downstream(String name) {
+      String prefix = "interservice." + name + ".";
+      this.name = name;
+      this.url = env.getRequiredProperty(prefix + "url");
+      this.maxConcurrentCalls = env.getProperty(prefix + "maxConcurrentCalls", Integer.class, 32);
+      this.bulkhead = new Semaphore(maxConcurrentCalls);
+      this.breaker =
+          new CircuitBreaker(env.getProperty(prefix + "failureThreshold", Integer.class, 5),
+              env.getProperty(prefix + "openMs", Long.class, 5000L));
+    }
+  }
+
+  /**
+   * Opens after a number of failures in a row, rejecting calls until the open time has passed.
+   * Then a single trial call is let through, which closes the breaker if it succeeds and opens it
+   * again if it fails.
+   */
+  static final class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openMs;
+
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, long openMs) {
+      this.failureThreshold = failureThreshold;
+      this.openMs = openMs;
+    }
+
+    synchronized boolean allowCall() {
+      if (consecutiveFailures < failureThreshold) {
+        return true;
+      }
+      if (trialInFlight || System.currentTimeMillis() < openUntil) {
+        return false;
+      }
+      trialInFlight = true;
+      return true;
+    }
+
+    // Gives back a call that was allowed but never made
+    synchronized void release() {
+      trialInFlight = false;
+    }
+
+    synchronized void record(boolean failed) {
+      trialInFlight = false;
+      if (!failed) {
+        consecutiveFailures = 0;
+        return;
+      }
+      consecutiveFailures++;
+      if (consecutiveFailures >= failureThreshold) {
+        openUntil = System.currentTimeMillis() + openMs;
+      }
+    }
+
+    synchronized String getState() {
+      if (consecutiveFailures < failureThreshold) {
+        return "CLOSED";
+      }
+      return trialInFlight || System.currentTimeMillis() >= openUntil ? "HALF_OPEN" : "OPEN";
+    }
+  }
+
+  // Latency and error counters of one route, and its timer for each outcome
+  private final class RouteStats {
+    private final String downstream;
+    private final String route;
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private RouteStats(String downstream, String route) {
+      this.downstream = downstream;
+      this.route = route;
+    }
+
+    private void reject(long start) {
+      rejected.incrementAndGet();
+      timer("REJECTED").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void record(long nanos, boolean failed, String outcome) {
+      timer(outcome).record(nanos, TimeUnit.NANOSECONDS);
+      calls.incrementAndGet();
+      if (failed) {
+        errors.incrementAndGet();
+      }
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private Timer timer(String outcome) {
+      Timer timer = timers.get(outcome);
+      if (timer == null) {
+        timer = timers.computeIfAbsent(outcome, key -> Timer.builder(TIMER)
+            .tag("downstream", downstream).tag("route", route).tag("outcome", key)
+            .register(registry));
+      }
+      return timer;
+    }
+
+    private Map<String, Object> toJson() {
+      long count = calls.get();
+      Map<String, Object> json = new HashMap<String, Object>();
+      json.put("calls", count);
+      json.put("errors", errors.get());
+      json.put("rejected", rejected.get());
+      json.put("meanMs", count == 0 ? 0 : totalNanos.get() / count / 1000000.0);
+      json.put("maxMs", maxNanos.get() / 1000000.0);
+      return json;
+    }
+  }
+}
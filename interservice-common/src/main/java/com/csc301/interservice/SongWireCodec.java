@@ -0,0 +1,281 @@
+package com.csc301.interservice;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the internal calls the profile microservice makes to the song microservice
+ * most often. Song ids are sent as their 12 raw bytes, strings are length prefixed, and responses
+ * carry a single status byte instead of the path, message and status of the JSON routes.
+ *
+ * Title lookup request: int count, then count song ids.
+ * Title lookup response: status, int count, then count pairs of song id and UTF title.
+ * Favourites update request: song id, boolean shouldDecrement, then an optional UTF request id.
+ * Favourites update response: status, then the long favourites count if the status is OK.
+ *
+ * Shared by both microservices, each of which turns results into its own DbQueryStatus.
+ */
+public final class SongWireCodec {
+
+  public static final String CONTENT_TYPE = "application/octet-stream";
+
+  private static final int ID_BYTES = 12;
+
+  private SongWireCodec() {}
+
+  // The status of a response, sent as its ordinal
+  public enum Status {
+    OK, NOT_FOUND, ERROR
+  }
+
+  /**
+   * Encodes the ids of the songs to look up. Ids that are not valid song ids are left out, since
+   * no song can have them
+   *
+   * @param songIds: The ids of the songs
+   * @return byte[]: The request
+   */
+  public static byte[] encodeTitlesRequest(List<String> songIds) throws IOException {
+    List<String> validIds = new ArrayList<String>();
+    for (String songId : songIds) {
+      if (isValidId(songId)) {
+        validIds.add(songId);
+      }
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + validIds.size() * ID_BYTES);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(validIds.size());
+    for (String songId : validIds) {
+      writeId(out, songId);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes the ids of the songs to look up
+   *
+   * @param request: The request
+   * @return List: The ids of the songs
+   */
+  public static List<String> decodeTitlesRequest(byte[] request) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+    int count = readCount(in, ID_BYTES);
+    List<String> songIds = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      songIds.add(readId(in));
+    }
+    return songIds;
+  }
+
+  /**
+   * Encodes the result of a title lookup
+   *
+   * @param status: The status of the lookup
+   * @param titles: The map of song id to title, only sent if the status is OK
+   * @return byte[]: The response
+   */
+  public static byte[] encodeTitlesResponse(Status status, Map<String, String> titles)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(status.ordinal());
+    if (status == Status.OK) {
+      out.writeInt(titles.size());
+      for (Map.Entry<String, String> title : titles.entrySet()) {
+        writeId(out, title.getKey());
+        out.writeUTF(title.getValue() == null ? "" : title.getValue());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes the result of a title lookup
+   *
+   * @param response: The response
+   * @return Result: The status, with a map of song id to title if it is OK
+   */
+  public static Result<Map<String, String>> decodeTitlesResponse(byte[] response)
+      throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(response));
+    Status status = readStatus(in);
+    if (status != Status.OK) {
+      return new Result<Map<String, String>>(status, null);
+    }
+    int count = readCount(in, ID_BYTES + 2);
+    Map<String, String> titles = new HashMap<String, String>(count * 2);
+    for (int i = 0; i < count; i++) {
+      titles.put(readId(in), in.readUTF());
+    }
+    return new Result<Map<String, String>>(status, titles);
+  }
+
+  /**
+   * Encodes a favourites count update
+   *
+   * @param songId: The id of the song, which must be a valid song id
+   * @param shouldDecrement: Whether to decrement instead of increment
+   * @param requestId: The id the song microservice applies the update once for, or null
+   * @return byte[]: The request
+   */
+  public static byte[] encodeFavouritesRequest(String songId, boolean shouldDecrement,
+      String requestId) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(ID_BYTES + 40);
+    DataOutputStream out = new DataOutputStream(bytes);
+    writeId(out, songId);
+    out.writeBoolean(shouldDecrement);
+    if (requestId != null) {
+      out.writeUTF(requestId);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes a favourites count update
+   *
+   * @param request: The request
+   * @return FavouritesUpdate: The song id, whether to decrement and the request id if sent
+   */
+  public static FavouritesUpdate decodeFavouritesRequest(byte[] request) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+    String songId = readId(in);
+    boolean shouldDecrement = in.readBoolean();
+    String requestId = in.available() > 0 ? in.readUTF() : null;
+    return new FavouritesUpdate(songId, shouldDecrement,
+        requestId == null || requestId.isEmpty() ? null : requestId);
+  }
+
+  /**
+   * Encodes the result of a favourites count update
+   *
+   * @param status: The status of the update
+   * @param count: The new favourites count, only sent if the status is OK
+   * @return byte[]: The response
+   */
+  public static byte[] encodeFavouritesResponse(Status status, long count) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(status.ordinal());
+    if (status == Status.OK) {
+      out.writeLong(count);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes the result of a favourites count update
+   *
+   * @param response: The response
+   * @return Result: The status, with the new count if it is OK
+   */
+  public static Result<Long> decodeFavouritesResponse(byte[] response) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(response));
+    Status status = readStatus(in);
+    return new Result<Long>(status, status == Status.OK ? in.readLong() : null);
+  }
+
+  /**
+   * Checks whether a string is a song id, 24 hex digits
+   *
+   * @param songId: The string to check
+   * @return boolean: Whether it can be encoded as a song id
+   */
+  public static boolean isValidId(String songId) {
+    if (songId == null || songId.length() != ID_BYTES * 2) {
+      return false;
+    }
+    for (int i = 0; i < songId.length(); i++) {
+      if (Character.digit(songId.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeId(DataOutputStream out, String songId) throws IOException {
+    if (!isValidId(songId)) {
+      throw new IOException("Invalid song id " + songId);
+    }
+    for (int i = 0; i < ID_BYTES; i++) {
+      out.writeByte((Character.digit(songId.charAt(i * 2), 16) << 4)
+          | Character.digit(songId.charAt(i * 2 + 1), 16));
+    }
+  }
+
+  private static String readId(DataInputStream in) throws IOException {
+    char[] hex = new char[ID_BYTES * 2];
+    for (int i = 0; i < ID_BYTES; i++) {
+      int value = in.readUnsignedByte();
+      hex[i * 2] = Character.forDigit(value >> 4, 16);
+      hex[i * 2 + 1] = Character.forDigit(value & 0xF, 16);
+    }
+    return new String(hex);
+  }
+
+  // Reads a count, rejecting counts the rest of the message is too short to hold
+  private static int readCount(DataInputStream in, int minBytesEach) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || (long) count * minBytesEach > in.available()) {
+      throw new IOException("Invalid count " + count);
+    }
+    return count;
+  }
+
+  // Statuses this version does not know are read as errors
+  private static Status readStatus(DataInputStream in) throws IOException {
+    int status = in.readUnsignedByte();
+    return status < Status.values().length ? Status.values()[status] : Status.ERROR;
+  }
+
+  // Decoded response: its status and, if the status is OK, its data
+  public static final class Result<T> {
+    private final Status status;
+    private final T data;
+
+    private Result(Status status, T data) {
+      this.status = status;
+      this.data = data;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public T getData() {
+      return data;
+    }
+  }
+
+  // Decoded favourites count update
+  public static final class FavouritesUpdate {
+    private final String songId;
+    private final boolean shouldDecrement;
+    private final String requestId;
+
+    private FavouritesUpdate(String songId, boolean shouldDecrement, String requestId) {
+      this.songId = songId;
+      this.shouldDecrement = shouldDecrement;
+      this.requestId = requestId;
+    }
+
+    public String getSongId() {
+      return songId;
+    }
+
+    public boolean getShouldDecrement() {
+      return shouldDecrement;
+    }
+
+    public String getRequestId() {
+      return requestId;
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.csc301.interservice;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import brave.Tags;
+import brave.handler.MutableSpan;
+import brave.handler.MutableSpanBytesEncoder;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+
+/**
+ * Writes every finished span to a local file, one Zipkin v2 JSON span per line. Spans are encoded
+ * on the thread that finishes them and written by a background thread, so requests never wait on
+ * the disk. When the queue is full, spans are dropped and counted rather than blocking.
+ *
+ * Spans go to tracing.file, by default traces/{tracing.serviceName}.jsonl. Registered in each
+ * service by TracingConfig. To load the spans into Zipkin, join the lines into a JSON array and
+ * upload it.
+ */
+@Component
+public class SpanFileExporter extends SpanHandler {
+
+  private static final Logger log = LoggerFactory.getLogger(SpanFileExporter.class);
+
+  private static final MutableSpanBytesEncoder ENCODER =
+      MutableSpanBytesEncoder.zipkinJsonV2(Tags.ERROR);
+
+  private final File file;
+  private final BlockingQueue<byte[]> queue;
+
+  private final AtomicLong exported = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failedWrites = new AtomicLong();
+
+  private volatile boolean running;
+  private Thread writer;
+
+  @Autowired
+  public SpanFileExporter(
+      @Value("${tracing.file:traces/${tracing.serviceName}.jsonl}") String file,
+      @Value("${tracing.queueSize:10000}") int queueSize) {
+    this.file = new File(file);
+    this.queue = new ArrayBlockingQueue<byte[]>(queueSize);
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    writer = new Thread(this::writeSpans, "span-exporter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    writer.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  @Override
+  public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+    // Abandoned spans were never finished, so there is nothing worth keeping
+    if (cause != Cause.ABANDONED && !queue.offer(ENCODER.encode(span))) {
+      dropped.incrementAndGet();
+    }
+    return true;
+  }
+
+  // Writes queued spans until stopped, flushing whenever the queue runs dry
+  private void writeSpans() {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (directory != null) {
+      directory.mkdirs();
+    }
+
+    // Whether the last write failed, so a failure is only logged once until a span is written
+    boolean failing = false;
+
+    while (running || !queue.isEmpty()) {
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
+        while (running || !queue.isEmpty()) {
+          byte[] span = queue.poll(200, TimeUnit.MILLISECONDS);
+          if (span == null) {
+            out.flush();
+            continue;
+          }
+          out.write(span);
+          out.write('\n');
+          exported.incrementAndGet();
+          failing = false;
+        }
+      } catch (IOException e) {
+        if (!failing) {
+          log.warn("Could not write spans to {}, retrying every second", file, e);
+        }
+        failing = true;
+        failedWrites.incrementAndGet();
+        try {
+          Thread.sleep(1000);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  public long getExported() {
+    return exported.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public long getFailedWrites() {
+    return failedWrites.get();
+  }
+}
@@ -0,0 +1,116 @@
+package com.csc301.interservice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.util.ClassUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Times calls, tagged with the DbQueryExecResult of the call, for the MetricsAspect of each
+ * microservice, which only declares the routes and data access methods it times. Routes are
+ * recorded as api.requests with the controller and route, and data access methods as db.queries
+ * with the dal and method. Calls that throw are tagged EXCEPTION, and routes that answer 304 Not
+ * Modified are tagged NOT_MODIFIED. A Mono is timed until its result is emitted, when reactor is
+ * on the classpath.
+ *
+ * The timers of each method are looked up once and kept, so recording a call costs a clock read
+ * and a histogram update.
+ */
+public abstract class TimingAspect {
+
+  public static final String ROUTE_TIMER = "api.requests";
+  public static final String QUERY_TIMER = "db.queries";
+  public static final String EXCEPTION = "EXCEPTION";
+  public static final String NOT_MODIFIED = "NOT_MODIFIED";
+
+  private static final boolean REACTOR_PRESENT =
+      ClassUtils.isPresent("reactor.core.publisher.Mono", TimingAspect.class.getClassLoader());
+
+  private final MeterRegistry registry;
+  private final ConcurrentHashMap<Method, ConcurrentHashMap<String, Timer>> timers =
+      new ConcurrentHashMap<Method, ConcurrentHashMap<String, Timer>>();
+
+  protected TimingAspect(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Proceeds with a call and records how long it took
+   *
+   * @param joinPoint: The call to time
+   * @param name: The timer to record it in, ROUTE_TIMER or QUERY_TIMER
+   * @param ownerTag: The tag naming the class the call was made on
+   * @param owner: The name of the class the call was made on
+   * @param methodTag: The tag naming the method that was called
+   * @return Object: What the call returned, a Mono being timed until it emits
+   * @throws Throwable: Whatever the call threw
+   */
+  protected Object time(ProceedingJoinPoint joinPoint, String name, String ownerTag, String owner,
+      String methodTag) throws Throwable {
+    Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+    long start = System.nanoTime();
+    Object result;
+    try {
+      result = joinPoint.proceed();
+    } catch (Throwable e) {
+      record(name, ownerTag, owner, methodTag, method, EXCEPTION, start);
+      throw e;
+    }
+
+    if (REACTOR_PRESENT && Reactive.isMono(result)) {
+      return Reactive.whenDone(result,
+          outcome -> record(name, ownerTag, owner, methodTag, method, outcome, start));
+    }
+    String outcome = method.getReturnType() == void.class ? DbQueryExecResult.QUERY_OK.name()
+        : outcome(result);
+    record(name, ownerTag, owner, methodTag, method, outcome, start);
+    return result;
+  }
+
+  // The result of a call from what it returned, a null body being a 304 from a route
+  private static String outcome(Object result) {
+    DbQueryExecResult dbQueryExecResult = null;
+    if (result instanceof DbQueryOutcome) {
+      dbQueryExecResult = ((DbQueryOutcome) result).getdbQueryExecResult();
+    } else if (result instanceof ApiResponse) {
+      dbQueryExecResult = ((ApiResponse) result).getResult();
+    } else if (result == null) {
+      return NOT_MODIFIED;
+    }
+    return dbQueryExecResult == null ? DbQueryExecResult.QUERY_OK.name()
+        : dbQueryExecResult.name();
+  }
+
+  private void record(String name, String ownerTag, String owner, String methodTag,
+      Method method, String outcome, long start) {
+    ConcurrentHashMap<String, Timer> byOutcome = timers.get(method);
+    if (byOutcome == null) {
+      byOutcome = timers.computeIfAbsent(method, key -> new ConcurrentHashMap<String, Timer>());
+    }
+    Timer timer = byOutcome.get(outcome);
+    if (timer == null) {
+      timer = byOutcome.computeIfAbsent(outcome, key -> Timer.builder(name).tag(ownerTag, owner)
+          .tag(methodTag, method.getName()).tag("result", key).register(registry));
+    }
+    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  // Only loaded when reactor is on the classpath, which the profile microservice does not have
+  private static class Reactive {
+
+    static boolean isMono(Object result) {
+      return result instanceof Mono;
+    }
+
+    static Object whenDone(Object result, Consumer<String> record) {
+      return ((Mono<?>) result).doOnSuccess(value -> record.accept(outcome(value)))
+          .doOnError(e -> record.accept(EXCEPTION));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.csc301.interservice;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import brave.Tracing;
+import brave.http.HttpTracing;
+import brave.sampler.RateLimitingSampler;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Distributed tracing with B3 propagation, shared by both services and registered in each with
+ * @Import. Spans are named after tracing.serviceName and written by the SpanFileExporter. Each
+ * service adds the instrumentation of its own server requests and database on top.
+ *
+ * A trace is kept with probability tracing.sampleRate, and at most tracing.maxTracesPerSecond
+ * traces are started each second (0 for no limit), so tracing can stay on under load. Requests
+ * that arrive with a sampling decision from the other service keep it, and calls to it made with
+ * InterServiceClient pass the decision on.
+ */
+@Configuration
+@Import(SpanFileExporter.class)
+public class TracingConfig {
+
+  @Bean(destroyMethod = "close")
+  public Tracing tracing(@Value("${tracing.serviceName}") String serviceName,
+      @Value("${tracing.sampleRate:0.1}") float sampleRate,
+      @Value("${tracing.maxTracesPerSecond:100}") int maxTracesPerSecond,
+      SpanFileExporter spanFileExporter, MeterRegistry registry) {
+    FunctionCounter.builder("tracing.spans.exported", spanFileExporter,
+        SpanFileExporter::getExported).register(registry);
+    FunctionCounter.builder("tracing.spans.dropped", spanFileExporter,
+        SpanFileExporter::getDropped).register(registry);
+
+    return Tracing.newBuilder().localServiceName(serviceName)
+        .sampler(sampler(sampleRate, maxTracesPerSecond)).addSpanHandler(spanFileExporter)
+        .build();
+  }
+
+  /**
+   * Creates a sampler keeping a share of traces, up to a number of traces per second
+   *
+   * @param sampleRate: The share of traces to keep, from 0 to 1
+   * @param maxTracesPerSecond: The most traces to keep each second, or 0 for no limit
+   * @return Sampler: The sampler
+   */
+  public static Sampler sampler(float sampleRate, int maxTracesPerSecond) {
+    Sampler probability = Sampler.create(sampleRate);
+    if (maxTracesPerSecond <= 0) {
+      return probability;
+    }
+
+    // Only traces the probability keeps take from the rate limit
+    Sampler rateLimit = RateLimitingSampler.create(maxTracesPerSecond);
+    return new Sampler() {
+      @Override
+      public boolean isSampled(long traceId) {
+        return probability.isSampled(traceId) && rateLimit.isSampled(traceId);
+      }
+    };
+  }
+
+  @Bean
+  public HttpTracing httpTracing(Tracing tracing) {
+    return HttpTracing.create(tracing);
+  }
+}
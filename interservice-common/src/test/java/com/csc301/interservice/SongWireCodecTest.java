@@ -0,0 +1,85 @@
+package com.csc301.interservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class SongWireCodecTest {
+
+	// A song id, 24 hex digits like the ObjectIds of the song microservice
+	private static String songId(int i) {
+		return String.format("5d61728193528481%08x", i);
+	}
+
+	@Test
+	public void titlesRoundTrip() throws Exception {
+		List<String> songIds = new ArrayList<String>();
+		Map<String, String> titles = new HashMap<String, String>();
+		for (int i = 0; i < 100; i++) {
+			String songId = songId(i);
+			songIds.add(songId);
+			titles.put(songId, "Song Ünïcode " + i);
+		}
+
+		// Ids that cannot be song ids are dropped from the request
+		List<String> requested = new ArrayList<String>(songIds);
+		requested.add("not-an-id");
+		assertEquals(songIds,
+				SongWireCodec.decodeTitlesRequest(SongWireCodec.encodeTitlesRequest(requested)));
+
+		SongWireCodec.Result<Map<String, String>> decoded = SongWireCodec.decodeTitlesResponse(
+				SongWireCodec.encodeTitlesResponse(SongWireCodec.Status.OK, titles));
+		assertEquals(SongWireCodec.Status.OK, decoded.getStatus());
+		assertEquals(titles, decoded.getData());
+	}
+
+	@Test
+	public void favouritesRoundTrip() throws Exception {
+		String songId = songId(1);
+		SongWireCodec.FavouritesUpdate update = SongWireCodec.decodeFavouritesRequest(
+				SongWireCodec.encodeFavouritesRequest(songId, true, "request-1"));
+		assertEquals(songId, update.getSongId());
+		assertTrue(update.getShouldDecrement());
+		assertEquals("request-1", update.getRequestId());
+
+		// Updates without a request id are applied every time they arrive
+		assertNull(SongWireCodec.decodeFavouritesRequest(
+				SongWireCodec.encodeFavouritesRequest(songId, false, null)).getRequestId());
+
+		assertEquals(Long.valueOf(42), SongWireCodec.decodeFavouritesResponse(
+				SongWireCodec.encodeFavouritesResponse(SongWireCodec.Status.OK, 42)).getData());
+
+		SongWireCodec.Result<Long> decoded = SongWireCodec.decodeFavouritesResponse(
+				SongWireCodec.encodeFavouritesResponse(SongWireCodec.Status.NOT_FOUND, 0));
+		assertEquals(SongWireCodec.Status.NOT_FOUND, decoded.getStatus());
+		assertNull(decoded.getData());
+	}
+
+	@Test
+	public void rejectsTruncatedMessages() throws Exception {
+		byte[] request = SongWireCodec.encodeTitlesRequest(Arrays.asList(songId(1)));
+		try {
+			SongWireCodec.decodeTitlesRequest(Arrays.copyOf(request, request.length - 1));
+			fail("Expected truncated request to be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(SongWireCodec.isValidId("5d61728193528481fe5a312"));
+	}
+
+	@Test
+	public void unknownStatusesAreErrors() throws Exception {
+		assertEquals(SongWireCodec.Status.ERROR,
+				SongWireCodec.decodeFavouritesResponse(new byte[] {9}).getStatus());
+	}
+}
@@ -0,0 +1,52 @@
+package com.csc301.interservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import brave.ScopedSpan;
+import brave.Tracing;
+import brave.sampler.Sampler;
+
+public class SpanFileExporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void finishedSpansAreWrittenAsJsonLines() throws Exception {
+		File file = new File(folder.getRoot(), "traces/spans.jsonl");
+		SpanFileExporter exporter = new SpanFileExporter(file.getPath(), 100);
+		exporter.start();
+
+		try (Tracing tracing = Tracing.newBuilder().localServiceName("song-microservice")
+				.sampler(Sampler.ALWAYS_SAMPLE).addSpanHandler(exporter).build()) {
+			ScopedSpan parent = tracing.tracer().startScopedSpan("getSongById");
+			tracing.tracer().startScopedSpan("find").finish();
+			parent.finish();
+		}
+		exporter.stop();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0).contains("\"name\":\"find\""));
+		assertTrue(lines.get(0).contains("\"parentId\""));
+		assertTrue(lines.get(1).contains("\"serviceName\":\"song-microservice\""));
+		assertEquals(2, exporter.getExported());
+	}
+
+	@Test
+	public void samplerKeepsNothingAtRateZero() {
+		Sampler sampler = TracingConfig.sampler(0, 100);
+		for (long traceId = 1; traceId < 1000; traceId++) {
+			assertFalse(sampler.isSampled(traceId));
+		}
+	}
+}
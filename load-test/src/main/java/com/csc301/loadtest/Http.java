@@ -0,0 +1,90 @@
+package com.csc301.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal blocking HTTP client. Responses are always read to the end so that the connection goes
+ * back to the keep-alive pool of HttpURLConnection.
+ */
+public final class Http {
+
+  private Http() {}
+
+  public static class Response {
+
+    private final int code;
+    private final String body;
+
+    public Response(int code, String body) {
+      this.code = code;
+      this.body = body;
+    }
+
+    public int getCode() {
+      return code;
+    }
+
+    public String getBody() {
+      return body;
+    }
+
+    /**
+     * Checks whether the service answered with status OK
+     *
+     * @return boolean: Whether the request succeeded
+     */
+    public boolean isOk() {
+      return code < 400 && body.contains("\"status\":\"OK\"");
+    }
+  }
+
+  /**
+   * Sends a request and reads the whole response
+   *
+   * @param method: The HTTP method
+   * @param url: The URL of the request
+   * @param body: The body of the request, or null to send none
+   * @param timeoutMs: The connect and read timeout
+   * @return Response: The status code and body of the response
+   */
+  public static Response send(String method, String url, byte[] body, int timeoutMs)
+      throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod(method);
+    connection.setConnectTimeout(timeoutMs);
+    connection.setReadTimeout(timeoutMs);
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setFixedLengthStreamingMode(body.length);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+    }
+
+    int code = connection.getResponseCode();
+    InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+    if (in == null) {
+      return new Response(code, "");
+    }
+    try (InputStream stream = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new Response(code, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+  }
+
+  public static Response get(String url, int timeoutMs) throws IOException {
+    return send("GET", url, null, timeoutMs);
+  }
+}
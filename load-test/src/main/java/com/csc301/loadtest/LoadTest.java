@@ -0,0 +1,116 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives mixed traffic against the song and profile microservices together and reports the
+ * latency of each route.
+ *
+ * Unless loadtest.startServices is false, both services are started from their jars against
+ * in-process stand-ins of MongoDB and Neo4j. Songs, users, follows and likes are then added, and
+ * the workload is replayed at each of the configured arrival rates after a warmup. Settings are
+ * read from loadtest.properties and can be overridden with key=value arguments, e.g.
+ *
+ * java -jar target/load-test.jar rates=100,400 durationSeconds=60
+ */
+public class LoadTest {
+
+  public static void main(String[] args) throws Exception {
+    LoadTestConfig config = LoadTestConfig.load(args);
+    File outputDirectory = config.getFile("outputDir");
+    outputDirectory.mkdirs();
+
+    StandIns standIns = null;
+    List<ServiceProcess> services = new ArrayList<ServiceProcess>();
+    OpenLoopRunner runner = null;
+    try {
+      if (config.getBoolean("startServices")) {
+        System.out.println("Starting MongoDB and Neo4j stand-ins");
+        standIns =
+            StandIns.start(config.getInt("mongoPort"), new File(outputDirectory, "neo4j"));
+        startServices(config, outputDirectory, services);
+      }
+
+      Random random = new Random(config.getInt("seed"));
+      Seeder seeder = new Seeder(config);
+      System.out.println("Adding songs");
+      List<String> songIds = seeder.addSongs(config.getInt("songs"));
+      ZipfSampler songs = new ZipfSampler(songIds.size(), config.getDouble("songSkew"), random);
+      ZipfSampler users =
+          new ZipfSampler(config.getInt("users"), config.getDouble("userSkew"), random);
+      System.out.println("Adding users, follows and likes");
+      List<String> userNames = seeder.addUsers(users.size(), config.getInt("followsPerUser"),
+          config.getInt("likesPerUser"), songIds, songs, users, random);
+
+      Workload workload = new Workload(config, songIds, userNames, songs, users);
+      runner = new OpenLoopRunner(config);
+      List<String> rates = config.getList("rates");
+      int warmupSeconds = config.getInt("warmupSeconds");
+      if (warmupSeconds > 0) {
+        System.out.println("Warming up for " + warmupSeconds + "s");
+        runner.run(workload, Double.parseDouble(rates.get(0)), warmupSeconds);
+      }
+
+      Report report = new Report(outputDirectory);
+      int durationSeconds = config.getInt("durationSeconds");
+      for (String rate : rates) {
+        Map<Operation, RouteStats> stats =
+            runner.run(workload, Double.parseDouble(rate), durationSeconds);
+        report.add(Double.parseDouble(rate), durationSeconds, stats);
+      }
+      report.close();
+      System.out.println();
+      System.out.println("Results written to " + outputDirectory);
+    } finally {
+      if (runner != null) {
+        runner.stop();
+      }
+      for (ServiceProcess service : services) {
+        service.stop();
+      }
+      if (standIns != null) {
+        standIns.stop();
+      }
+    }
+  }
+
+  // Starts each service pointed at the stand-ins and at each other
+  private static void startServices(LoadTestConfig config, File outputDirectory,
+      List<ServiceProcess> services) throws Exception {
+    String songUrl = config.getString("songUrl");
+    String profileUrl = config.getString("profileUrl");
+    int timeoutSeconds = config.getInt("startupTimeoutSeconds");
+
+    List<String> songArgs = new ArrayList<String>(Arrays.asList(
+        "--server.port=" + new URL(songUrl).getPort(),
+        "--spring.data.mongodb.host=localhost",
+        "--spring.data.mongodb.port=" + config.getInt("mongoPort"),
+        "--interservice.profile.url=" + profileUrl));
+    String songProfile = config.getString("songProfile");
+    if (!songProfile.isEmpty()) {
+      songArgs.add("--spring.profiles.active=" + songProfile);
+    }
+    songArgs.addAll(config.getList("songArgs"));
+    List<String> profileArgs = new ArrayList<String>(Arrays.asList(
+        "--server.port=" + new URL(profileUrl).getPort(),
+        "--interservice.song.url=" + songUrl));
+    profileArgs.addAll(config.getList("profileArgs"));
+
+    System.out.println("Starting the song and profile microservices"
+        + (songProfile.isEmpty() ? "" : ", song with profile " + songProfile));
+    ServiceProcess song = ServiceProcess.start("song-microservice", config.getFile("songJar"),
+        songArgs, outputDirectory);
+    services.add(song);
+    ServiceProcess profile = ServiceProcess.start("profile-microservice",
+        config.getFile("profileJar"), profileArgs, outputDirectory);
+    services.add(profile);
+    song.awaitReady(songUrl + "/getSongCacheStats", timeoutSeconds);
+    profile.awaitReady(profileUrl + "/getInterServiceClientStats", timeoutSeconds);
+  }
+}
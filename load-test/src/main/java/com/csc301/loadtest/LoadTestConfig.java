@@ -0,0 +1,90 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Settings of a load test run. Defaults come from loadtest.properties, and can be overridden by
+ * system properties and then by key=value arguments.
+ */
+public class LoadTestConfig {
+
+  private final Properties properties;
+
+  public LoadTestConfig(Properties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Loads the defaults and applies the overrides
+   *
+   * @param args: The command line arguments, each of the form key=value
+   * @return LoadTestConfig: The settings of the run
+   */
+  public static LoadTestConfig load(String[] args) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = LoadTestConfig.class.getResourceAsStream("/loadtest.properties")) {
+      properties.load(in);
+    }
+    for (String key : System.getProperties().stringPropertyNames()) {
+      if (key.startsWith("loadtest.")) {
+        properties.setProperty(key, System.getProperty(key));
+      }
+    }
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("Expected key=value but got " + arg);
+      }
+      String key = arg.substring(0, separator);
+      properties.setProperty(key.startsWith("loadtest.") ? key : "loadtest." + key,
+          arg.substring(separator + 1));
+    }
+    return new LoadTestConfig(properties);
+  }
+
+  public String getString(String key) {
+    String value = properties.getProperty("loadtest." + key);
+    if (value == null) {
+      throw new IllegalArgumentException("Missing setting loadtest." + key);
+    }
+    return value.trim();
+  }
+
+  public int getInt(String key) {
+    return Integer.parseInt(getString(key));
+  }
+
+  public double getDouble(String key) {
+    return Double.parseDouble(getString(key));
+  }
+
+  public boolean getBoolean(String key) {
+    return Boolean.parseBoolean(getString(key));
+  }
+
+  public File getFile(String key) {
+    return new File(getString(key));
+  }
+
+  /**
+   * Gets a setting holding a list separated by commas or spaces
+   *
+   * @param key: The setting without the loadtest. prefix
+   * @return List: The non-empty entries of the list
+   */
+  public List<String> getList(String key) {
+    List<String> values = new ArrayList<String>();
+    for (String value : Arrays.asList(getString(key).split("[,\\s]+"))) {
+      if (!value.isEmpty()) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+}
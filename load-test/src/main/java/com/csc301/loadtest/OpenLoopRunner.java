@@ -0,0 +1,150 @@
+package com.csc301.loadtest;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests of a workload at a fixed arrival rate, whether or not earlier requests have
+ * been answered. Request i of a run is scheduled at start + i / rate. If every worker is busy the
+ * request waits in the queue, and that wait is part of its response time.
+ *
+ * A run waits up to twice the request timeout for its last requests. Requests still queued or
+ * running then are recorded as failures, with their response time measured to that deadline, and
+ * are not sent or recorded again.
+ */
+public class OpenLoopRunner {
+
+  private final ExecutorService workers;
+  private final Random random;
+  private final int timeoutMs;
+
+  public OpenLoopRunner(LoadTestConfig config) {
+    AtomicInteger threads = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(config.getInt("workers"), task -> {
+      Thread thread = new Thread(task, "load-worker-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.random = new Random(config.getInt("seed"));
+    this.timeoutMs = config.getInt("timeoutMs");
+  }
+
+  /**
+   * Runs the workload at a fixed rate and waits for the requests of the run to finish, recording
+   * the ones that do not finish in time as failures
+   *
+   * @param workload: The workload to replay
+   * @param ratePerSecond: The number of requests to send each second
+   * @param durationSeconds: How long to send requests for
+   * @return Map: The stats of each operation
+   */
+  public Map<Operation, RouteStats> run(Workload workload, double ratePerSecond,
+      int durationSeconds) throws InterruptedException {
+    Map<Operation, RouteStats> stats = new EnumMap<Operation, RouteStats>(Operation.class);
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new RouteStats());
+    }
+
+    long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+    long startNanos = System.nanoTime();
+    long endNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+    Set<Unfinished> unfinished = ConcurrentHashMap.newKeySet();
+    for (long i = 0;; i++) {
+      long intendedStartNanos = startNanos + i * intervalNanos;
+      if (intendedStartNanos >= endNanos) {
+        break;
+      }
+      long waitNanos = intendedStartNanos - System.nanoTime();
+      if (waitNanos > 0) {
+        LockSupport.parkNanos(waitNanos);
+      }
+
+      Workload.Request request = workload.next(random);
+      Unfinished pending = new Unfinished(intendedStartNanos, stats.get(request.getOperation()));
+      unfinished.add(pending);
+      workers.execute(() -> {
+        try {
+          send(request, pending);
+        } finally {
+          unfinished.remove(pending);
+        }
+      });
+    }
+
+    // Requests still queued belong to this run, so wait for them before reporting
+    long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs) * 2;
+    while (!unfinished.isEmpty() && System.nanoTime() < drainDeadline) {
+      Thread.sleep(10);
+    }
+
+    // Left out, the slowest requests of an overloaded run would make it look faster
+    long deadlineNanos = System.nanoTime();
+    int abandoned = 0;
+    for (Unfinished request : unfinished) {
+      if (request.claim()) {
+        request.routeStats.recordFailure(request.intendedStartNanos,
+            request.startNanos == 0 ? deadlineNanos : request.startNanos, deadlineNanos);
+        abandoned++;
+      }
+    }
+    if (abandoned > 0) {
+      System.out.println(abandoned + " requests were still queued or running when the run ended, "
+          + "recorded as failures");
+    }
+    return stats;
+  }
+
+  private void send(Workload.Request request, Unfinished pending) {
+    // Recorded as a failure at the end of its run while it was queued
+    if (pending.recorded.get()) {
+      return;
+    }
+    long startNanos = System.nanoTime();
+    pending.startNanos = startNanos;
+    try {
+      Http.Response response =
+          Http.send(request.getMethod(), request.getUrl(), null, timeoutMs);
+      if (pending.claim()) {
+        pending.routeStats.recordResponse(pending.intendedStartNanos, startNanos, System.nanoTime(),
+            response.isOk());
+      }
+    } catch (IOException e) {
+      if (pending.claim()) {
+        pending.routeStats.recordFailure(pending.intendedStartNanos, startNanos, System.nanoTime());
+      }
+    }
+  }
+
+  public void stop() {
+    workers.shutdownNow();
+  }
+
+  // A request of a run, recorded once, by the worker that sent it or by the run when it ends
+  private static class Unfinished {
+
+    final long intendedStartNanos;
+    final RouteStats routeStats;
+    final AtomicBoolean recorded = new AtomicBoolean();
+    volatile long startNanos;
+
+    Unfinished(long intendedStartNanos, RouteStats routeStats) {
+      this.intendedStartNanos = intendedStartNanos;
+      this.routeStats = routeStats;
+    }
+
+    // Whether the caller is the one to record the request
+    boolean claim() {
+      return recorded.compareAndSet(false, true);
+    }
+  }
+}
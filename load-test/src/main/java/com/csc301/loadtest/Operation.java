@@ -0,0 +1,22 @@
+package com.csc301.loadtest;
+
+/**
+ * The operations of the workload, named after the route each one calls
+ */
+public enum Operation {
+  GET_SONG_BY_ID("getSongById"),
+  LIKE_SONG("likeSong"),
+  UNLIKE_SONG("unlikeSong"),
+  FOLLOW_FRIEND("followFriend"),
+  GET_FRIEND_FEED("getAllFriendFavouriteSongTitles");
+
+  private final String route;
+
+  Operation(String route) {
+    this.route = route;
+  }
+
+  public String getRoute() {
+    return route;
+  }
+}
@@ -0,0 +1,83 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Writes the results of each run: a table on standard output, summary.csv with one line per rate
+ * and route, and the full response time distribution of each route as a .hgrm file that the
+ * HdrHistogram plotter can read. Latencies are reported in milliseconds.
+ */
+public class Report {
+
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  private final File outputDirectory;
+  private final PrintStream summary;
+
+  public Report(File outputDirectory) throws FileNotFoundException {
+    this.outputDirectory = outputDirectory;
+    this.summary = new PrintStream(new File(outputDirectory, "summary.csv"));
+    summary.println("rate,route,count,ok,notOk,failed,throughput,p50Ms,p90Ms,p99Ms,p999Ms,maxMs,"
+        + "serviceP50Ms,serviceP99Ms");
+  }
+
+  /**
+   * Adds the results of a run
+   *
+   * @param rate: The arrival rate of the run in requests per second
+   * @param durationSeconds: How long the run sent requests for
+   * @param stats: The stats of each operation
+   */
+  public void add(double rate, int durationSeconds, Map<Operation, RouteStats> stats)
+      throws FileNotFoundException {
+    System.out.println();
+    System.out.println(String.format(Locale.ROOT, "%.0f requests/s for %ds", rate,
+        durationSeconds));
+    System.out.println(String.format(Locale.ROOT, "%-32s %8s %8s %8s %9s %9s %9s %9s %9s",
+        "route", "count", "notOk", "failed", "p50", "p99", "p99.9", "max", "svc p99"));
+
+    for (Map.Entry<Operation, RouteStats> entry : stats.entrySet()) {
+      String route = entry.getKey().getRoute();
+      RouteStats routeStats = entry.getValue();
+      if (routeStats.getCount() == 0) {
+        continue;
+      }
+      Histogram responseTimes = routeStats.getResponseTimes();
+      Histogram serviceTimes = routeStats.getServiceTimes();
+
+      System.out.println(String.format(Locale.ROOT,
+          "%-32s %8d %8d %8d %9.2f %9.2f %9.2f %9.2f %9.2f", route, routeStats.getCount(),
+          routeStats.getNotOk(), routeStats.getFailed(), millis(responseTimes, 50),
+          millis(responseTimes, 99), millis(responseTimes, 99.9),
+          responseTimes.getMaxValue() / MICROS_PER_MILLI, millis(serviceTimes, 99)));
+
+      summary.println(String.format(Locale.ROOT,
+          "%.0f,%s,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f", rate, route,
+          routeStats.getCount(), routeStats.getOk(), routeStats.getNotOk(),
+          routeStats.getFailed(), (double) routeStats.getCount() / durationSeconds,
+          millis(responseTimes, 50), millis(responseTimes, 90), millis(responseTimes, 99),
+          millis(responseTimes, 99.9), responseTimes.getMaxValue() / MICROS_PER_MILLI,
+          millis(serviceTimes, 50), millis(serviceTimes, 99)));
+
+      File distribution = new File(outputDirectory,
+          String.format(Locale.ROOT, "%.0frps-%s.hgrm", rate, route));
+      try (PrintStream out = new PrintStream(distribution)) {
+        responseTimes.outputPercentileDistribution(out, MICROS_PER_MILLI);
+      }
+    }
+    summary.flush();
+  }
+
+  private static double millis(Histogram histogram, double percentile) {
+    return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+  }
+
+  public void close() {
+    summary.close();
+  }
+}
@@ -0,0 +1,84 @@
+package com.csc301.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies and outcomes of the requests of one route, in microseconds.
+ *
+ * The response time of a request is measured from when the request was scheduled to be sent, not
+ * from when it was sent, so time spent waiting behind slow requests counts against the service
+ * instead of being silently left out (coordinated omission). The service time, measured from when
+ * the request was actually sent, is kept alongside to show how much of the latency is queueing.
+ */
+public class RouteStats {
+
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  private final Histogram responseTimes = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+  private final Histogram serviceTimes = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+  private final LongAdder ok = new LongAdder();
+  private final LongAdder notOk = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  /**
+   * Records a request that got a response
+   *
+   * @param intendedStartNanos: When the request was scheduled to be sent
+   * @param startNanos: When the request was sent
+   * @param endNanos: When the response was read
+   * @param succeeded: Whether the service answered with status OK
+   */
+  public void recordResponse(long intendedStartNanos, long startNanos, long endNanos,
+      boolean succeeded) {
+    record(intendedStartNanos, startNanos, endNanos);
+    (succeeded ? ok : notOk).increment();
+  }
+
+  /**
+   * Records a request that failed or timed out without a response
+   *
+   * @param intendedStartNanos: When the request was scheduled to be sent
+   * @param startNanos: When the request was sent
+   * @param endNanos: When the request failed
+   */
+  public void recordFailure(long intendedStartNanos, long startNanos, long endNanos) {
+    record(intendedStartNanos, startNanos, endNanos);
+    failed.increment();
+  }
+
+  private void record(long intendedStartNanos, long startNanos, long endNanos) {
+    responseTimes.recordValue(toMicros(endNanos - intendedStartNanos));
+    serviceTimes.recordValue(toMicros(endNanos - startNanos));
+  }
+
+  private static long toMicros(long nanos) {
+    return Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+  }
+
+  public Histogram getResponseTimes() {
+    return responseTimes;
+  }
+
+  public Histogram getServiceTimes() {
+    return serviceTimes;
+  }
+
+  public long getOk() {
+    return ok.sum();
+  }
+
+  public long getNotOk() {
+    return notOk.sum();
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public long getCount() {
+    return getOk() + getNotOk() + getFailed();
+  }
+}
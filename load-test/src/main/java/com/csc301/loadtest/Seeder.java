@@ -0,0 +1,156 @@
+package com.csc301.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Adds the songs, users, follows and likes the workload runs against, through the routes of the
+ * services so that both databases end up consistent.
+ */
+public class Seeder {
+
+  private static final int SEED_THREADS = 16;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final String songUrl;
+  private final String profileUrl;
+  private final int timeoutMs;
+  private final int waitSeconds;
+
+  public Seeder(LoadTestConfig config) {
+    this.songUrl = config.getString("songUrl");
+    this.profileUrl = config.getString("profileUrl");
+    this.timeoutMs = config.getInt("timeoutMs");
+    this.waitSeconds = config.getInt("startupTimeoutSeconds");
+  }
+
+  /**
+   * Adds songs in bulk and waits for the profile microservice to know about them
+   *
+   * @param count: The number of songs to add
+   * @return List: The ids of every song in the catalog
+   */
+  public List<String> addSongs(int count) throws IOException, InterruptedException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    for (int i = 0; i < count; i++) {
+      Map<String, String> song = new HashMap<String, String>();
+      song.put("songName", "Song " + i);
+      song.put("songArtistFullName", "Artist " + i / 10);
+      song.put("songAlbum", "Album " + i / 5);
+      body.write(mapper.writeValueAsBytes(song));
+      body.write('\n');
+    }
+    Http.Response response =
+        Http.send("POST", songUrl + "/addSongs", body.toByteArray(), timeoutMs * 10);
+    if (!response.isOk()) {
+      throw new IOException("Could not add songs: " + response.getBody());
+    }
+
+    // Songs reach the profile microservice through the song outbox
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds);
+    while (pendingOutboxEvents() > 0) {
+      if (System.nanoTime() > deadline) {
+        throw new IOException("Songs did not reach the profile microservice in time");
+      }
+      Thread.sleep(200);
+    }
+
+    List<String> songIds = new ArrayList<String>();
+    String after = null;
+    do {
+      String url = songUrl + "/getSongCatalog?pageSize=1000"
+          + (after == null ? "" : "&after=" + after);
+      JsonNode page = mapper.readTree(Http.get(url, timeoutMs).getBody());
+      for (JsonNode song : page.path("data")) {
+        songIds.add(song.path("id").asText());
+      }
+      after = page.path("next").isTextual() ? page.path("next").asText() : null;
+    } while (after != null);
+    return songIds;
+  }
+
+  private long pendingOutboxEvents() throws IOException {
+    JsonNode stats =
+        mapper.readTree(Http.get(songUrl + "/getSongOutboxStats", timeoutMs).getBody());
+    return stats.path("data").path("pendingEvents").asLong();
+  }
+
+  /**
+   * Adds users, then has each of them follow and like others with the skew of the workload
+   *
+   * @param count: The number of users to add
+   * @param followsPerUser: How many users each user follows
+   * @param likesPerUser: How many songs each user likes
+   * @param songIds: The songs that can be liked
+   * @param songs: The sampler of songs of the workload
+   * @param users: The sampler of users of the workload
+   * @param random: The source of the picks
+   * @return List: The names of the users
+   */
+  public List<String> addUsers(int count, int followsPerUser, int likesPerUser,
+      List<String> songIds, ZipfSampler songs, ZipfSampler users, Random random)
+      throws IOException, InterruptedException {
+    List<String> userNames = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      userNames.add("user" + i);
+    }
+
+    List<String> profiles = new ArrayList<String>();
+    for (String userName : userNames) {
+      profiles.add(profileUrl + "/profile?userName=" + userName + "&fullName="
+          + URLEncoder.encode("User " + userName.substring(4), "UTF-8") + "&password=password");
+    }
+    sendAll("POST", profiles);
+
+    List<String> follows = new ArrayList<String>();
+    List<String> likes = new ArrayList<String>();
+    for (String userName : userNames) {
+      for (int i = 0; i < followsPerUser; i++) {
+        String friend = userNames.get(users.next(random));
+        if (!friend.equals(userName)) {
+          follows.add(profileUrl + "/followFriend/" + userName + "/" + friend);
+        }
+      }
+      for (int i = 0; i < likesPerUser; i++) {
+        likes.add(profileUrl + "/likeSong/" + userName + "/" + songIds.get(songs.next(random)));
+      }
+    }
+    sendAll("PUT", follows);
+    sendAll("PUT", likes);
+    return userNames;
+  }
+
+  // Sends requests a few at a time. Users and likes that already exist are not errors here
+  private void sendAll(String method, List<String> urls)
+      throws IOException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(SEED_THREADS);
+    try {
+      List<Callable<Http.Response>> requests = new ArrayList<Callable<Http.Response>>();
+      for (String url : urls) {
+        requests.add(() -> Http.send(method, url, null, timeoutMs));
+      }
+      for (Future<Http.Response> response : executor.invokeAll(requests)) {
+        try {
+          response.get();
+        } catch (Exception e) {
+          throw new IOException("Could not seed the services", e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One of the microservices, started from its jar in a JVM of its own
+ */
+public class ServiceProcess {
+
+  private final String name;
+  private final Process process;
+  private final File log;
+
+  private ServiceProcess(String name, Process process, File log) {
+    this.name = name;
+    this.process = process;
+    this.log = log;
+  }
+
+  /**
+   * Starts a service, writing its output to a log file
+   *
+   * @param name: The name of the service, used for its log file
+   * @param jar: The executable jar of the service
+   * @param args: The arguments of the service
+   * @param logDirectory: Where to write the log file
+   * @return ServiceProcess: The started service
+   */
+  public static ServiceProcess start(String name, File jar, List<String> args,
+      File logDirectory) throws IOException {
+    if (!jar.isFile()) {
+      throw new IOException(jar + " does not exist, build the service with mvn package first");
+    }
+
+    List<String> command = new ArrayList<String>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.add("-jar");
+    command.add(jar.getPath());
+    command.addAll(args);
+
+    File log = new File(logDirectory, name + ".log");
+    Process process = new ProcessBuilder(command).redirectErrorStream(true)
+        .redirectOutput(log).start();
+    return new ServiceProcess(name, process, log);
+  }
+
+  /**
+   * Waits until the service answers requests
+   *
+   * @param url: A URL of the service that answers once it is up
+   * @param timeoutSeconds: How long to wait
+   */
+  public void awaitReady(String url, int timeoutSeconds)
+      throws IOException, InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IOException(name + " exited with " + process.exitValue() + ", see " + log);
+      }
+      try {
+        if (Http.get(url, 1000).getCode() < 400) {
+          return;
+        }
+      } catch (IOException e) {
+        // Not listening yet
+      }
+      Thread.sleep(500);
+    }
+    throw new IOException(name + " did not start within " + timeoutSeconds + "s, see " + log);
+  }
+
+  public void stop() throws InterruptedException {
+    process.destroy();
+    if (!process.waitFor(10, TimeUnit.SECONDS)) {
+      process.destroyForcibly();
+    }
+  }
+}
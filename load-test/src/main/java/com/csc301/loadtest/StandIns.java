@@ -0,0 +1,54 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * In-process stand-ins of the databases of the services: an in-memory MongoDB server for the song
+ * microservice and an embedded Neo4j for the profile microservice. They speak the real wire
+ * protocols, but their performance is not that of a real deployment, so only compare runs made
+ * against the same stand-ins.
+ */
+public class StandIns {
+
+  // The profile microservice always connects to Neo4j on the default Bolt port
+  public static final String NEO4J_BOLT_ADDRESS = "localhost:7687";
+
+  private final MongoServer mongo;
+  private final ServerControls neo4j;
+
+  private StandIns(MongoServer mongo, ServerControls neo4j) {
+    this.mongo = mongo;
+    this.neo4j = neo4j;
+  }
+
+  /**
+   * Starts both stand-ins
+   *
+   * @param mongoPort: The port of the MongoDB stand-in
+   * @param workingDirectory: Where Neo4j keeps its store
+   * @return StandIns: The running stand-ins
+   */
+  public static StandIns start(int mongoPort, File workingDirectory) {
+    MongoServer mongo = new MongoServer(new MemoryBackend());
+    mongo.bind("localhost", mongoPort);
+    try {
+      ServerControls neo4j = TestServerBuilders.newInProcessBuilder(workingDirectory)
+          .withConfig("dbms.connector.bolt.listen_address", NEO4J_BOLT_ADDRESS)
+          .withConfig("dbms.connector.http.enabled", "false")
+          .newServer();
+      return new StandIns(mongo, neo4j);
+    } catch (RuntimeException e) {
+      mongo.shutdownNow();
+      throw e;
+    }
+  }
+
+  public void stop() {
+    neo4j.close();
+    mongo.shutdownNow();
+  }
+}
@@ -0,0 +1,131 @@
+package com.csc301.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mix of operations to replay. Each request picks an operation by its weight, then the user and
+ * song it acts on with a power-law skew, so a few songs and users get most of the traffic.
+ */
+public class Workload {
+
+  /**
+   * A request of the workload, ready to send
+   */
+  public static class Request {
+
+    private final Operation operation;
+    private final String method;
+    private final String url;
+
+    public Request(Operation operation, String method, String url) {
+      this.operation = operation;
+      this.method = method;
+      this.url = url;
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+  }
+
+  private final String songUrl;
+  private final String profileUrl;
+  private final List<String> songIds;
+  private final List<String> userNames;
+  private final ZipfSampler songs;
+  private final ZipfSampler users;
+  private final Operation[] operations;
+  private final double[] cumulativeWeights;
+
+  public Workload(LoadTestConfig config, List<String> songIds, List<String> userNames,
+      ZipfSampler songs, ZipfSampler users) {
+    this.songUrl = config.getString("songUrl");
+    this.profileUrl = config.getString("profileUrl");
+    this.songIds = songIds;
+    this.userNames = userNames;
+    this.songs = songs;
+    this.users = users;
+
+    List<Operation> weighted = new ArrayList<Operation>();
+    List<Double> weights = new ArrayList<Double>();
+    double total = 0;
+    for (Operation operation : Operation.values()) {
+      double weight = config.getDouble("mix." + operation.getRoute());
+      if (weight > 0) {
+        total += weight;
+        weighted.add(operation);
+        weights.add(total);
+      }
+    }
+    if (weighted.isEmpty()) {
+      throw new IllegalArgumentException("Every operation of the mix has a weight of 0");
+    }
+
+    operations = weighted.toArray(new Operation[0]);
+    cumulativeWeights = new double[weights.size()];
+    for (int i = 0; i < cumulativeWeights.length; i++) {
+      cumulativeWeights[i] = weights.get(i) / total;
+    }
+  }
+
+  /**
+   * Picks the next request of the workload
+   *
+   * @param random: The source of the picks
+   * @return Request: The request to send
+   */
+  public Request next(Random random) {
+    Operation operation = pickOperation(random);
+    String userName = userNames.get(users.next(random));
+
+    switch (operation) {
+      case GET_SONG_BY_ID:
+        return new Request(operation, "GET", songUrl + "/getSongById/" + pickSong(random));
+      case LIKE_SONG:
+        return new Request(operation, "PUT",
+            profileUrl + "/likeSong/" + userName + "/" + pickSong(random));
+      case UNLIKE_SONG:
+        return new Request(operation, "PUT",
+            profileUrl + "/unlikeSong/" + userName + "/" + pickSong(random));
+      case FOLLOW_FRIEND:
+        return new Request(operation, "PUT",
+            profileUrl + "/followFriend/" + userName + "/" + pickFriend(userName, random));
+      default:
+        return new Request(operation, "GET",
+            profileUrl + "/getAllFriendFavouriteSongTitles/" + userName);
+    }
+  }
+
+  private Operation pickOperation(Random random) {
+    double pick = random.nextDouble();
+    for (int i = 0; i < operations.length - 1; i++) {
+      if (pick < cumulativeWeights[i]) {
+        return operations[i];
+      }
+    }
+    return operations[operations.length - 1];
+  }
+
+  private String pickSong(Random random) {
+    return songIds.get(songs.next(random));
+  }
+
+  // Popular users are followed more, but nobody follows themselves
+  private String pickFriend(String userName, Random random) {
+    String friend = userNames.get(users.next(random));
+    if (friend.equals(userName)) {
+      friend = userNames.get((userNames.indexOf(userName) + 1) % userNames.size());
+    }
+    return friend;
+  }
+}
@@ -0,0 +1,77 @@
+package com.csc301.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks items with a power-law skew: the item of popularity rank k is picked with probability
+ * proportional to 1 / k^exponent. Ranks are given to the items in a random order, so the most
+ * popular items are not simply the first ones added.
+ */
+public class ZipfSampler {
+
+  private final double[] cumulative;
+  private final int[] itemByRank;
+
+  /**
+   * Creates a sampler of the items 0 to size - 1
+   *
+   * @param size: The number of items
+   * @param exponent: The skew, 0 picks every item with the same probability
+   * @param random: The source of the order of popularity
+   */
+  public ZipfSampler(int size, double exponent, Random random) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Cannot pick from " + size + " items");
+    }
+
+    cumulative = new double[size];
+    double total = 0;
+    for (int rank = 0; rank < size; rank++) {
+      total += 1 / Math.pow(rank + 1, exponent);
+      cumulative[rank] = total;
+    }
+    for (int rank = 0; rank < size; rank++) {
+      cumulative[rank] /= total;
+    }
+
+    itemByRank = new int[size];
+    for (int item = 0; item < size; item++) {
+      itemByRank[item] = item;
+    }
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int item = itemByRank[i];
+      itemByRank[i] = itemByRank[j];
+      itemByRank[j] = item;
+    }
+  }
+
+  /**
+   * Picks an item
+   *
+   * @param random: The source of the pick
+   * @return int: The item picked
+   */
+  public int next(Random random) {
+    int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+    if (rank < 0) {
+      rank = -rank - 1;
+    }
+    return itemByRank[Math.min(rank, itemByRank.length - 1)];
+  }
+
+  /**
+   * Gets the item of a popularity rank
+   *
+   * @param rank: The rank, 0 being the most popular
+   * @return int: The item of that rank
+   */
+  public int itemOfRank(int rank) {
+    return itemByRank[rank];
+  }
+
+  public int size() {
+    return itemByRank.length;
+  }
+}
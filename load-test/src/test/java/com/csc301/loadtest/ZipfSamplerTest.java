@@ -0,0 +1,38 @@
+package com.csc301.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class ZipfSamplerTest {
+
+	@Test
+	public void mostPopularItemIsPickedMostOften() {
+		ZipfSampler sampler = new ZipfSampler(1000, 1.0, new Random(1));
+		Random random = new Random(2);
+		int[] picks = new int[1000];
+		for (int i = 0; i < 100000; i++) {
+			picks[sampler.next(random)]++;
+		}
+
+		// With an exponent of 1 the top item gets about 1 / H(1000) = 13% of the picks
+		int top = picks[sampler.itemOfRank(0)];
+		assertTrue("top item picked " + top + " times", top > 12000 && top < 14500);
+		assertTrue(top > 1.8 * picks[sampler.itemOfRank(1)]);
+	}
+
+	@Test
+	public void exponentOfZeroIsUniform() {
+		ZipfSampler sampler = new ZipfSampler(10, 0, new Random(1));
+		Random random = new Random(2);
+		int[] picks = new int[10];
+		for (int i = 0; i < 100000; i++) {
+			picks[sampler.next(random)]++;
+		}
+		for (int count : picks) {
+			assertEquals(10000, count, 500);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.csc301.profilemicroservice;
+
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.ApiResponse;
+
+/**
+ * Creates the response bodies of the JSON routes, echoing the path that was called unless
+ * api.response.includePath is false
+ */
+@Component
+public class ApiResponseFactory {
+
+  @Value("${api.response.includePath:true}")
+  private boolean includePath;
+
+  /**
+   * Creates an empty response for a route
+   *
+   * @param method the HTTP method of the route
+   * @param request the request being answered
+   * 
+   * @return the response, with the path if it is included
+   */
+  public ApiResponse create(String method, HttpServletRequest request) {
+    return new ApiResponse(includePath ? method + " " + Utils.getUrl(request) : null);
+  }
+}
@@ -1,7 +0,0 @@
-package com.csc301.profilemicroservice;
-
-public enum DbQueryExecResult {
-	QUERY_OK,
-	QUERY_ERROR_NOT_FOUND,
-	QUERY_ERROR_GENERIC,
-}
@@ -1,6 +1,9 @@
 package com.csc301.profilemicroservice;
 
-public class DbQueryStatus {
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.DbQueryOutcome;
+
+public class DbQueryStatus implements DbQueryOutcome {
 	
 	private String message;
 	private DbQueryExecResult dbQueryExecResult;
@@ -19,6 +22,7 @@ public class DbQueryStatus {
 		this.message = message;
 	}
 
+	@Override
 	public DbQueryExecResult getdbQueryExecResult() {
 		return dbQueryExecResult;
 	}
@@ -0,0 +1,40 @@
+package com.csc301.profilemicroservice;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.TimingAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Times every route and every driver method, as described in TimingAspect, under the same names
+ * as in the song microservice. Turned off with metrics.timing.enabled=false.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "metrics.timing.enabled", matchIfMissing = true)
+public class MetricsAspect extends TimingAspect {
+
+  @Autowired
+  public MetricsAspect(MeterRegistry registry) {
+    super(registry);
+  }
+
+  @Around("execution(public * com.csc301.profilemicroservice.ProfileController.*(..))")
+  public Object timeRoute(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, ROUTE_TIMER, "controller", "ProfileController", "route");
+  }
+
+  @Around("execution(* com.csc301.profilemicroservice.ProfileDriver.*(..))")
+  public Object timeProfileQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, QUERY_TIMER, "dal", "ProfileDriver", "method");
+  }
+
+  @Around("execution(* com.csc301.profilemicroservice.PlaylistDriver.*(..))")
+  public Object timePlaylistQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, QUERY_TIMER, "dal", "PlaylistDriver", "method");
+  }
+}
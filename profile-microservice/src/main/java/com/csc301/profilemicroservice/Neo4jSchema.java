@@ -0,0 +1,193 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Versioned schema of the graph, migrated at startup. Each migration is applied once, in order,
+ * and the version of the last one applied is kept in the schemaVersion node, so a database only
+ * runs the migrations it has not seen yet. Once migrated, the indexes every driver query looks
+ * nodes up by are awaited until they are online and then checked.
+ *
+ * Property existence constraints are only available in Neo4j Enterprise Edition, so the
+ * migrations made of them are skipped on Community Edition.
+ */
+@Component
+public class Neo4jSchema {
+
+  private static final Logger log = LoggerFactory.getLogger(Neo4jSchema.class);
+
+  // One change of the schema, made of statements that are each safe to run again
+  static final class Migration {
+    final int version;
+    final String description;
+    final boolean enterpriseOnly;
+    final List<String> statements;
+
+    Migration(int version, String description, boolean enterpriseOnly, String... statements) {
+      this.version = version;
+      this.description = description;
+      this.enterpriseOnly = enterpriseOnly;
+      this.statements = Arrays.asList(statements);
+    }
+  }
+
+  static final List<Migration> MIGRATIONS = Arrays.asList(
+      new Migration(1, "Profiles have a user name and password, and playlists a name", true,
+          "CREATE CONSTRAINT ON (nProfile:profile) ASSERT exists(nProfile.userName)",
+          "CREATE CONSTRAINT ON (nProfile:profile) ASSERT exists(nProfile.password)",
+          "CREATE CONSTRAINT ON (nPlaylist:playlist) ASSERT exists(nPlaylist.plName)"),
+      new Migration(2, "Profile user names are unique", false,
+          "CREATE CONSTRAINT ON (nProfile:profile) ASSERT nProfile.userName IS UNIQUE"),
+      new Migration(3, "Song ids and playlist names are unique", false,
+          "CREATE CONSTRAINT ON (nSong:song) ASSERT nSong.songId IS UNIQUE",
+          "CREATE CONSTRAINT ON (nPlaylist:playlist) ASSERT nPlaylist.plName IS UNIQUE"));
+
+  // The indexes the driver queries look nodes up by, as db.indexes() describes them
+  static final List<String> REQUIRED_INDEXES =
+      Arrays.asList(":profile(userName)", ":song(songId)", ":playlist(plName)");
+
+  private final Driver driver;
+  private final long awaitIndexesSeconds;
+
+  private volatile int version = -1;
+  private volatile boolean online;
+
+  @Autowired
+  public Neo4jSchema(@Value("${neo4j.schema.awaitIndexesSeconds:300}") long awaitIndexesSeconds) {
+    this(ProfileMicroserviceApplication.driver, awaitIndexesSeconds);
+  }
+
+  Neo4jSchema(Driver driver, long awaitIndexesSeconds) {
+    this.driver = driver;
+    this.awaitIndexesSeconds = awaitIndexesSeconds;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void migrateOnStartup() {
+    Thread thread = new Thread(this::migrate, "neo4j-schema-migration");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Applies every migration the database has not seen yet, then waits for the required indexes to
+   * come online and checks them
+   *
+   * @return boolean: Whether the schema is migrated and every required index is online
+   */
+  public boolean migrate() {
+    try (Session session = driver.session()) {
+      version = readVersion(session);
+      boolean enterprise = isEnterprise(session);
+
+      for (Migration migration : MIGRATIONS) {
+        if (migration.version <= version) {
+          continue;
+        }
+
+        if (migration.enterpriseOnly && !enterprise) {
+          log.info("Skipping schema migration {} ({}), which needs Neo4j Enterprise Edition",
+              migration.version, migration.description);
+        } else {
+          // Schema changes cannot share a transaction with data, so each runs on its own
+          for (String statement : migration.statements) {
+            session.run(statement).consume();
+          }
+        }
+        writeVersion(session, migration);
+        version = migration.version;
+      }
+
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put("timeout", awaitIndexesSeconds);
+      session.run("CALL db.awaitIndexes($timeout)", params).consume();
+
+      List<String> missing = missingIndexes(session);
+      if (!missing.isEmpty()) {
+        throw new IllegalStateException("Indexes not online: " + missing);
+      }
+
+      online = true;
+      log.info("Neo4j schema is at version {} with every index online", version);
+      return true;
+    } catch (Exception e) {
+      log.warn("Could not migrate the Neo4j schema", e);
+      return false;
+    }
+  }
+
+  /**
+   * Gets the version of the last migration applied, or -1 before it is read
+   *
+   * @return int: The schema version
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets whether the schema is migrated and every required index is online
+   *
+   * @return boolean: Whether the schema is ready
+   */
+  public boolean isOnline() {
+    return online;
+  }
+
+  private static int readVersion(Session session) {
+    StatementResult res = session.run("MATCH (v:schemaVersion) RETURN v.version AS version");
+    return res.hasNext() ? res.next().get("version").asInt() : 0;
+  }
+
+  private static void writeVersion(Session session, Migration migration) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("version", migration.version);
+    params.put("description", migration.description);
+    session.run("MERGE (v:schemaVersion) SET v.version = $version, "
+        + "v.description = $description, v.appliedAt = timestamp()", params).consume();
+  }
+
+  private static boolean isEnterprise(Session session) {
+    StatementResult res = session.run("CALL dbms.components() YIELD edition RETURN edition");
+    return res.hasNext() && "enterprise".equalsIgnoreCase(res.next().get("edition").asString());
+  }
+
+  // The required indexes that do not exist or are not online
+  private static List<String> missingIndexes(Session session) {
+    List<String> online = new ArrayList<String>();
+    StatementResult res = session.run("CALL db.indexes() YIELD description, state");
+    while (res.hasNext()) {
+      Record index = res.next();
+      if ("ONLINE".equals(index.get("state").asString())) {
+        online.add(index.get("description").asString());
+      }
+    }
+
+    List<String> missing = new ArrayList<String>();
+    for (String required : REQUIRED_INDEXES) {
+      boolean found = false;
+      for (String description : online) {
+        found = found || description.endsWith(required);
+      }
+      if (!found) {
+        missing.add(required);
+      }
+    }
+    return missing;
+  }
+}
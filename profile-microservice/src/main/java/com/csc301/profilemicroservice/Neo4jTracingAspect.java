@@ -0,0 +1,47 @@
+package com.csc301.profilemicroservice;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.DbQueryExecResult;
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+
+/**
+ * Records a client span to Neo4j around every driver method. Each method runs its queries in a
+ * session and transaction of its own, so the span covers that transaction from opening the
+ * session to the commit. The span is tagged with the DbQueryExecResult of the call.
+ */
+@Aspect
+@Component
+public class Neo4jTracingAspect {
+
+  private final Tracer tracer;
+
+  @Autowired
+  public Neo4jTracingAspect(Tracing tracing) {
+    this.tracer = tracing.tracer();
+  }
+
+  @Around("execution(* com.csc301.profilemicroservice.ProfileDriver.*(..))"
+      + " || execution(* com.csc301.profilemicroservice.PlaylistDriver.*(..))")
+  public Object traceTransaction(ProceedingJoinPoint joinPoint) throws Throwable {
+    Span span = tracer.nextSpan().name(joinPoint.getSignature().getName()).kind(Span.Kind.CLIENT)
+        .remoteServiceName("neo4j").start();
+    try (Tracer.SpanInScope scope = tracer.withSpanInScope(span)) {
+      Object result = joinPoint.proceed();
+      if (result instanceof DbQueryStatus) {
+        span.tag("result", ((DbQueryStatus) result).getdbQueryExecResult().name());
+      }
+      return result;
+    } catch (Throwable e) {
+      span.error(e);
+      throw e;
+    } finally {
+      span.finish();
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.csc301.profilemicroservice;
 
+import java.util.List;
+
 public interface PlaylistDriver {
   DbQueryStatus likeSong(String userName, String songId);
 
@@ -8,4 +10,8 @@ public interface PlaylistDriver {
   DbQueryStatus deleteSongFromDb(String songId);
 
   DbQueryStatus addSongProfile(String songId);
+
+  DbQueryStatus addSongsProfile(List<String> songIds);
+
+  DbQueryStatus deleteSongsFromDb(List<String> songIds);
 }
@@ -1,39 +1,46 @@
 package com.csc301.profilemicroservice;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.neo4j.driver.v1.Driver;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.StatementResult;
 import org.neo4j.driver.v1.Transaction;
 import org.springframework.stereotype.Repository;
+import com.csc301.interservice.DbQueryExecResult;
 
 @Repository
 public class PlaylistDriverImpl implements PlaylistDriver {
 
-  Driver driver = ProfileMicroserviceApplication.driver;
-
-  public static void InitPlaylistDb() {
-    String queryStr;
+  // Every query of the driver, each planned against the schema of Neo4jSchema
+  static final String LIKE_SONG =
+      "MATCH (p:profile {userName: $username})-[:created]->(pl:playlist {plName: $playlistName})\n"
+          + "MATCH (s:song {songId: $id})\n"
+          + "MERGE (pl)-[:includes]->(s)\n"
+          + "RETURN s.songId";
+  static final String UNLIKE_SONG =
+      "MATCH (p:profile {userName: $username})-[:created]->(pl:playlist {plName: $playlistName})\n"
+          + "MATCH (s:song {songId: $id})\n"
+          + "OPTIONAL MATCH (pl)-[r:includes]->(s)\n"
+          + "DELETE r\n"
+          + "RETURN s.songId";
+  static final String DELETE_SONG = "MATCH (a:song {songId:$y})\n DETACH DELETE(a) RETURN(a)";
+  static final String ADD_SONG = "MERGE (a:song {songId:$y})";
+  static final String ADD_SONGS = "UNWIND $ids AS id MERGE (a:song {songId:id})";
+  static final String DELETE_SONGS = "UNWIND $ids AS id MATCH (a:song {songId:id}) DETACH DELETE a";
 
-    try (Session session = ProfileMicroserviceApplication.driver.session()) {
-      try (Transaction trans = session.beginTransaction()) {
-        queryStr = "CREATE CONSTRAINT ON (nPlaylist:playlist) ASSERT exists(nPlaylist.plName)";
-        trans.run(queryStr);
-        trans.success();
-      }
-      session.close();
-    }
-  }
+  Driver driver = ProfileMicroserviceApplication.driver;
 
   /**
-   * Method that allows a user to like a song.
+   * Method that allows a user to like a song. The song is added to the favorites playlist of the
+   * user in a single statement, so liking a song that is already liked changes nothing.
    * 
    * @param userName the username of the profile
    * @param songId the id of the song
    * 
-   * @return the status of the query: OK if the user has successfully liked the song, ERROR_GENERIC
-   *         otherwise
+   * @return the status of the query: OK with whether the song was newly liked as the data if the
+   *         profile and song exist, ERROR_GENERIC otherwise
    */
   @Override
   public DbQueryStatus likeSong(String userName, String songId) {
@@ -42,54 +49,30 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 
       try (Session session = ProfileMicroserviceApplication.driver.session()) {
 
-        try (Transaction trans = session.beginTransaction()) {
-
-          Map<String, Object> params = new HashMap<String, Object>();
-          params.put("username", userName);
-          params.put("id", songId);
-          params.put("playlistName", userName + "-favorites");
-
-          // check if both users exist in the db
-
-          String query1 = "MATCH (p:profile) WHERE p.userName = $username return p";
-          StatementResult res1 = trans.run(query1, params);
-
-          String query2 = "MATCH (s:song) WHERE s.songId = $id return s";
-          StatementResult res2 = trans.run(query2, params);
-
-          if (res1.hasNext() && res2.hasNext()) {
-
-            // check if a connection between the two profiles already exists
-            String query =
-                "MATCH (pl:playlist), (s:song), ((pl)-[r:includes]->(s)) WHERE pl.plName = $playlistName AND s.songId = $id RETURN r";
-            StatementResult res = trans.run(query, params);
-
-            if (res.hasNext()) {
-              return new DbQueryStatus("You already like this song!",
-                  DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
-            }
-
-            // if the query is correct, like song
-            String realQuery =
-                "MATCH (pl:playlist), (s:song) WHERE pl.plName = $playlistName AND s.songId = $id CREATE (pl)-[:includes]->(s)";
-            trans.run(realQuery, params);
-          } else {
-            // if either the song or profile do not exist
-            return new DbQueryStatus(
-                "Could not add song. Make sure the profile and song are both valid!",
-                DbQueryExecResult.QUERY_ERROR_GENERIC);
-          }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("username", userName);
+        params.put("id", songId);
+        params.put("playlistName", userName + "-favorites");
 
-          trans.success();
-          session.close();
-          return new DbQueryStatus("Song has been successfully liked.", DbQueryExecResult.QUERY_OK);
+        // no rows means the profile or the song does not exist, and the counters tell whether
+        // the like was already there
+        StatementResult res = session.run(LIKE_SONG, params);
+        boolean found = res.hasNext();
+        boolean changed = res.consume().counters().relationshipsCreated() > 0;
 
-          // include error messages in the status if anything goes wrong in the process
-        } catch (Exception e) {
-          return new DbQueryStatus("Oh no! Something went wrong in liking this song.",
+        if (!found) {
+          return new DbQueryStatus(
+              "Could not add song. Make sure the profile and song are both valid!",
               DbQueryExecResult.QUERY_ERROR_GENERIC);
         }
 
+        DbQueryStatus dbQueryStatus = new DbQueryStatus(
+            changed ? "Song has been successfully liked." : "You already like this song!",
+            DbQueryExecResult.QUERY_OK);
+        dbQueryStatus.setData(changed);
+        return dbQueryStatus;
+
+        // include error messages in the status if anything goes wrong in the process
       } catch (Exception e) {
         return new DbQueryStatus("Oops! Something went wrong in liking this song.",
             DbQueryExecResult.QUERY_ERROR_GENERIC);
@@ -102,13 +85,14 @@ public class PlaylistDriverImpl implements PlaylistDriver {
   }
 
   /**
-   * Method that allows a user to unlike a song.
+   * Method that allows a user to unlike a song. The song is removed from the favorites playlist of
+   * the user in a single statement, so unliking a song that is not liked changes nothing.
    * 
    * @param userName the username of the profile
    * @param songId the id of the song
    * 
-   * @return the status of the query: OK if the user has successfully unliked the song,
-   *         ERROR_GENERIC otherwise
+   * @return the status of the query: OK with whether the song was liked until now as the data if
+   *         the profile and song exist, ERROR_GENERIC otherwise
    */
   @Override
   public DbQueryStatus unlikeSong(String userName, String songId) {
@@ -117,55 +101,30 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 
       try (Session session = ProfileMicroserviceApplication.driver.session()) {
 
-        try (Transaction trans = session.beginTransaction()) {
-
-          Map<String, Object> params = new HashMap<String, Object>();
-          params.put("username", userName);
-          params.put("id", songId);
-          params.put("playlistName", userName + "-favorites");
-
-          // check if user and song exist in the db
-
-          String query1 = "MATCH (p:profile) WHERE p.userName = $username return p";
-          StatementResult res1 = trans.run(query1, params);
-
-          String query2 = "MATCH (s:song) WHERE s.songId = $id return s";
-          StatementResult res2 = trans.run(query2, params);
-
-          if (res1.hasNext() && res2.hasNext()) {
-
-            // check if a connection between the user's playlist and the song already does not exist
-
-            String query =
-                "MATCH (pl:playlist), (s:song), ((pl)-[r:includes]->(s)) WHERE pl.plName = $playlistName AND s.songId = $id RETURN r";
-            StatementResult res = trans.run(query, params);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("username", userName);
+        params.put("id", songId);
+        params.put("playlistName", userName + "-favorites");
 
-            if (!res.hasNext()) {
-              return new DbQueryStatus("Cannot unlike a song you already do not like!",
-                  DbQueryExecResult.QUERY_ERROR_GENERIC);
-            }
+        // no rows means the profile or the song does not exist, and the counters tell whether
+        // there was a like to remove
+        StatementResult res = session.run(UNLIKE_SONG, params);
+        boolean found = res.hasNext();
+        boolean changed = res.consume().counters().relationshipsDeleted() > 0;
 
-            String realQuery =
-                "MATCH (pl:playlist), (s:song), ((pl)-[r:includes]->(s)) WHERE pl.plName = $playlistName AND s.songId = $id DELETE r";
-            trans.run(realQuery, params);
-          } else {
-            // if either the song or profile do not exist
-            return new DbQueryStatus(
-                "Could not unlike song. Make sure the profile and song are both valid!",
-                DbQueryExecResult.QUERY_ERROR_GENERIC);
-          }
-
-          trans.success();
-          session.close();
-          return new DbQueryStatus("Song has been successfully unliked.",
-              DbQueryExecResult.QUERY_OK);
-
-          // include error messages in the status if anything goes wrong in the process
-        } catch (Exception e) {
-          return new DbQueryStatus("Oh no! Something went wrong in unliking this song.",
+        if (!found) {
+          return new DbQueryStatus(
+              "Could not unlike song. Make sure the profile and song are both valid!",
               DbQueryExecResult.QUERY_ERROR_GENERIC);
         }
 
+        DbQueryStatus dbQueryStatus = new DbQueryStatus(
+            changed ? "Song has been successfully unliked." : "You already do not like this song.",
+            DbQueryExecResult.QUERY_OK);
+        dbQueryStatus.setData(changed);
+        return dbQueryStatus;
+
+        // include error messages in the status if anything goes wrong in the process
       } catch (Exception e) {
         return new DbQueryStatus("Oops! Something went wrong in unliking this song.",
             DbQueryExecResult.QUERY_ERROR_GENERIC);
@@ -191,10 +150,9 @@ public class PlaylistDriverImpl implements PlaylistDriver {
       boolean found = false;
       try (Transaction tx = session.beginTransaction()) {
         // attempt to delete the song with the specified songId from the db
-        String line = "MATCH (a:song {songId:$y})\n DETACH DELETE(a) RETURN(a)";
         HashMap<String, Object> params = new HashMap<>();
         params.put("y", songId);
-        if (tx.run(line, params).hasNext()) {
+        if (tx.run(DELETE_SONG, params).hasNext()) {
           found = true;
         }
 
@@ -225,10 +183,9 @@ public class PlaylistDriverImpl implements PlaylistDriver {
     try (Session session = driver.session()) {
       try (Transaction tx = session.beginTransaction()) {
         // attempt to add a song with the specified songId to the db
-        String line = "MERGE (a:song {songId:$y})";
         HashMap<String, Object> params = new HashMap<>();
         params.put("y", songId);
-        tx.run(line, params);
+        tx.run(ADD_SONG, params);
         tx.success();
       }
       session.close();
@@ -238,4 +195,56 @@ public class PlaylistDriverImpl implements PlaylistDriver {
       return new DbQueryStatus("Add failed", DbQueryExecResult.QUERY_ERROR_GENERIC);
     }
   }
+
+  /**
+   * Method that adds many songs to the database in a single query.
+   * 
+   * @param songIds the ids of the songs
+   * 
+   * @return the status of the query: OK if the songs were successfully added, ERROR_GENERIC
+   *         otherwise
+   */
+  @Override
+  public DbQueryStatus addSongsProfile(List<String> songIds) {
+    try (Session session = driver.session()) {
+      try (Transaction tx = session.beginTransaction()) {
+        // attempt to add a song for every songId in the list to the db
+        HashMap<String, Object> params = new HashMap<>();
+        params.put("ids", songIds);
+        tx.run(ADD_SONGS, params);
+        tx.success();
+      }
+      session.close();
+      return new DbQueryStatus("Add complete", DbQueryExecResult.QUERY_OK);
+    } catch (Exception e) {
+      // if anything goes wrong in the process, include error message in status
+      return new DbQueryStatus("Add failed", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
+
+  /**
+   * Method that deletes many songs from the database in a single query. Songs that are not in the
+   * database are skipped, so deleting the same songs again has no effect.
+   * 
+   * @param songIds the ids of the songs
+   * 
+   * @return the status of the query: OK if the query ran, ERROR_GENERIC otherwise
+   */
+  @Override
+  public DbQueryStatus deleteSongsFromDb(List<String> songIds) {
+    try (Session session = driver.session()) {
+      try (Transaction tx = session.beginTransaction()) {
+        // attempt to delete every song in the list from the db
+        HashMap<String, Object> params = new HashMap<>();
+        params.put("ids", songIds);
+        tx.run(DELETE_SONGS, params);
+        tx.success();
+      }
+      session.close();
+      return new DbQueryStatus("Delete complete", DbQueryExecResult.QUERY_OK);
+    } catch (Exception e) {
+      // if anything goes wrong in the process, include error message in status
+      return new DbQueryStatus("Delete failed", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
 }
@@ -2,8 +2,13 @@ package com.csc301.profilemicroservice;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,17 +16,15 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import okhttp3.Call;
-import okhttp3.HttpUrl;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import com.csc301.interservice.ApiResponse;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
 
 @RestController
 @RequestMapping("/")
 public class ProfileController {
+  private static final Logger log = LoggerFactory.getLogger(ProfileController.class);
+
   public static final String KEY_USER_NAME = "userName";
   public static final String KEY_USER_FULLNAME = "fullName";
   public static final String KEY_USER_PASSWORD = "password";
@@ -32,19 +35,34 @@ public class ProfileController {
   @Autowired
   private final PlaylistDriverImpl playlistDriver;
 
-  OkHttpClient client = new OkHttpClient();
+  @Autowired
+  private final InterServiceClient interServiceClient;
+
+  @Autowired
+  private final ApiResponseFactory responses;
+
+  @Autowired
+  private final SongTitleResolver songTitleResolver;
+
+  @Autowired
+  private final SongFavouritesUpdater songFavouritesUpdater;
 
-  public ProfileController(ProfileDriverImpl profileDriver, PlaylistDriverImpl playlistDriver) {
+  public ProfileController(ProfileDriverImpl profileDriver, PlaylistDriverImpl playlistDriver,
+      InterServiceClient interServiceClient, ApiResponseFactory responses,
+      SongTitleResolver songTitleResolver, SongFavouritesUpdater songFavouritesUpdater) {
     this.profileDriver = profileDriver;
     this.playlistDriver = playlistDriver;
+    this.interServiceClient = interServiceClient;
+    this.responses = responses;
+    this.songTitleResolver = songTitleResolver;
+    this.songFavouritesUpdater = songFavouritesUpdater;
   }
 
   @RequestMapping(value = "/profile", method = RequestMethod.POST)
-  public @ResponseBody Map<String, Object> addProfile(@RequestParam Map<String, String> params,
+  public @ResponseBody ApiResponse addProfile(@RequestParam Map<String, String> params,
       HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("POST %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("POST", request);
     
     // check if all required params are present
     if (params.containsKey("userName") && params.containsKey("fullName")
@@ -53,13 +71,12 @@ public class ProfileController {
       DbQueryStatus dbQueryStatus = profileDriver.createUserProfile(params.get(KEY_USER_NAME),
           params.get(KEY_USER_FULLNAME), params.get(KEY_USER_PASSWORD));
 
-      response.put("message", dbQueryStatus.getMessage());
-      response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-          dbQueryStatus.getData());
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
     } else {
       // return a response saying that invalid parameters have been provided
-      response.put("message", "Invalid parameters given for addProfile");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+      response.setMessage("Invalid parameters given for addProfile");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
     }
 
     return response;
@@ -67,28 +84,25 @@ public class ProfileController {
   }
 
   @RequestMapping(value = "/followFriend/{userName}/{friendUserName}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> followFriend(@PathVariable("userName") String userName,
+  public @ResponseBody ApiResponse followFriend(@PathVariable("userName") String userName,
       @PathVariable("friendUserName") String friendUserName, HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     // my addition
     // call the followFriend function in driver
     DbQueryStatus dbQueryStatus = profileDriver.followFriend(userName, friendUserName);
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
     return response;
     // end of my addition
   }
 
   @RequestMapping(value = "/getAllFriendFavouriteSongTitles/{userName}", method = RequestMethod.GET)
-  public @ResponseBody Map<String, Object> getAllFriendFavouriteSongTitles(
+  public @ResponseBody ApiResponse getAllFriendFavouriteSongTitles(
       @PathVariable("userName") String userName, HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     try {
       // call the getAllSongsFriendsLike function in driver
@@ -96,110 +110,103 @@ public class ProfileController {
       
       // if the function call for getting all songs is successfully executed
       if (dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
-        ObjectMapper dataMap = new ObjectMapper();
-        Map<String, Object> dataResult = dataMap.convertValue(dbQueryStatus.getData(), Map.class);
+        Map<String, List<String>> friendSongs =
+            (Map<String, List<String>>) dbQueryStatus.getData();
+
+        // collect the song ids of every friend so that each song is only looked up once
+        Set<String> songIds = new LinkedHashSet<>();
+        for (List<String> songs : friendSongs.values()) {
+          songIds.addAll(songs);
+        }
+
+        // resolve the titles with concurrent batched calls to the song microservice, leaving out
+        // the songs whose titles did not arrive in time
+        SongTitleResolver.Resolution resolution = songTitleResolver.resolve(songIds);
+        Map<String, String> titles = resolution.getTitles();
+        Set<String> unresolved = resolution.getUnresolved();
+        if (!songIds.isEmpty() && unresolved.size() == songIds.size()) {
+          response.setMessage("Failed to retrieve song titles from MongoDb");
+          response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+          return response;
+        }
+
         HashMap<String, Object> returnMap = new HashMap<>();
-        ArrayList<String> songs;
-        for (String s : dataResult.keySet()) {
-          songs = new ArrayList<>();
-          String songString = dataResult.get(s).toString();
-          String[] songList = songString.substring(1, songString.length() - 1).split(", ");
-          for (String d : songList) {
-            if (!(d.isEmpty())) {
-              HttpUrl.Builder urlBuilder =
-                  HttpUrl.parse("http://localhost:3001" + "/getSongTitleById/" + d).newBuilder();
-              String url = urlBuilder.build().toString();
-
-              Request newRequest = new Request.Builder().url(url).method("GET", null).build();
-
-              Call call = client.newCall(newRequest);
-              Response responseFromMongo = call.execute();
-              String responseValue = responseFromMongo.body().string();
-              if (dataMap.readValue(responseValue, Map.class).get("status").toString()
-                  .equals("OK")) {
-                songs.add(dataMap.readValue(responseValue, Map.class).get("data").toString());
-
-              } else {
-                response.put("message", d + " was not found in MongoDb");
-                response =
-                    Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-                return response;
-              }
+        for (String s : friendSongs.keySet()) {
+          ArrayList<String> songs = new ArrayList<>();
+          for (String d : friendSongs.get(s)) {
+            if (unresolved.contains(d)) {
+              continue;
             }
+            if (!titles.containsKey(d)) {
+              response.setMessage(d + " was not found in MongoDb");
+              response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+              return response;
+            }
+            songs.add(titles.get(d));
           }
           returnMap.put(s, songs.toArray());
         }
-        dbQueryStatus.setMessage("Retrieval Successful");
+        dbQueryStatus.setMessage(unresolved.isEmpty() ? "Retrieval Successful"
+            : "Retrieval Partial: " + unresolved.size()
+                + " song titles were not retrieved in time");
         dbQueryStatus.setdbQueryExecResult(DbQueryExecResult.QUERY_OK);
         dbQueryStatus.setData(returnMap);
 
       }
-      response.put("message", dbQueryStatus.getMessage());
-      response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-          dbQueryStatus.getData());
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
 
     } catch (Exception e) {
-      e.printStackTrace();
-      response.put("message", "Failed to get all songs friends like");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+      log.warn("Could not get the songs friends of {} like", userName, e);
+      response.setMessage("Failed to get all songs friends like");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
     }
 
     return response;
   }
 
   @RequestMapping(value = "/unfollowFriend/{userName}/{friendUserName}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> unfollowFriend(@PathVariable("userName") String userName,
+  public @ResponseBody ApiResponse unfollowFriend(@PathVariable("userName") String userName,
       @PathVariable("friendUserName") String friendUserName, HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     // my addition
     // call the unfollowFriend function in driver
     DbQueryStatus dbQueryStatus = profileDriver.unfollowFriend(userName, friendUserName);
 
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
 
     return response;
     // end of my addition
   }
 
   @RequestMapping(value = "/likeSong/{userName}/{songId}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> likeSong(@PathVariable("userName") String userName,
+  public @ResponseBody ApiResponse likeSong(@PathVariable("userName") String userName,
       @PathVariable("songId") String songId, HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     try {
       // call the likeSong function in driver
       DbQueryStatus dbQueryStatus = playlistDriver.likeSong(userName, songId);
       
-      // if the function was called successfully, update the song count in the song
-      if (dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
-        HttpUrl.Builder urlBuilder = HttpUrl
-            .parse("http://localhost:3001" + "/updateSongFavouritesCount/" + songId).newBuilder();
-        urlBuilder.addQueryParameter("shouldDecrement", "false");
-        String url = urlBuilder.build().toString();
-        RequestBody body = RequestBody.create(new byte[0], null);
-
-        Request newRequest = new Request.Builder().url(url).method("PUT", body).build();
-
-        Call call = client.newCall(newRequest);
-        call.execute();
-      } else if (dbQueryStatus.getdbQueryExecResult()
-          .equals(DbQueryExecResult.QUERY_ERROR_NOT_FOUND)) {
-        dbQueryStatus.setdbQueryExecResult(DbQueryExecResult.QUERY_OK);
+      // update the song count in the song microservice only if the song was not liked before, so
+      // that liking a song again does not count it twice. The like is only taken back if the count
+      // was certainly not updated, so that a retry likes the song and counts it again; a count
+      // whose update may have arrived is retried by the updater instead
+      if (Boolean.TRUE.equals(dbQueryStatus.getData()) && songFavouritesUpdater.update(songId,
+          false) == SongFavouritesUpdater.Outcome.NOT_UPDATED) {
+        playlistDriver.unlikeSong(userName, songId);
+        throw new IllegalStateException("Favourites count of " + songId + " was not updated");
       }
-      response.put("message", dbQueryStatus.getMessage());
-      response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-          dbQueryStatus.getData());
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), null);
 
     } catch (Exception e) {
-      response.put("message", "Failed to like song");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+      response.setMessage("Failed to like song");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
     }
 
     return response;
@@ -207,37 +214,30 @@ public class ProfileController {
   }
 
   @RequestMapping(value = "/unlikeSong/{userName}/{songId}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> unlikeSong(@PathVariable("userName") String userName,
+  public @ResponseBody ApiResponse unlikeSong(@PathVariable("userName") String userName,
       @PathVariable("songId") String songId, HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     try {
       // call the unlikeSong function in driver
 
       DbQueryStatus dbQueryStatus = playlistDriver.unlikeSong(userName, songId);
       
-      // if the function was called successfully, update the song count in the song
-      if (dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
-        HttpUrl.Builder urlBuilder = HttpUrl
-            .parse("http://localhost:3001" + "/updateSongFavouritesCount/" + songId).newBuilder();
-        urlBuilder.addQueryParameter("shouldDecrement", "true");
-        String url = urlBuilder.build().toString();
-        RequestBody body = RequestBody.create(new byte[0], null);
-
-        Request newRequest = new Request.Builder().url(url).method("PUT", body).build();
-
-        Call call = client.newCall(newRequest);
-        call.execute();
+      // update the song count in the song microservice only if the song was liked until now. The
+      // song is only liked again if the count was certainly not updated, so that a retry unlikes
+      // it and counts it again
+      if (Boolean.TRUE.equals(dbQueryStatus.getData()) && songFavouritesUpdater.update(songId,
+          true) == SongFavouritesUpdater.Outcome.NOT_UPDATED) {
+        playlistDriver.likeSong(userName, songId);
+        throw new IllegalStateException("Favourites count of " + songId + " was not updated");
       }
-      response.put("message", dbQueryStatus.getMessage());
-      response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-          dbQueryStatus.getData());
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), null);
 
     } catch (Exception e) {
-      response.put("message", "Failed to unlike song");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+      response.setMessage("Failed to unlike song");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
     }
 
     return response;
@@ -245,34 +245,72 @@ public class ProfileController {
   }
 
   @RequestMapping(value = "/deleteAllSongsFromDb/{songId}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> deleteAllSongsFromDb(
+  public @ResponseBody ApiResponse deleteAllSongsFromDb(
       @PathVariable("songId") String songId, HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     // call the deleteSongFromDb function in driver
     DbQueryStatus dbQueryStatus = playlistDriver.deleteSongFromDb(songId);
 
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
 
     return response;
   }
 
   @RequestMapping(value = "/addSongProfile/{songId}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> addSongProfile(@PathVariable("songId") String songId,
+  public @ResponseBody ApiResponse addSongProfile(@PathVariable("songId") String songId,
       HttpServletRequest request) {
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
     // call the addSongProfile function in driver
     DbQueryStatus dbQueryStatus = playlistDriver.addSongProfile(songId);
 
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+  @RequestMapping(value = "/addSongsProfile", method = RequestMethod.PUT)
+  public @ResponseBody ApiResponse addSongsProfile(
+      @org.springframework.web.bind.annotation.RequestBody List<String> songIds,
+      HttpServletRequest request) {
+
+    ApiResponse response = responses.create("PUT", request);
+    // call the addSongsProfile function in driver
+    DbQueryStatus dbQueryStatus = playlistDriver.addSongsProfile(songIds);
+
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+  @RequestMapping(value = "/deleteSongsFromDb", method = RequestMethod.PUT)
+  public @ResponseBody ApiResponse deleteSongsFromDb(
+      @org.springframework.web.bind.annotation.RequestBody List<String> songIds,
+      HttpServletRequest request) {
+
+    ApiResponse response = responses.create("PUT", request);
+    // call the deleteSongsFromDb function in driver
+    DbQueryStatus dbQueryStatus = playlistDriver.deleteSongsFromDb(songIds);
+
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+  @RequestMapping(value = "/getInterServiceClientStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getInterServiceClientStats(HttpServletRequest request) {
+
+    ApiResponse response = responses.create("GET", request);
+
+    // return the circuit breaker states and call counters of the inter-service client
+    response.setMessage("Inter-service client stats retrieved");
+    response.setStatus(DbQueryExecResult.QUERY_OK, interServiceClient.getStats());
 
     return response;
   }
@@ -1,39 +1,43 @@
 package com.csc301.profilemicroservice;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.StatementResult;
 import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.Values;
 import org.springframework.stereotype.Repository;
+import com.csc301.interservice.DbQueryExecResult;
 
 
 @Repository
 public class ProfileDriverImpl implements ProfileDriver {
 
-  Driver driver = ProfileMicroserviceApplication.driver;
-
-  public static void InitProfileDb() {
-    String queryStr;
-
-    try (Session session = ProfileMicroserviceApplication.driver.session()) {
-      try (Transaction trans = session.beginTransaction()) {
-        queryStr = "CREATE CONSTRAINT ON (nProfile:profile) ASSERT exists(nProfile.userName)";
-        trans.run(queryStr);
-
-        queryStr = "CREATE CONSTRAINT ON (nProfile:profile) ASSERT exists(nProfile.password)";
-        trans.run(queryStr);
+  // Every query of the driver, each planned against the schema of Neo4jSchema
+  static final String FIND_PROFILE = "MATCH (p:profile) WHERE p.userName = $username RETURN p";
+  static final String FIND_FRIEND =
+      "MATCH (p:profile) WHERE p.userName = $friendUsername RETURN p";
+  static final String CREATE_PROFILE =
+      "CREATE (p:profile {userName: $username, fullName: $fullname, password: $password})";
+  static final String MERGE_FAVORITES = "MERGE (p:playlist {plName: $playlistName})";
+  static final String CREATE_FAVORITES = "MATCH (p:profile), (pl:playlist) "
+      + "WHERE p.userName = $username AND pl.plName = $playlistName CREATE (p)-[:created]->(pl)";
+  static final String FIND_FOLLOW = "MATCH (p:profile), (fp:profile), ((p)-[r:follows]->(fp)) "
+      + "WHERE p.userName = $username AND fp.userName = $friendUsername RETURN r";
+  static final String CREATE_FOLLOW = "MATCH (p:profile), (fp:profile) "
+      + "WHERE p.userName = $username AND fp.userName = $friendUsername "
+      + "CREATE (p)-[:follows]->(fp)";
+  static final String DELETE_FOLLOW = "MATCH (p:profile), (fp:profile), ((p)-[r:follows]->(fp)) "
+      + "WHERE p.userName = $username AND fp.userName = $friendUsername DELETE r";
+  static final String FRIEND_SONGS = "MATCH (p:profile {userName: $username})\n"
+      + "OPTIONAL MATCH (p)-[:follows]->(friend:profile)\n"
+      + "OPTIONAL MATCH (friend)-[:created]->(:playlist)-[:includes]->(s:song)\n"
+      + "RETURN friend.userName AS friend, collect(DISTINCT s.songId) AS songIds";
 
-        queryStr = "CREATE CONSTRAINT ON (nProfile:profile) ASSERT nProfile.userName IS UNIQUE";
-        trans.run(queryStr);
-
-        trans.success();
-      }
-      session.close();
-    }
-  }
+  Driver driver = ProfileMicroserviceApplication.driver;
 
   /**
    * Method that creates a new profile in the database.
@@ -64,24 +68,18 @@ public class ProfileDriverImpl implements ProfileDriver {
 
           // check if a profile with username userName already exists
 
-          String query1 = "MATCH (p:profile) WHERE p.userName = $username RETURN p";
-          StatementResult res1 = trans.run(query1, params);
+          StatementResult res1 = trans.run(FIND_PROFILE, params);
           if (res1.hasNext()) {
             return new DbQueryStatus("A profile with that username already exists.",
                 DbQueryExecResult.QUERY_ERROR_GENERIC);
           }
 
           // create the profile and the user playlist if the query is correctly formatted
-          String query2 =
-              "CREATE (p:profile {userName: $username, fullName: $fullname, password: $password})";
-          trans.run(query2, params);
+          trans.run(CREATE_PROFILE, params);
 
-          String query3 = "MERGE (p:playlist {plName: $playlistName})";
-          trans.run(query3, params);
+          trans.run(MERGE_FAVORITES, params);
 
-          String query4 =
-              "MATCH (p:profile), (pl:playlist) WHERE p.userName = $username AND pl.plName = $playlistName CREATE (p)-[:created]->(pl)";
-          trans.run(query4, params);
+          trans.run(CREATE_FAVORITES, params);
 
           trans.success();
           session.close();
@@ -130,19 +128,15 @@ public class ProfileDriverImpl implements ProfileDriver {
 
           // check if both users exist in the db
 
-          String query1 = "MATCH (p:profile) WHERE p.userName = $username RETURN p";
-          StatementResult res1 = trans.run(query1, params);
+          StatementResult res1 = trans.run(FIND_PROFILE, params);
 
-          String query2 = "MATCH (p:profile) WHERE p.userName = $friendUsername RETURN p";
-          StatementResult res2 = trans.run(query2, params);
+          StatementResult res2 = trans.run(FIND_FRIEND, params);
 
           if (res1.hasNext() && res2.hasNext()) {
 
             // check if a connection between the two profiles already exists
 
-            String query =
-                "MATCH (p:profile), (fp:profile), ((p)-[r:follows]->(fp)) WHERE p.userName = $username AND fp.userName = $friendUsername RETURN r";
-            StatementResult res = trans.run(query, params);
+            StatementResult res = trans.run(FIND_FOLLOW, params);
 
             if (res.hasNext()) {
               return new DbQueryStatus("You already follow this user!",
@@ -150,9 +144,7 @@ public class ProfileDriverImpl implements ProfileDriver {
             }
 
             // if the query is properly formatted, follow the friend
-            String realQuery =
-                "MATCH (p:profile), (fp:profile) WHERE p.userName = $username AND fp.userName = $friendUsername CREATE (p)-[:follows]->(fp)";
-            trans.run(realQuery, params);
+            trans.run(CREATE_FOLLOW, params);
 
           } else {
             return new DbQueryStatus("Could not follow. Make sure both usernames are valid!",
@@ -205,19 +197,15 @@ public class ProfileDriverImpl implements ProfileDriver {
 
           // check if both users exist in the db
 
-          String query1 = "MATCH (p:profile) WHERE p.userName = $username RETURN p";
-          StatementResult res1 = trans.run(query1, params);
+          StatementResult res1 = trans.run(FIND_PROFILE, params);
 
-          String query2 = "MATCH (p:profile) WHERE p.userName = $friendUsername RETURN p";
-          StatementResult res2 = trans.run(query2, params);
+          StatementResult res2 = trans.run(FIND_FRIEND, params);
 
           if (res1.hasNext() && res2.hasNext()) {
 
             // check if a connection between the two profiles already does not exist
 
-            String query =
-                "MATCH (p:profile), (fp:profile), ((p)-[r:follows]->(fp)) WHERE p.userName = $username AND fp.userName = $friendUsername RETURN r";
-            StatementResult res = trans.run(query, params);
+            StatementResult res = trans.run(FIND_FOLLOW, params);
 
             if (!res.hasNext()) {
               return new DbQueryStatus("Cannot unfollow a user you haven't even followed!",
@@ -225,9 +213,7 @@ public class ProfileDriverImpl implements ProfileDriver {
             }
 
             // if the query is properly formatted, follow the friend
-            String realQuery =
-                "MATCH (p:profile), (fp:profile), ((p)-[r:follows]->(fp)) WHERE p.userName = $username AND fp.userName = $friendUsername DELETE r";
-            trans.run(realQuery, params);
+            trans.run(DELETE_FOLLOW, params);
           } else {
             return new DbQueryStatus("Could not unfollow. Make sure both usernames are valid!",
                 DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
@@ -255,12 +241,14 @@ public class ProfileDriverImpl implements ProfileDriver {
   }
 
   /**
-   * Method that retrieves the songs of all friends' playlists.
+   * Method that retrieves the songs of all friends' playlists. The user, their friends and the
+   * songs of each friend are read with a single query, one row per friend.
    * 
    * @param userName the username of the profile
    * 
-   * @return the status of the query: OK if the songs are able to be displayed, ERROR_GENERIC
-   *         otherwise
+   * @return the status of the query: OK with the song ids of each friend by friend username if the
+   *         songs are able to be displayed, ERROR_NOT_FOUND if the user does not exist,
+   *         ERROR_GENERIC otherwise
    */
   @Override
   public DbQueryStatus getAllSongFriendsLike(String userName) {
@@ -268,46 +256,28 @@ public class ProfileDriverImpl implements ProfileDriver {
 
       try (Session session = ProfileMicroserviceApplication.driver.session()) {
 
-        try (Transaction trans = session.beginTransaction()) {
+        try {
 
           Map<String, Object> params = new HashMap<String, Object>();
           params.put("username", userName);
-          String tempName;
 
-          // check if user exist in the db
-
-          String query1 = "MATCH (p:profile) WHERE p.userName = $username return p";
-          StatementResult res1 = trans.run(query1, params);
-
-          if (res1.hasNext()) {
+          // The optional matches keep a row for a user with no friends, so that no rows at all
+          // means the user does not exist. Songs are collected once per friend even when the
+          // follow or the like was recorded more than once
+          StatementResult res = session.run(FRIEND_SONGS, params);
 
-            // if the user exists, get all friends of the user
-            String query =
-                "MATCH (p:profile), (fp:profile), ((p)-[r:follows]->(fp)) WHERE p.userName = $username RETURN fp";
-            StatementResult res = trans.run(query, params);
-            // Map<String, Object> resultMap = res.next().fields().get(0).value().asMap();
-            HashMap<String, String> returnMap = new HashMap<>();
-            ArrayList<String> songs;
+          if (res.hasNext()) {
 
+            // associate each friend with their song ids as the rows arrive
+            Map<String, List<String>> returnMap = new HashMap<String, List<String>>();
             while (res.hasNext()) {
-              params = new HashMap<String, Object>();
-              songs = new ArrayList<String>();
-              tempName = res.next().fields().get(0).value().asMap().get("userName").toString();
-              params.put("username", tempName);
-              query = "MATCH (l:profile {userName:$username})\n" + "Match (z:playlist)\n"
-                  + "Where (l)-[:created]->(z)\n" + "Match (s:song)\n"
-                  + "Where (z)-[:includes]->(s)\n" + "Return(s)";
-              // get the songs from the friends playlist and add to to song list
-              StatementResult res2 = trans.run(query, params);
-              while (res2.hasNext()) {
-                songs.add(res2.next().fields().get(0).value().asMap().get("songId").toString());
+              Record row = res.next();
+              if (!row.get("friend").isNull()) {
+                returnMap.put(row.get("friend").asString(),
+                    row.get("songIds").asList(Values.ofString()));
               }
-              // associate each friend with their song list
-              returnMap.put(tempName, songs.toString());
             }
 
-            trans.success();
-            session.close();
             DbQueryStatus ret = new DbQueryStatus("Success", DbQueryExecResult.QUERY_OK);
             ret.setData(returnMap);
 
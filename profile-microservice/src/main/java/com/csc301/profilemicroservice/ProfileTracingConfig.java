@@ -0,0 +1,39 @@
+package com.csc301.profilemicroservice;
+
+import javax.servlet.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import brave.http.HttpTracing;
+import brave.servlet.TracingFilter;
+import brave.spring.webmvc.SpanCustomizingAsyncHandlerInterceptor;
+
+/**
+ * Tracing of the profile microservice on top of the shared TracingConfig: a span for every
+ * request, named after the matched route. Calls to the song microservice are traced by
+ * InterServiceClient, and Neo4j transactions by Neo4jTracingAspect.
+ */
+@Configuration
+@Import(SpanCustomizingAsyncHandlerInterceptor.class)
+public class ProfileTracingConfig implements WebMvcConfigurer {
+
+  @Autowired
+  private SpanCustomizingAsyncHandlerInterceptor spanCustomizingInterceptor;
+
+  @Bean
+  public FilterRegistrationBean<Filter> tracingFilter(HttpTracing httpTracing) {
+    FilterRegistrationBean<Filter> registration =
+        new FilterRegistrationBean<Filter>(TracingFilter.create(httpTracing));
+    registration.setOrder(Integer.MIN_VALUE);
+    return registration;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(spanCustomizingInterceptor);
+  }
+}
@@ -0,0 +1,160 @@
+package com.csc301.profilemicroservice;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.CallRejectedException;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.interservice.SongWireCodec;
+
+/**
+ * Updates the favourites counts of songs in the song microservice. Every update carries a request
+ * id, which the song microservice applies only once, so an update whose outcome is unknown, because
+ * the call failed or timed out after it was sent or the song microservice answered with an error,
+ * is retried in the background with the same id until the song microservice answers. Retries wait
+ * songFavourites.retryDelayMs, doubling after every attempt, and give up after
+ * songFavourites.retryAttempts attempts.
+ *
+ * Only updates that certainly did not change the count, because the song does not exist or the
+ * call was turned away before it was sent, are reported as not updated.
+ */
+@Component
+public class SongFavouritesUpdater {
+  private static final Logger log = LoggerFactory.getLogger(SongFavouritesUpdater.class);
+
+  // The longest wait between retries is the first one doubled this many times
+  private static final int MAX_BACKOFF_DOUBLINGS = 8;
+
+  /**
+   * What became of an update: applied, certainly not applied, or not known yet and being retried
+   */
+  public enum Outcome {
+    UPDATED, NOT_UPDATED, PENDING
+  }
+
+  private final InterServiceClient interServiceClient;
+  private final boolean binarySongCalls;
+  private final long retryDelayMs;
+  private final int retryAttempts;
+  private final ScheduledExecutorService retrier;
+
+  @Autowired
+  public SongFavouritesUpdater(InterServiceClient interServiceClient,
+      @Value("${interservice.song.binary:true}") boolean binarySongCalls,
+      @Value("${songFavourites.retryDelayMs:200}") long retryDelayMs,
+      @Value("${songFavourites.retryAttempts:10}") int retryAttempts) {
+    this.interServiceClient = interServiceClient;
+    this.binarySongCalls = binarySongCalls;
+    this.retryDelayMs = retryDelayMs;
+    this.retryAttempts = retryAttempts;
+    this.retrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "song-favourites-retry");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void stop() {
+    int dropped = retrier.shutdownNow().size();
+    if (dropped > 0) {
+      log.warn("Dropped {} favourites count updates still being retried", dropped);
+    }
+  }
+
+  /**
+   * Increments or decrements the favourites count of a song in the song microservice, retrying in
+   * the background if the outcome is not known
+   *
+   * @param songId the id of the song
+   * @param shouldDecrement whether to decrement instead of increment
+   * @return Outcome whether the count was updated, was not updated, or is being retried
+   */
+  public Outcome update(String songId, boolean shouldDecrement) {
+    String requestId = UUID.randomUUID().toString();
+    try {
+      switch (send(songId, shouldDecrement, requestId)) {
+        case OK:
+          return Outcome.UPDATED;
+        case NOT_FOUND:
+          return Outcome.NOT_UPDATED;
+        default:
+          // the song microservice may have failed after the count was written
+          break;
+      }
+    } catch (CallRejectedException e) {
+      return Outcome.NOT_UPDATED;
+    } catch (IOException e) {
+      // the request may have reached the song microservice
+    }
+
+    retry(songId, shouldDecrement, requestId, 1);
+    return Outcome.PENDING;
+  }
+
+  // Sends the update again after a delay, until the song microservice answers it
+  private void retry(String songId, boolean shouldDecrement, String requestId, int attempt) {
+    if (attempt > retryAttempts) {
+      log.error("Gave up updating the favourites count of song {} after {} attempts", songId,
+          retryAttempts);
+      return;
+    }
+
+    try {
+      retrier.schedule(() -> {
+        SongWireCodec.Status status;
+        try {
+          status = send(songId, shouldDecrement, requestId);
+        } catch (IOException e) {
+          status = SongWireCodec.Status.ERROR;
+        }
+        if (status == SongWireCodec.Status.ERROR) {
+          retry(songId, shouldDecrement, requestId, attempt + 1);
+        }
+      }, retryDelayMs << Math.min(attempt - 1, MAX_BACKOFF_DOUBLINGS), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      log.warn("Could not retry the favourites count update of song {}, shutting down", songId);
+    }
+  }
+
+  /**
+   * Sends one favourites count update to the song microservice
+   *
+   * @param songId the id of the song
+   * @param shouldDecrement whether to decrement instead of increment
+   * @param requestId the id the song microservice applies the update once for
+   * @return SongWireCodec.Status the status the song microservice answered with
+   * @throws IOException if the call failed or was turned away
+   */
+  private SongWireCodec.Status send(String songId, boolean shouldDecrement, String requestId)
+      throws IOException {
+    if (binarySongCalls) {
+      // ids that are not song ids cannot be in the song microservice
+      if (!SongWireCodec.isValidId(songId)) {
+        return SongWireCodec.Status.NOT_FOUND;
+      }
+      return SongWireCodec.decodeFavouritesResponse(
+          interServiceClient.callBinary("song", "PUT", "/internal/updateSongFavouritesCount",
+              SongWireCodec.encodeFavouritesRequest(songId, shouldDecrement, requestId)))
+          .getStatus();
+    }
+
+    Map<String, Object> responseValue = interServiceClient.put("song", "/updateSongFavouritesCount/"
+        + songId + "?shouldDecrement=" + shouldDecrement + "&requestId=" + requestId, null);
+    if ("OK".equals(responseValue.get("status"))) {
+      return SongWireCodec.Status.OK;
+    }
+    return "NOT_FOUND".equals(responseValue.get("status")) ? SongWireCodec.Status.NOT_FOUND
+        : SongWireCodec.Status.ERROR;
+  }
+}
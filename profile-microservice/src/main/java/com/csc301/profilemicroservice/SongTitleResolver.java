@@ -0,0 +1,216 @@
+package com.csc301.profilemicroservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.interservice.SongWireCodec;
+
+/**
+ * Looks up the titles of songs in the song microservice. The ids of a lookup are split into
+ * batches of songTitles.batchSize, and up to songTitles.maxInFlight batches are looked up at the
+ * same time, each one starting as soon as another is back. Every lookup has a deadline of
+ * songTitles.deadlineMs, after which the batches still in flight are cancelled and the ones not
+ * started are skipped.
+ *
+ * Ids of batches that failed or missed the deadline are left unresolved, so the caller can answer
+ * with the titles that did arrive.
+ */
+@Component
+public class SongTitleResolver {
+
+  private final InterServiceClient interServiceClient;
+  private final boolean binarySongCalls;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final long deadlineMs;
+
+  @Autowired
+  public SongTitleResolver(InterServiceClient interServiceClient,
+      @Value("${interservice.song.binary:true}") boolean binarySongCalls,
+      @Value("${songTitles.batchSize:100}") int batchSize,
+      @Value("${songTitles.maxInFlight:4}") int maxInFlight,
+      @Value("${songTitles.deadlineMs:3000}") long deadlineMs) {
+    this.interServiceClient = interServiceClient;
+    this.binarySongCalls = binarySongCalls;
+    this.batchSize = batchSize;
+    this.maxInFlight = maxInFlight;
+    this.deadlineMs = deadlineMs;
+  }
+
+  /**
+   * The titles found by a lookup, and the ids that could not be looked up. Ids that are in neither
+   * were looked up and do not exist.
+   */
+  public static final class Resolution {
+    private final Map<String, String> titles;
+    private final Set<String> unresolved;
+
+    Resolution(Map<String, String> titles, Set<String> unresolved) {
+      this.titles = titles;
+      this.unresolved = unresolved;
+    }
+
+    public Map<String, String> getTitles() {
+      return titles;
+    }
+
+    public Set<String> getUnresolved() {
+      return unresolved;
+    }
+  }
+
+  /**
+   * Looks up the titles of songs, waiting until every batch is back or the deadline has passed
+   *
+   * @param songIds: The ids of the songs, each looked up once however often it appears
+   * @return Resolution: The titles found and the ids that could not be looked up in time
+   * @throws InterruptedException if interrupted while waiting for the batches
+   */
+  public Resolution resolve(Collection<String> songIds) throws InterruptedException {
+    List<String> ids = new ArrayList<String>(new LinkedHashSet<String>(songIds));
+    List<List<String>> batches = new ArrayList<List<String>>();
+    for (int i = 0; i < ids.size(); i += batchSize) {
+      batches.add(ids.subList(i, Math.min(i + batchSize, ids.size())));
+    }
+
+    Lookup lookup = new Lookup(batches, System.nanoTime() + deadlineMs * 1000000);
+    List<CompletableFuture<Void>> lanes = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < Math.min(maxInFlight, batches.size()); i++) {
+      lanes.add(lookup.next());
+    }
+
+    try {
+      CompletableFuture.allOf(lanes.toArray(new CompletableFuture<?>[0]))
+          .get(Math.max(0, lookup.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException | ExecutionException e) {
+      // Answer with the batches that are back
+    } finally {
+      lookup.cancel();
+    }
+
+    // Batches are marked resolved after their titles are added, so every id in the copy of the
+    // resolved ids has its title in the copy of the titles taken after it
+    Set<String> resolved = new HashSet<String>(lookup.resolved);
+    Map<String, String> titles = new HashMap<String, String>(lookup.titles);
+    Set<String> unresolved = new LinkedHashSet<String>(ids);
+    unresolved.removeAll(resolved);
+    return new Resolution(titles, unresolved);
+  }
+
+  // The state of one lookup, shared by the batches in flight
+  private final class Lookup {
+    private final List<List<String>> batches;
+    private final long deadline;
+    private final AtomicInteger nextBatch = new AtomicInteger();
+    private final Map<String, String> titles = new ConcurrentHashMap<String, String>();
+    private final Set<String> resolved = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<DbQueryStatus>> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    private Lookup(List<List<String>> batches, long deadline) {
+      this.batches = batches;
+      this.deadline = deadline;
+    }
+
+    // Looks up the next batch not taken yet, and then the one after, until none are left
+    private CompletableFuture<Void> next() {
+      int index = nextBatch.getAndIncrement();
+      if (cancelled || index >= batches.size() || System.nanoTime() >= deadline) {
+        return CompletableFuture.completedFuture(null);
+      }
+
+      List<String> batch = batches.get(index);
+      CompletableFuture<DbQueryStatus> call = lookUp(batch);
+      inFlight.add(call);
+      if (cancelled) {
+        // cancelled while the call was being made
+        call.cancel(true);
+      }
+      return call.handle((status, e) -> {
+        inFlight.remove(call);
+        if (e == null && status.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
+          titles.putAll((Map<String, String>) status.getData());
+          resolved.addAll(batch);
+        }
+        return null;
+      }).thenCompose(ignored -> next());
+    }
+
+    private void cancel() {
+      cancelled = true;
+      for (CompletableFuture<DbQueryStatus> call : inFlight) {
+        call.cancel(true);
+      }
+    }
+  }
+
+  // Looks up the titles of one batch of songs
+  private CompletableFuture<DbQueryStatus> lookUp(List<String> songIds) {
+    if (binarySongCalls) {
+      byte[] request;
+      try {
+        request = SongWireCodec.encodeTitlesRequest(songIds);
+      } catch (IOException e) {
+        CompletableFuture<DbQueryStatus> failed = new CompletableFuture<DbQueryStatus>();
+        failed.completeExceptionally(e);
+        return failed;
+      }
+      return decode(
+          interServiceClient.callBinaryAsync("song", "POST", "/internal/getSongTitlesByIds",
+              request),
+          response -> {
+            SongWireCodec.Result<Map<String, String>> result;
+            try {
+              result = SongWireCodec.decodeTitlesResponse(response);
+            } catch (IOException e) {
+              throw new IllegalStateException(e);
+            }
+            DbQueryStatus dbQueryStatus = new DbQueryStatus(result.getStatus().name(),
+                result.getStatus() == SongWireCodec.Status.OK ? DbQueryExecResult.QUERY_OK
+                    : DbQueryExecResult.QUERY_ERROR_GENERIC);
+            dbQueryStatus.setData(result.getData());
+            return dbQueryStatus;
+          });
+    }
+
+    return decode(interServiceClient.callAsync("song", "POST", "/getSongTitlesByIds", songIds),
+        responseValue -> {
+          DbQueryStatus dbQueryStatus =
+              new DbQueryStatus(String.valueOf(responseValue.get("message")),
+                  "OK".equals(responseValue.get("status")) ? DbQueryExecResult.QUERY_OK
+                      : DbQueryExecResult.QUERY_ERROR_GENERIC);
+          dbQueryStatus.setData(responseValue.get("data"));
+          return dbQueryStatus;
+        });
+  }
+
+  // Decodes the response of a call once it arrives, giving up on the call if cancelled before
+  private static <T> CompletableFuture<DbQueryStatus> decode(CompletableFuture<T> call,
+      Function<T, DbQueryStatus> decoder) {
+    CompletableFuture<DbQueryStatus> status = call.thenApply(decoder);
+    status.whenComplete((value, e) -> {
+      if (status.isCancelled()) {
+        call.cancel(true);
+      }
+    });
+    return status;
+  }
+}
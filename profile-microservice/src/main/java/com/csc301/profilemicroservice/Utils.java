@@ -3,6 +3,7 @@ package com.csc301.profilemicroservice;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.http.HttpStatus;
+import com.csc301.interservice.DbQueryExecResult;
 
 import okhttp3.RequestBody;
 
@@ -0,0 +1,126 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.GraphDatabase;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.summary.Plan;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+
+/**
+ * Migrates an in-process Neo4j and plans every query of the drivers against it, so that a query
+ * that would scan a label instead of seeking an index fails the build.
+ */
+public class Neo4jSchemaTest {
+
+	private static final List<String> SCANS = Arrays.asList("NodeByLabelScan", "AllNodesScan");
+
+	private static ServerControls neo4j;
+	private static Driver driver;
+
+	@BeforeClass
+	public static void startNeo4j() {
+		neo4j = TestServerBuilders.newInProcessBuilder()
+				.withConfig("dbms.connector.http.enabled", "false").newServer();
+		driver = GraphDatabase.driver(neo4j.boltURI(), AuthTokens.none(),
+				Config.build().withoutEncryption().toConfig());
+		assertTrue(new Neo4jSchema(driver, 60).migrate());
+	}
+
+	@AfterClass
+	public static void stopNeo4j() {
+		driver.close();
+		neo4j.close();
+	}
+
+	@Test
+	public void migrateIsAppliedOnce() {
+		Neo4jSchema schema = new Neo4jSchema(driver, 60);
+		assertTrue(schema.migrate());
+		assertTrue(schema.isOnline());
+
+		int latest = Neo4jSchema.MIGRATIONS.get(Neo4jSchema.MIGRATIONS.size() - 1).version;
+		assertEquals(latest, schema.getVersion());
+		try (Session session = driver.session()) {
+			assertEquals(1, session.run("MATCH (v:schemaVersion) RETURN v").list().size());
+		}
+	}
+
+	@Test
+	public void scansAreDetected() {
+		assertTrue(scans("MATCH (s:song) WHERE s.songName = $id RETURN s").contains("NodeByLabelScan"));
+	}
+
+	@Test
+	public void noDriverQueryScansALabel() throws IllegalAccessException {
+		List<String> queries = new ArrayList<String>();
+		queries.addAll(queries(ProfileDriverImpl.class));
+		queries.addAll(queries(PlaylistDriverImpl.class));
+		assertTrue(queries.size() > 10);
+
+		List<String> scanning = new ArrayList<String>();
+		for (String query : queries) {
+			List<String> scans = scans(query);
+			if (!scans.isEmpty()) {
+				scanning.add(scans + " in " + query);
+			}
+		}
+		assertTrue("Queries planned with a scan: " + scanning, scanning.isEmpty());
+	}
+
+	// The queries a driver keeps as constants
+	private static List<String> queries(Class<?> driverClass) throws IllegalAccessException {
+		List<String> queries = new ArrayList<String>();
+		for (Field field : driverClass.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)
+					&& field.getType() == String.class) {
+				queries.add((String) field.get(null));
+			}
+		}
+		return queries;
+	}
+
+	// The scan operators in the plan of a query
+	private static List<String> scans(String query) {
+		Map<String, Object> params = new HashMap<String, Object>();
+		for (String name : Arrays.asList("username", "friendUsername", "fullname", "password",
+				"playlistName", "id", "y")) {
+			params.put(name, "name");
+		}
+		params.put("ids", Arrays.asList("id"));
+
+		try (Session session = driver.session()) {
+			List<String> scans = new ArrayList<String>();
+			collectScans(session.run("EXPLAIN " + query, params).consume().plan(), scans);
+			return scans;
+		}
+	}
+
+	private static void collectScans(Plan plan, List<String> scans) {
+		for (String scan : SCANS) {
+			if (plan.operatorType().startsWith(scan)) {
+				scans.add(plan.operatorType());
+			}
+		}
+		for (Plan child : plan.children()) {
+			collectScans(child, scans);
+		}
+	}
+}
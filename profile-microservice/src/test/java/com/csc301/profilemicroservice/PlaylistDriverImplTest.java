@@ -0,0 +1,110 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.GraphDatabase;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.summary.SummaryCounters;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+
+/**
+ * Runs the like and unlike statements of the playlist driver against an in-process Neo4j, to check
+ * that repeating them changes nothing and that their counters tell whether anything changed.
+ */
+public class PlaylistDriverImplTest {
+
+	private static ServerControls neo4j;
+	private static Driver driver;
+
+	@BeforeClass
+	public static void startNeo4j() {
+		neo4j = TestServerBuilders.newInProcessBuilder()
+				.withConfig("dbms.connector.http.enabled", "false").newServer();
+		driver = GraphDatabase.driver(neo4j.boltURI(), AuthTokens.none(),
+				Config.build().withoutEncryption().toConfig());
+		assertTrue(new Neo4jSchema(driver, 60).migrate());
+	}
+
+	@AfterClass
+	public static void stopNeo4j() {
+		driver.close();
+		neo4j.close();
+	}
+
+	@Before
+	public void createProfileAndSong() {
+		try (Session session = driver.session()) {
+			session.run("MATCH (n) WHERE NOT n:schemaVersion DETACH DELETE n").consume();
+			session.run("CREATE (:profile {userName: 'user'})-[:created]->(:playlist "
+					+ "{plName: 'user-favorites'}), (:song {songId: 'song'})").consume();
+		}
+	}
+
+	@Test
+	public void likeSongOnlyChangesOnce() {
+		assertEquals(1, run(PlaylistDriverImpl.LIKE_SONG, "user", "song").relationshipsCreated());
+		assertEquals(0, run(PlaylistDriverImpl.LIKE_SONG, "user", "song").relationshipsCreated());
+		assertEquals(1, likes());
+	}
+
+	@Test
+	public void unlikeSongOnlyChangesOnce() {
+		run(PlaylistDriverImpl.LIKE_SONG, "user", "song");
+
+		assertEquals(1, run(PlaylistDriverImpl.UNLIKE_SONG, "user", "song").relationshipsDeleted());
+		assertEquals(0, run(PlaylistDriverImpl.UNLIKE_SONG, "user", "song").relationshipsDeleted());
+		assertEquals(0, likes());
+	}
+
+	@Test
+	public void missingProfileOrSongReturnsNoRows() {
+		assertFalse(found(PlaylistDriverImpl.LIKE_SONG, "nobody", "song"));
+		assertFalse(found(PlaylistDriverImpl.LIKE_SONG, "user", "nothing"));
+		assertFalse(found(PlaylistDriverImpl.UNLIKE_SONG, "nobody", "song"));
+		assertFalse(found(PlaylistDriverImpl.UNLIKE_SONG, "user", "nothing"));
+		assertEquals(0, likes());
+
+		assertTrue(found(PlaylistDriverImpl.UNLIKE_SONG, "user", "song"));
+		assertTrue(found(PlaylistDriverImpl.LIKE_SONG, "user", "song"));
+	}
+
+	private static Map<String, Object> params(String userName, String songId) {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("username", userName);
+		params.put("id", songId);
+		params.put("playlistName", userName + "-favorites");
+		return params;
+	}
+
+	private static SummaryCounters run(String query, String userName, String songId) {
+		try (Session session = driver.session()) {
+			return session.run(query, params(userName, songId)).consume().counters();
+		}
+	}
+
+	private static boolean found(String query, String userName, String songId) {
+		try (Session session = driver.session()) {
+			return session.run(query, params(userName, songId)).hasNext();
+		}
+	}
+
+	private static int likes() {
+		try (Session session = driver.session()) {
+			return session.run("MATCH (:playlist)-[r:includes]->(:song) RETURN count(r) AS likes")
+					.single().get("likes").asInt();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import com.csc301.interservice.ApiResponse;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
+
+/**
+ * Checks that a like or unlike is only taken back when its favourites count was certainly not
+ * updated in the song microservice, so that retrying it updates the count, and is kept when the
+ * update may have arrived and is being retried.
+ */
+public class ProfileControllerTest {
+
+	private final PlaylistDriverImpl playlistDriver = mock(PlaylistDriverImpl.class);
+	private final SongFavouritesUpdater songFavouritesUpdater = mock(SongFavouritesUpdater.class);
+	private final ApiResponseFactory responses = mock(ApiResponseFactory.class);
+
+	private ProfileController controller;
+
+	@Before
+	public void setUp() {
+		when(responses.create(any(), any())).thenAnswer(invocation -> new ApiResponse(null));
+		controller = new ProfileController(mock(ProfileDriverImpl.class), playlistDriver,
+				mock(InterServiceClient.class), responses, mock(SongTitleResolver.class),
+				songFavouritesUpdater);
+	}
+
+	private static DbQueryStatus changed(boolean changed) {
+		DbQueryStatus dbQueryStatus = new DbQueryStatus("OK", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(changed);
+		return dbQueryStatus;
+	}
+
+	@Test
+	public void likeIsTakenBackWhenTheCountWasNotUpdated() throws Exception {
+		when(playlistDriver.likeSong("user", "song")).thenReturn(changed(true));
+		when(songFavouritesUpdater.update("song", false))
+				.thenReturn(SongFavouritesUpdater.Outcome.NOT_UPDATED);
+
+		ApiResponse response = controller.likeSong("user", "song", null);
+
+		assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, response.getResult());
+		verify(playlistDriver).unlikeSong("user", "song");
+	}
+
+	@Test
+	public void unlikeIsTakenBackWhenTheCountWasNotUpdated() throws Exception {
+		when(playlistDriver.unlikeSong("user", "song")).thenReturn(changed(true));
+		when(songFavouritesUpdater.update("song", true))
+				.thenReturn(SongFavouritesUpdater.Outcome.NOT_UPDATED);
+
+		ApiResponse response = controller.unlikeSong("user", "song", null);
+
+		assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, response.getResult());
+		verify(playlistDriver).likeSong("user", "song");
+	}
+
+	@Test
+	public void likeIsKeptWhileTheCountUpdateIsRetried() throws Exception {
+		when(playlistDriver.likeSong("user", "song")).thenReturn(changed(true));
+		when(songFavouritesUpdater.update("song", false))
+				.thenReturn(SongFavouritesUpdater.Outcome.PENDING);
+
+		ApiResponse response = controller.likeSong("user", "song", null);
+
+		assertEquals(DbQueryExecResult.QUERY_OK, response.getResult());
+		verify(playlistDriver, never()).unlikeSong("user", "song");
+	}
+
+	@Test
+	public void unlikeIsKeptWhileTheCountUpdateIsRetried() throws Exception {
+		when(playlistDriver.unlikeSong("user", "song")).thenReturn(changed(true));
+		when(songFavouritesUpdater.update("song", true))
+				.thenReturn(SongFavouritesUpdater.Outcome.PENDING);
+
+		ApiResponse response = controller.unlikeSong("user", "song", null);
+
+		assertEquals(DbQueryExecResult.QUERY_OK, response.getResult());
+		verify(playlistDriver, never()).likeSong("user", "song");
+	}
+
+	@Test
+	public void countedLikeIsKept() throws Exception {
+		when(playlistDriver.likeSong("user", "song")).thenReturn(changed(true));
+		when(songFavouritesUpdater.update("song", false))
+				.thenReturn(SongFavouritesUpdater.Outcome.UPDATED);
+
+		ApiResponse response = controller.likeSong("user", "song", null);
+
+		assertEquals(DbQueryExecResult.QUERY_OK, response.getResult());
+		verify(playlistDriver, never()).unlikeSong("user", "song");
+	}
+
+	@Test
+	public void likingALikedSongDoesNotCountItAgain() throws Exception {
+		when(playlistDriver.likeSong("user", "song")).thenReturn(changed(false));
+
+		controller.likeSong("user", "song", null);
+
+		verify(songFavouritesUpdater, never()).update(any(), anyBoolean());
+	}
+}
@@ -0,0 +1,130 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import com.csc301.interservice.CallRejectedException;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.interservice.SongWireCodec;
+
+public class SongFavouritesUpdaterTest {
+
+	private static final String SONG_ID = "5d61728193528481fe5a3122";
+
+	private final InterServiceClient interServiceClient = mock(InterServiceClient.class);
+
+	private SongFavouritesUpdater updater =
+			new SongFavouritesUpdater(interServiceClient, false, 1, 5);
+
+	@After
+	public void stopUpdater() {
+		updater.stop();
+	}
+
+	private static Map<String, Object> status(String status) {
+		return Collections.<String, Object>singletonMap("status", status);
+	}
+
+	private static String requestId(String path) {
+		return path.substring(path.indexOf("requestId=") + "requestId=".length());
+	}
+
+	@Test
+	public void answeredUpdatesAreNotRetried() throws Exception {
+		when(interServiceClient.put(eq("song"), any(), any())).thenReturn(status("OK"));
+		assertEquals(SongFavouritesUpdater.Outcome.UPDATED, updater.update(SONG_ID, false));
+
+		when(interServiceClient.put(eq("song"), any(), any())).thenReturn(status("NOT_FOUND"));
+		assertEquals(SongFavouritesUpdater.Outcome.NOT_UPDATED, updater.update(SONG_ID, false));
+
+		Thread.sleep(50);
+		verify(interServiceClient, times(2)).put(eq("song"), any(), any());
+	}
+
+	@Test
+	public void rejectedCallsWereNotSentSoAreNotUpdated() throws Exception {
+		when(interServiceClient.put(eq("song"), any(), any()))
+				.thenThrow(new CallRejectedException("Circuit open for song"));
+
+		assertEquals(SongFavouritesUpdater.Outcome.NOT_UPDATED, updater.update(SONG_ID, true));
+
+		Thread.sleep(50);
+		verify(interServiceClient).put(eq("song"), any(), any());
+	}
+
+	@Test
+	public void timedOutCallsAreRetriedWithTheSameRequestId() throws Exception {
+		when(interServiceClient.put(eq("song"), any(), any()))
+				.thenThrow(new SocketTimeoutException("timeout"))
+				.thenReturn(status("INTERNAL_SERVER_ERROR"))
+				.thenReturn(status("OK"));
+
+		assertEquals(SongFavouritesUpdater.Outcome.PENDING, updater.update(SONG_ID, false));
+
+		ArgumentCaptor<String> paths = ArgumentCaptor.forClass(String.class);
+		verify(interServiceClient, timeout(1000).times(3)).put(eq("song"), paths.capture(), any());
+		Thread.sleep(50);
+		verify(interServiceClient, times(3)).put(eq("song"), any(), any());
+
+		List<String> sent = paths.getAllValues();
+		assertTrue(sent.get(0).startsWith("/updateSongFavouritesCount/" + SONG_ID
+				+ "?shouldDecrement=false&requestId="));
+		assertEquals(requestId(sent.get(0)), requestId(sent.get(1)));
+		assertEquals(requestId(sent.get(0)), requestId(sent.get(2)));
+	}
+
+	@Test
+	public void retriesStopAfterTheLastAttempt() throws Exception {
+		when(interServiceClient.put(eq("song"), any(), any())).thenThrow(new IOException("reset"));
+
+		assertEquals(SongFavouritesUpdater.Outcome.PENDING, updater.update(SONG_ID, false));
+
+		// The first call and five retries
+		verify(interServiceClient, timeout(2000).times(6)).put(eq("song"), any(), any());
+		Thread.sleep(100);
+		verify(interServiceClient, times(6)).put(eq("song"), any(), any());
+	}
+
+	@Test
+	public void binaryUpdatesCarryTheRequestId() throws Exception {
+		updater.stop();
+		updater = new SongFavouritesUpdater(interServiceClient, true, 1, 5);
+		when(interServiceClient.callBinary(eq("song"), eq("PUT"),
+				eq("/internal/updateSongFavouritesCount"), any()))
+				.thenThrow(new IOException("reset"))
+				.thenReturn(SongWireCodec.encodeFavouritesResponse(SongWireCodec.Status.OK, 1));
+
+		assertEquals(SongFavouritesUpdater.Outcome.PENDING, updater.update(SONG_ID, true));
+
+		ArgumentCaptor<byte[]> requests = ArgumentCaptor.forClass(byte[].class);
+		verify(interServiceClient, timeout(1000).times(2)).callBinary(eq("song"), eq("PUT"),
+				eq("/internal/updateSongFavouritesCount"), requests.capture());
+		SongWireCodec.FavouritesUpdate first =
+				SongWireCodec.decodeFavouritesRequest(requests.getAllValues().get(0));
+		SongWireCodec.FavouritesUpdate retried =
+				SongWireCodec.decodeFavouritesRequest(requests.getAllValues().get(1));
+		assertEquals(SONG_ID, first.getSongId());
+		assertTrue(first.getShouldDecrement());
+		assertEquals(first.getRequestId(), retried.getRequestId());
+
+		// Ids that are not song ids cannot be counted, so are never sent
+		assertEquals(SongFavouritesUpdater.Outcome.NOT_UPDATED, updater.update("song", true));
+		verify(interServiceClient, never()).put(any(), any(), any());
+	}
+}
@@ -0,0 +1,198 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import com.csc301.interservice.InterServiceClient;
+import com.sun.net.httpserver.HttpServer;
+import brave.Tracing;
+import brave.http.HttpTracing;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SongTitleResolverTest {
+
+	private final InterServiceClient interServiceClient = mock(InterServiceClient.class);
+	private final ScheduledExecutorService songService = Executors.newScheduledThreadPool(4);
+
+	private final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+	private final Map<String, CompletableFuture<Map<String, Object>>> calls =
+			new ConcurrentHashMap<String, CompletableFuture<Map<String, Object>>>();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	@After
+	public void stopSongService() {
+		songService.shutdownNow();
+	}
+
+	// Answers every batch after a few milliseconds, except batches of ids starting with "slow"
+	@SuppressWarnings("unchecked")
+	private void answerBatches() {
+		when(interServiceClient.callAsync(eq("song"), eq("POST"), eq("/getSongTitlesByIds"), any()))
+				.thenAnswer(invocation -> {
+					List<String> songIds = (List<String>) invocation.getArgument(3);
+					requested.addAll(songIds);
+					maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+					CompletableFuture<Map<String, Object>> call = new CompletableFuture<>();
+					calls.put(songIds.get(0), call);
+					if (!songIds.get(0).startsWith("slow")) {
+						songService.schedule(() -> {
+							inFlight.decrementAndGet();
+							call.complete(titles(songIds));
+						}, 5, TimeUnit.MILLISECONDS);
+					}
+					return call;
+				});
+	}
+
+	private static Map<String, Object> titles(List<String> songIds) {
+		Map<String, String> titles = new HashMap<String, String>();
+		for (String songId : songIds) {
+			if (!songId.startsWith("missing")) {
+				titles.put(songId, "title of " + songId);
+			}
+		}
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("status", "OK");
+		response.put("message", "Titles found");
+		response.put("data", titles);
+		return response;
+	}
+
+	@Test
+	public void resolvesEachIdOnceWithBoundedConcurrency() throws InterruptedException {
+		answerBatches();
+		SongTitleResolver resolver = new SongTitleResolver(interServiceClient, false, 2, 3, 5000);
+
+		SongTitleResolver.Resolution resolution = resolver.resolve(
+				Arrays.asList("a", "b", "c", "a", "d", "e", "f", "g", "b", "h", "missing", "i"));
+
+		assertEquals(10, requested.size());
+		assertEquals(10, requested.stream().distinct().count());
+		assertEquals(5, calls.size());
+		assertTrue(maxInFlight.get() <= 3);
+		assertEquals(9, resolution.getTitles().size());
+		assertEquals("title of h", resolution.getTitles().get("h"));
+		assertTrue(resolution.getUnresolved().isEmpty());
+	}
+
+	@Test
+	public void returnsTheTitlesThatArriveBeforeTheDeadline() throws InterruptedException {
+		answerBatches();
+		SongTitleResolver resolver = new SongTitleResolver(interServiceClient, false, 1, 2, 300);
+
+		long start = System.nanoTime();
+		SongTitleResolver.Resolution resolution =
+				resolver.resolve(Arrays.asList("a", "slow", "b", "c"));
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertTrue(elapsedMs >= 300 && elapsedMs < 2000);
+		assertEquals(3, resolution.getTitles().size());
+		assertEquals(Collections.singleton("slow"), resolution.getUnresolved());
+		assertTrue(calls.get("slow").isCancelled());
+	}
+
+	@Test
+	public void failedBatchesAreUnresolved() throws InterruptedException {
+		when(interServiceClient.callAsync(eq("song"), eq("POST"), eq("/getSongTitlesByIds"), any()))
+				.thenAnswer(invocation -> {
+					CompletableFuture<Map<String, Object>> call = new CompletableFuture<>();
+					call.completeExceptionally(new IOException("Circuit open for song"));
+					return call;
+				});
+		SongTitleResolver resolver = new SongTitleResolver(interServiceClient, false, 2, 2, 1000);
+
+		SongTitleResolver.Resolution resolution = resolver.resolve(Arrays.asList("a", "b", "c"));
+
+		assertTrue(resolution.getTitles().isEmpty());
+		assertEquals(3, resolution.getUnresolved().size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void deadlineCancellationsLeaveTheBreakerClosed() throws Exception {
+		// A song service that answers every call long after the deadline
+		HttpServer slowSongService = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		slowSongService.setExecutor(songService);
+		slowSongService.createContext("/", exchange -> {
+			try {
+				Thread.sleep(2000);
+				exchange.sendResponseHeaders(200, -1);
+			} catch (InterruptedException | IOException e) {
+				// The client gave up on the call
+			} finally {
+				exchange.close();
+			}
+		});
+		slowSongService.start();
+
+		MockEnvironment env = new MockEnvironment()
+				.withProperty("interservice.song.url",
+						"http://localhost:" + slowSongService.getAddress().getPort())
+				.withProperty("interservice.song.failureThreshold", "2");
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		InterServiceClient client = new InterServiceClient(env, registry,
+				HttpTracing.create(Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE).build()));
+		try {
+			SongTitleResolver resolver = new SongTitleResolver(client, false, 1, 2, 100);
+			for (int i = 0; i < 3; i++) {
+				assertEquals(2, resolver.resolve(Arrays.asList("a", "b")).getUnresolved().size());
+			}
+
+			// Cancelled calls give back their bulkhead permits once the client sees them cancelled
+			Map<String, Object> song = null;
+			for (int i = 0; i < 100 && (song == null || !song.get("inFlight").equals(0)); i++) {
+				Thread.sleep(20);
+				song = (Map<String, Object>) ((Map<String, Object>) client.getStats()
+						.get("downstreams")).get("song");
+			}
+			assertEquals(0, song.get("inFlight"));
+
+			// At least one call per lookup, more than enough failures to open the breaker
+			long cancelled = registry.find(InterServiceClient.TIMER).tag("outcome", "CANCELLED")
+					.timers().stream().mapToLong(timer -> timer.count()).sum();
+			assertTrue(cancelled >= 3);
+			assertEquals(cancelled,
+					registry.find(InterServiceClient.TIMER).timers().stream()
+							.mapToLong(timer -> timer.count()).sum());
+			assertEquals("CLOSED", song.get("circuit"));
+		} finally {
+			client.stop();
+			slowSongService.stop(0);
+		}
+	}
+
+	@Test
+	public void nothingToResolve() throws InterruptedException {
+		SongTitleResolver resolver = new SongTitleResolver(interServiceClient, false, 2, 2, 1000);
+
+		SongTitleResolver.Resolution resolution = resolver.resolve(new ArrayList<String>());
+
+		assertTrue(resolution.getTitles().isEmpty());
+		assertTrue(resolution.getUnresolved().isEmpty());
+	}
+}
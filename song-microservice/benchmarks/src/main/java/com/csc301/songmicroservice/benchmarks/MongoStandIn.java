@@ -0,0 +1,93 @@
+package com.csc301.songmicroservice.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.songmicroservice.FavouritesWriteBehind;
+import com.csc301.songmicroservice.Song;
+import com.csc301.songmicroservice.SongCache;
+import com.csc301.songmicroservice.SongChangeListener;
+import com.csc301.songmicroservice.SongDalImpl;
+import com.csc301.songmicroservice.SongIndexes;
+import com.csc301.songmicroservice.SongOutbox;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import brave.Tracing;
+import brave.http.HttpTracing;
+import brave.sampler.Sampler;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * In-process MongoDB stand-in holding a songs collection, with a SongDalImpl wired to it the same
+ * way Spring wires the service. Nothing is started in the background except the write-behind
+ * flusher, when it is enabled.
+ */
+public class MongoStandIn {
+
+  private final MongoServer server;
+  private final MongoClient client;
+  private final MongoTemplate db;
+  private final FavouritesWriteBehind favouritesWriteBehind;
+  private final SongDalImpl songDal;
+  private final List<String> songIds = new ArrayList<String>();
+
+  /**
+   * Starts the stand-in and fills it with songs
+   *
+   * @param songs: The number of songs to add
+   * @param cacheMaximumSize: The size of the song cache, 0 to read every song from the database
+   * @param writeBehind: Whether favourites updates go through the write-behind buffer
+   */
+  public MongoStandIn(int songs, long cacheMaximumSize, boolean writeBehind) {
+    server = new MongoServer(new MemoryBackend());
+    InetSocketAddress address = server.bind();
+    client = new MongoClient(new ServerAddress(address));
+    db = new MongoTemplate(client, "benchmarks");
+
+    // Same shape as MOCK_DATA, with a handful of songs per artist and album
+    List<Document> documents = new ArrayList<Document>();
+    for (int i = 0; i < songs; i++) {
+      ObjectId id = new ObjectId();
+      songIds.add(id.toHexString());
+      documents.add(new Document("_id", id).append(Song.KEY_SONG_NAME, "Song " + i)
+          .append(Song.KEY_SONG_ARTIST_FULL_NAME, "Artist " + i / 10)
+          .append(Song.KEY_SONG_ALBUM, "Album " + i / 5)
+          .append(Song.KEY_SONG_AMOUNT_FAVOURITES, (long) i % 100)
+          .append(Song.KEY_SONG_VERSION, 0L));
+    }
+    db.getCollection(db.getCollectionName(Song.class)).insertMany(documents);
+
+    favouritesWriteBehind = new FavouritesWriteBehind(db, writeBehind, 500, 1000);
+    favouritesWriteBehind.start();
+    InterServiceClient interServiceClient = new InterServiceClient(new StandardEnvironment(),
+        new SimpleMeterRegistry(),
+        HttpTracing.create(Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE).build()));
+    SongOutbox songOutbox = new SongOutbox(db, interServiceClient, 1000, 500, 30000);
+    SongIndexes songIndexes = new SongIndexes(db, 5000);
+    songIndexes.createIndexes();
+    songDal = new SongDalImpl(db, new SongCache(Math.max(cacheMaximumSize, 0), 300, true),
+        favouritesWriteBehind, songOutbox, songIndexes, Collections.<SongChangeListener>emptyList());
+  }
+
+  public SongDalImpl getSongDal() {
+    return songDal;
+  }
+
+  public List<String> getSongIds() {
+    return songIds;
+  }
+
+  public void stop() throws InterruptedException {
+    favouritesWriteBehind.stop();
+    client.close();
+    server.shutdownNow();
+  }
+}
@@ -0,0 +1,150 @@
+package com.csc301.songmicroservice.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.csc301.interservice.SongWireCodec;
+import com.csc301.interservice.ApiResponse;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.songmicroservice.DbQueryStatus;
+import com.csc301.songmicroservice.Song;
+import com.csc301.songmicroservice.Utils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * CPU cost of writing route responses: a song response as the original HashMap, as an ApiResponse
+ * and as an ApiResponse of a pre-serialized song, and the title lookup between the two services in
+ * JSON and in the SongWireCodec binary encoding. Run with -prof gc to compare allocation per call.
+ * The bytes each call puts on the wire are printed once at setup, before the first iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+  private static final String PATH = "GET http://localhost:3001/getSongById/";
+
+  @Param({"100"})
+  public int titles;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private Song song;
+  private Song preSerializedSong;
+  private List<String> songIds;
+  private Map<String, String> found;
+  private DbQueryStatus titlesFound;
+  private byte[] titlesJson;
+  private byte[] titlesBinary;
+
+  @Setup
+  public void setUp() throws IOException {
+    song = new Song("Never Gonna Give You Up", "Rick Astley", "Whenever You Need Somebody");
+    song.setId(new ObjectId());
+    song.setSongAmountFavourites(42);
+
+    preSerializedSong = new Song(song.getSongName(), song.getSongArtistFullName(),
+        song.getSongAlbum());
+    preSerializedSong.setId(song._id);
+    preSerializedSong.setSongAmountFavourites(42);
+    preSerializedSong.preSerialize();
+
+    songIds = new ArrayList<String>();
+    found = new HashMap<String, String>();
+    for (int i = 0; i < titles; i++) {
+      String songId = new ObjectId().toHexString();
+      songIds.add(songId);
+      found.put(songId, "Song " + i);
+    }
+    titlesFound = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+    titlesFound.setData(found);
+    titlesJson = titlesJson();
+    titlesBinary = titlesBinary();
+    reportBytesPerCall();
+  }
+
+  // The size of what each benchmark writes, the title lookups counting request and response
+  private void reportBytesPerCall() throws IOException {
+    System.out.println("Bytes per call:");
+    System.out.println("  songResponseMap              " + songResponseMap().length);
+    System.out.println("  songApiResponse              " + songApiResponse().length);
+    System.out.println("  songApiResponsePreSerialized " + songApiResponsePreSerialized().length);
+    System.out.println("  titlesJson                   "
+        + (mapper.writeValueAsBytes(songIds).length + titlesJson.length));
+    System.out.println("  titlesBinary                 "
+        + (SongWireCodec.encodeTitlesRequest(songIds).length + titlesBinary.length));
+  }
+
+  @Benchmark
+  public byte[] songResponseMap() throws IOException {
+    Map<String, Object> response = new HashMap<String, Object>();
+    response.put("path", PATH + song.getId());
+    response.put("message", "Search Successful");
+    response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_OK,
+        song.getJsonRepresentation());
+    return mapper.writeValueAsBytes(response);
+  }
+
+  @Benchmark
+  public byte[] songApiResponse() throws IOException {
+    return mapper.writeValueAsBytes(apiResponse(song));
+  }
+
+  @Benchmark
+  public byte[] songApiResponsePreSerialized() throws IOException {
+    return mapper.writeValueAsBytes(apiResponse(preSerializedSong));
+  }
+
+  private ApiResponse apiResponse(Song data) {
+    ApiResponse response = new ApiResponse(PATH + data.getId());
+    response.setMessage("Search Successful");
+    response.setStatus(DbQueryExecResult.QUERY_OK, data);
+    return response;
+  }
+
+  // Request and response of a title lookup over the JSON route
+  @Benchmark
+  public byte[] titlesJson() throws IOException {
+    mapper.writeValueAsBytes(songIds);
+    ApiResponse response = new ApiResponse("POST http://localhost:3001/getSongTitlesByIds");
+    response.setMessage(titlesFound.getMessage());
+    response.setStatus(titlesFound.getdbQueryExecResult(), titlesFound.getData());
+    return mapper.writeValueAsBytes(response);
+  }
+
+  // Request and response of a title lookup over the binary route
+  @Benchmark
+  public byte[] titlesBinary() throws IOException {
+    SongWireCodec.encodeTitlesRequest(songIds);
+    return SongWireCodec.encodeTitlesResponse(SongWireCodec.Status.OK, found);
+  }
+
+  @Benchmark
+  public Map<String, Object> decodeTitlesJson() throws IOException {
+    return mapper.readValue(titlesJson, new TypeReference<Map<String, Object>>() {});
+  }
+
+  @Benchmark
+  public SongWireCodec.Result<Map<String, String>> decodeTitlesBinary() throws IOException {
+    return SongWireCodec.decodeTitlesResponse(titlesBinary);
+  }
+}
@@ -0,0 +1,87 @@
+package com.csc301.songmicroservice.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import com.csc301.songmicroservice.DbQueryStatus;
+import com.csc301.songmicroservice.SongDalImpl;
+
+/**
+ * Latency of the SongDalImpl calls behind the song routes, with and without the song cache and
+ * the favourites write-behind buffer. Every call goes over a real connection to the in-process
+ * MongoDB stand-in, so uncached numbers include the wire round trip but not a real server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SongDalBenchmark {
+
+  @Param({"1000"})
+  public int songs;
+
+  @Param({"0", "10000"})
+  public long cacheMaximumSize;
+
+  @Param({"false", "true"})
+  public boolean writeBehind;
+
+  private MongoStandIn mongo;
+  private SongDalImpl songDal;
+  private List<String> songIds;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mongo = new MongoStandIn(songs, cacheMaximumSize, writeBehind);
+    songDal = mongo.getSongDal();
+    songIds = mongo.getSongIds();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    mongo.stop();
+  }
+
+  private String randomSongId() {
+    return songIds.get(ThreadLocalRandom.current().nextInt(songIds.size()));
+  }
+
+  @Benchmark
+  public DbQueryStatus findSongById() {
+    return songDal.findSongById(randomSongId());
+  }
+
+  @Benchmark
+  public DbQueryStatus getSongTitleById() {
+    return songDal.getSongTitleById(randomSongId());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public DbQueryStatus updateSongFavouritesCount() {
+    return songDal.updateSongFavouritesCount(randomSongId(), false, null);
+  }
+
+  // Every thread updates the same song, as when a song trends
+  @Benchmark
+  @Threads(8)
+  public DbQueryStatus updateSongFavouritesCountContended() {
+    return songDal.updateSongFavouritesCount(songIds.get(0), false, null);
+  }
+}
@@ -0,0 +1,44 @@
+package com.csc301.songmicroservice;
+
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.ApiResponse;
+
+/**
+ * Creates the response bodies of the JSON routes, echoing the path that was called unless
+ * api.response.includePath is false
+ */
+@Component
+public class ApiResponseFactory {
+
+  @Value("${api.response.includePath:true}")
+  private boolean includePath;
+
+  /**
+   * Creates an empty response for a route served by SongController
+   *
+   * @param method: The HTTP method of the route
+   * @param request: The request being answered
+   * @return ApiResponse: The response, with the path if it is included
+   */
+  public ApiResponse create(String method, HttpServletRequest request) {
+    return new ApiResponse(includePath ? method + " " + Utils.getUrl(request) : null);
+  }
+
+  /**
+   * Creates an empty response for a route served by ReactiveSongController
+   *
+   * @param method: The HTTP method of the route
+   * @param request: The request being answered
+   * @return ApiResponse: The response, with the path if it is included
+   */
+  public ApiResponse create(String method, ServerHttpRequest request) {
+    return new ApiResponse(includePath ? method + " " + Utils.getUrl(request) : null);
+  }
+
+  public boolean isIncludePath() {
+    return includePath;
+  }
+}
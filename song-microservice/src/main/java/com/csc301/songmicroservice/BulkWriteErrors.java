@@ -0,0 +1,43 @@
+package com.csc301.songmicroservice;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.data.mongodb.BulkOperationException;
+import com.mongodb.MongoBulkWriteException;
+
+/**
+ * Finds the per operation errors of a failed bulk write. Depending on the path it fails on, Spring
+ * Data either throws a BulkOperationException or translates the MongoBulkWriteException of the
+ * driver into a DataAccessException that only keeps it as its cause.
+ */
+final class BulkWriteErrors {
+
+  private BulkWriteErrors() {}
+
+  /**
+   * Gets the errors of the operations of a bulk write that failed
+   *
+   * @param e: The exception thrown by the bulk write
+   * @return Map: The error message of each failed operation by its index in the bulk, or null if
+   *         the exception is not a bulk write error and the whole bulk may have failed
+   */
+  static Map<Integer, String> of(Throwable e) {
+    Map<Integer, String> errors = new HashMap<Integer, String>();
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof BulkOperationException) {
+        for (com.mongodb.BulkWriteError error : ((BulkOperationException) cause).getErrors()) {
+          errors.put(error.getIndex(), error.getMessage());
+        }
+        return errors;
+      }
+      if (cause instanceof MongoBulkWriteException) {
+        for (com.mongodb.bulk.BulkWriteError error : ((MongoBulkWriteException) cause)
+            .getWriteErrors()) {
+          errors.put(error.getIndex(), error.getMessage());
+        }
+        return errors;
+      }
+    }
+    return null;
+  }
+}
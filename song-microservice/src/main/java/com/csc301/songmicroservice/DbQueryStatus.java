@@ -1,10 +1,14 @@
 package com.csc301.songmicroservice;
 
-public class DbQueryStatus {
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.DbQueryOutcome;
+
+public class DbQueryStatus implements DbQueryOutcome {
 	
 	private String message;
 	private DbQueryExecResult dbQueryExecResult;
 	private Object data = null;  // Data can be anything returned from the Db
+	private String eTag = null;  // ETag of the song the data was read from, if any
 	
 	public DbQueryStatus(String message, DbQueryExecResult dbQueryExecResult) {
 		this.message = message;
@@ -19,6 +23,7 @@ public class DbQueryStatus {
 		this.message = message;
 	}
 
+	@Override
 	public DbQueryExecResult getdbQueryExecResult() {
 		return dbQueryExecResult;
 	}
@@ -35,4 +40,12 @@ public class DbQueryStatus {
 		this.data = obj;
 	}
 
+	public String getETag() {
+		return eTag;
+	}
+
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+
 }
@@ -0,0 +1,370 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional write-behind buffer for favourites count updates. When enabled, increments and
+ * decrements are summed in memory per song and written to MongoDB as one unordered bulk update
+ * every flush interval, or sooner once enough updates are pending. Pending updates are flushed on
+ * shutdown.
+ *
+ * The ids of the latest updates are remembered in memory, so an update retried by the profile
+ * microservice is not applied twice. Like the pending updates, they are lost if the service stops
+ * without flushing.
+ */
+@Component
+public class FavouritesWriteBehind {
+
+  private static final Logger log = LoggerFactory.getLogger(FavouritesWriteBehind.class);
+
+  // Number of the latest update ids remembered
+  private static final int REQUEST_IDS_KEPT = 10000;
+
+  private final MongoTemplate db;
+  private final boolean enabled;
+  private final long flushIntervalMs;
+  private final long maxPendingUpdates;
+
+  // Deltas per song id that are not yet in the database
+  private final ConcurrentHashMap<String, Delta> deltas = new ConcurrentHashMap<String, Delta>();
+
+  // Held for writing while a flush settles the deltas it wrote, so that a read overlapping it is
+  // retried. Reads of a song whose delta is being written wait for the flush to end instead
+  private final StampedLock flushLock = new StampedLock();
+
+  // Ids of the latest updates, oldest first
+  private final Set<String> appliedRequests =
+      Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > REQUEST_IDS_KEPT;
+        }
+      }));
+
+  private final AtomicLong pendingUpdates = new AtomicLong();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final AtomicLong flushes = new AtomicLong();
+  private final AtomicLong failedFlushes = new AtomicLong();
+  private final AtomicLong flushedSongs = new AtomicLong();
+
+  // Whether the last bulk update failed, so a failure is only logged once until one succeeds.
+  // Only used by flush(), which is synchronized
+  private boolean failing;
+
+  private ScheduledExecutorService flusher;
+
+  @Autowired
+  public FavouritesWriteBehind(MongoTemplate mongoTemplate,
+      @Value("${song.favourites.writeBehind.enabled:false}") boolean enabled,
+      @Value("${song.favourites.writeBehind.flushIntervalMs:500}") long flushIntervalMs,
+      @Value("${song.favourites.writeBehind.maxPendingUpdates:1000}") long maxPendingUpdates) {
+    this.db = mongoTemplate;
+    this.enabled = enabled;
+    this.flushIntervalMs = flushIntervalMs;
+    this.maxPendingUpdates = maxPendingUpdates;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (enabled) {
+      flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "favourites-write-behind");
+        thread.setDaemon(true);
+        return thread;
+      });
+      flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (enabled) {
+      flusher.shutdown();
+      flusher.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+
+      // Write out anything recorded since the last flush
+      flush();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Records a favourites change to be written to the database by a later flush
+   *
+   * @param songId: The id of the song to update
+   * @param delta: The amount to add to the favourites count
+   */
+  public void record(String songId, long delta) {
+    deltas.compute(songId, (id, current) -> current == null ? new Delta(delta, 0)
+        : new Delta(current.pending + delta, current.inFlight));
+
+    // Flush early instead of waiting for the interval once enough updates are pending
+    if (pendingUpdates.incrementAndGet() >= maxPendingUpdates
+        && !flusher.isShutdown() && flushRequested.compareAndSet(false, true)) {
+      flusher.execute(this::flush);
+    }
+  }
+
+  /**
+   * Checks whether an update with the given id was recorded lately
+   *
+   * @param requestId: The id of the update
+   * @return boolean: Whether the update was recorded
+   */
+  public boolean isApplied(String requestId) {
+    return appliedRequests.contains(requestId);
+  }
+
+  /**
+   * Remembers the id of an update about to be recorded
+   *
+   * @param requestId: The id of the update
+   */
+  public void markApplied(String requestId) {
+    appliedRequests.add(requestId);
+  }
+
+  /**
+   * Drops any favourites changes recorded for a song, used when the song is deleted
+   *
+   * @param songId: The id of the song
+   */
+  public void discard(String songId) {
+    deltas.remove(songId);
+  }
+
+  /**
+   * Gets the favourites change recorded for a song that is not yet in the database
+   *
+   * @param songId: The id of the song
+   * @return long: The amount to add to the stored favourites count
+   */
+  public long getPendingDelta(String songId) {
+    Delta delta = deltas.get(songId);
+    return delta == null ? 0 : delta.pending + delta.inFlight;
+  }
+
+  /**
+   * Reads a song from the database and adds its pending favourites change to the count, retrying
+   * once a flush that ran at the same time is over
+   *
+   * @param songId: The id of the song
+   * @param read: Reads the song from the database
+   * @return Song: The song with its up to date favourites count, or null if it does not exist
+   */
+  public Song readWithPendingDelta(String songId, Supplier<Song> read) {
+    return readWithPendingDelta(songId, read, (song, delta) -> {
+      song.setSongAmountFavourites(song.getSongAmountFavourites() + delta);
+      return song;
+    });
+  }
+
+  /**
+   * Reads fields of a song from the database and adds its pending favourites change to the count
+   * among them, retrying once a flush that ran at the same time is over
+   *
+   * @param songId: The id of the song
+   * @param read: Reads the fields of the song from the database, including its favourites count
+   * @return Document: The fields with the up to date favourites count, or null if the song does
+   *         not exist
+   */
+  public Document readFieldsWithPendingDelta(String songId, Supplier<Document> read) {
+    return readWithPendingDelta(songId, read, (fields, delta) -> {
+      Number stored = fields.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+      return fields.append(Song.KEY_SONG_AMOUNT_FAVOURITES,
+          (stored == null ? 0 : stored.longValue()) + delta);
+    });
+  }
+
+  /**
+   * Reads a favourites count from the database and adds the pending change of the song to it,
+   * retrying once a flush that ran at the same time is over
+   *
+   * @param songId: The id of the song
+   * @param read: Reads the stored favourites count from the database
+   * @return Long: The up to date favourites count, or null if the song does not exist
+   */
+  public Long readFavouritesWithPendingDelta(String songId, Supplier<Long> read) {
+    return readWithPendingDelta(songId, read, (count, delta) -> count + delta);
+  }
+
+  private <T> T readWithPendingDelta(String songId, Supplier<T> read,
+      BiFunction<T, Long, T> addDelta) {
+    long stamp = flushLock.tryOptimisticRead();
+    T value = read.get();
+    Delta current = deltas.get(songId);
+    long delta = current == null ? 0 : current.pending + current.inFlight;
+
+    // A delta in flight may or may not be in the database yet, so wait for its flush to end, after
+    // which nothing is in flight until the next one
+    if (!flushLock.validate(stamp) || (current != null && current.inFlight != 0)) {
+      synchronized (this) {
+        value = read.get();
+        delta = getPendingDelta(songId);
+      }
+    }
+
+    if (value != null && delta != 0) {
+      value = addDelta.apply(value, delta);
+    }
+    return value;
+  }
+
+  /**
+   * Writes all pending favourites changes to the database in one bulk update. Changes that fail
+   * to write are kept for the next flush.
+   */
+  public synchronized void flush() {
+    flushRequested.set(false);
+    pendingUpdates.set(0);
+
+    // Move the pending deltas to in flight, keeping their sum visible to readers
+    List<String> songIds = new ArrayList<String>();
+    List<Long> batch = new ArrayList<Long>();
+    for (String songId : deltas.keySet()) {
+      deltas.computeIfPresent(songId, (id, current) -> {
+        if (current.pending == 0) {
+          return current;
+        }
+        songIds.add(id);
+        batch.add(current.pending);
+        return new Delta(0, current.inFlight + current.pending);
+      });
+    }
+
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    // The index of each update in the bulk is the index of its song in the batch
+    BulkOperations bulk = db.bulkOps(BulkMode.UNORDERED, Song.class);
+    for (int i = 0; i < batch.size(); i++) {
+      bulk.updateOne(new Query(Criteria.where("_id").is(songIds.get(i))),
+          new Update().inc(Song.KEY_SONG_AMOUNT_FAVOURITES, batch.get(i))
+              .inc(Song.KEY_SONG_VERSION, 1));
+    }
+
+    Set<Integer> failed = execute(bulk, batch.size());
+
+    long stamp = flushLock.writeLock();
+    try {
+      // Clear the written deltas, and move the failed ones back to pending to retry on the next
+      // flush
+      for (int i = 0; i < batch.size(); i++) {
+        long flushed = batch.get(i);
+        boolean written = !failed.contains(i);
+        deltas.computeIfPresent(songIds.get(i), (id, current) -> {
+          Delta remaining = written ? new Delta(current.pending, current.inFlight - flushed)
+              : new Delta(current.pending + flushed, current.inFlight - flushed);
+          return remaining.isEmpty() ? null : remaining;
+        });
+      }
+    } finally {
+      flushLock.unlockWrite(stamp);
+    }
+  }
+
+  // Runs the bulk update, returning the indexes of the updates that failed. In an unordered bulk
+  // the other updates are written even when some fail
+  private Set<Integer> execute(BulkOperations bulk, int songs) {
+    Set<Integer> failed = new HashSet<Integer>();
+    try {
+      bulk.execute();
+    } catch (Exception e) {
+      if (!failing) {
+        log.warn("Could not flush favourites updates, retrying every flush", e);
+      }
+      failing = true;
+      Map<Integer, String> errors = BulkWriteErrors.of(e);
+      if (errors != null) {
+        failed.addAll(errors.keySet());
+      } else {
+        for (int i = 0; i < songs; i++) {
+          failed.add(i);
+        }
+      }
+    }
+
+    if (failed.isEmpty()) {
+      failing = false;
+      flushes.incrementAndGet();
+    } else {
+      failedFlushes.incrementAndGet();
+    }
+    flushedSongs.addAndGet(songs - failed.size());
+    return failed;
+  }
+
+  /**
+   * Gets the counters of the write-behind buffer
+   *
+   * @return Map: The counters by name
+   */
+  public Map<String, Object> getStats() {
+    long pendingDelta = 0;
+    for (Delta delta : deltas.values()) {
+      pendingDelta += Math.abs(delta.pending + delta.inFlight);
+    }
+
+    Map<String, Object> statsMap = new HashMap<String, Object>();
+    statsMap.put("enabled", enabled);
+    statsMap.put("pendingSongs", deltas.size());
+    statsMap.put("pendingUpdates", pendingUpdates.get());
+    statsMap.put("pendingDelta", pendingDelta);
+    statsMap.put("flushes", flushes.get());
+    statsMap.put("failedFlushes", failedFlushes.get());
+    statsMap.put("flushedSongs", flushedSongs.get());
+    return statsMap;
+  }
+
+  // Favourites change of one song that is either waiting for a flush or being flushed
+  private static final class Delta {
+    private final long pending;
+    private final long inFlight;
+
+    private Delta(long pending, long inFlight) {
+      this.pending = pending;
+      this.inFlight = inFlight;
+    }
+
+    private boolean isEmpty() {
+      return pending == 0 && inFlight == 0;
+    }
+  }
+}
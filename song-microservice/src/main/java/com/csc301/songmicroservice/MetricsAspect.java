@@ -0,0 +1,45 @@
+package com.csc301.songmicroservice;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.TimingAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Times every route of both controllers and every method of both data access layers, as
+ * described in TimingAspect. Turned off with metrics.timing.enabled=false.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "metrics.timing.enabled", matchIfMissing = true)
+public class MetricsAspect extends TimingAspect {
+
+  @Autowired
+  public MetricsAspect(MeterRegistry registry) {
+    super(registry);
+  }
+
+  @Around("execution(public * com.csc301.songmicroservice.SongController.*(..))")
+  public Object timeRoute(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, ROUTE_TIMER, "controller", "SongController", "route");
+  }
+
+  @Around("execution(public * com.csc301.songmicroservice.ReactiveSongController.*(..))")
+  public Object timeReactiveRoute(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, ROUTE_TIMER, "controller", "ReactiveSongController", "route");
+  }
+
+  @Around("execution(* com.csc301.songmicroservice.SongDal.*(..))")
+  public Object timeQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, QUERY_TIMER, "dal", "SongDal", "method");
+  }
+
+  @Around("execution(* com.csc301.songmicroservice.ReactiveSongDal.*(..))")
+  public Object timeReactiveQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, QUERY_TIMER, "dal", "ReactiveSongDal", "method");
+  }
+}
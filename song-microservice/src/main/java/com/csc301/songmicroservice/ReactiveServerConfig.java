@@ -0,0 +1,22 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Serves the reactive profile from Netty instead of Tomcat, which is also on the classpath for the
+ * servlet mode. Netty handles every connection on a small fixed set of event loop threads, one per
+ * core unless the reactor.netty.ioWorkerCount system property says otherwise.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveServerConfig {
+
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+}
@@ -0,0 +1,583 @@
+package com.csc301.songmicroservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import com.csc301.interservice.ApiResponse;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.interservice.SongWireCodec;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking version of the SongController routes, served when the service runs with the
+ * reactive profile. Database calls go through ReactiveSongDal, so a request never holds a thread
+ * while it waits. Work that can only be done blocking, such as reading the body of a bulk
+ * ingestion, runs off the event loop.
+ */
+@RestController
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+@RequestMapping("/")
+public class ReactiveSongController {
+
+  @Autowired
+  private final ReactiveSongDal songDal;
+
+  @Autowired
+  private final SongCache songCache;
+
+  @Autowired
+  private final FavouritesWriteBehind favouritesWriteBehind;
+
+  @Autowired
+  private final SongIngester songIngester;
+
+  @Autowired
+  private final SongSearchIndex songSearchIndex;
+
+  @Autowired
+  private final SongLeaderboard songLeaderboard;
+
+  @Autowired
+  private final SongOutbox songOutbox;
+
+  @Autowired
+  private final InterServiceClient interServiceClient;
+
+  @Autowired
+  private final SongAggregates songAggregates;
+
+  @Autowired
+  private final ApiResponseFactory responses;
+
+  @Value("${song.catalog.maxPageSize:1000}")
+  private int maxCatalogPageSize;
+
+  @Value("${song.search.maxLimit:100}")
+  private int maxSearchLimit;
+
+  @Value("${song.http.cacheControl:no-cache}")
+  private String cacheControl;
+
+  // Bytes of the request body buffered between the event loop and the ingester
+  private static final int INGEST_PIPE_BYTES = 64 * 1024;
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+
+  public ReactiveSongController(ReactiveSongDal songDal, SongCache songCache,
+      FavouritesWriteBehind favouritesWriteBehind, SongIngester songIngester,
+      SongSearchIndex songSearchIndex, SongLeaderboard songLeaderboard, SongOutbox songOutbox,
+      InterServiceClient interServiceClient, SongAggregates songAggregates,
+      ApiResponseFactory responses) {
+    this.songDal = songDal;
+    this.songCache = songCache;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+    this.songIngester = songIngester;
+    this.songSearchIndex = songSearchIndex;
+    this.songLeaderboard = songLeaderboard;
+    this.songOutbox = songOutbox;
+    this.interServiceClient = interServiceClient;
+    this.songAggregates = songAggregates;
+    this.responses = responses;
+  }
+
+
+  @RequestMapping(value = "/getSongById/{songId}", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongById(@PathVariable("songId") String songId,
+      ServerWebExchange exchange) {
+
+    // Answer with no body if the client already has the version of the song that was read
+    return songDal.findSongById(songId)
+        .flatMap(dbQueryStatus -> notModified(dbQueryStatus, exchange) ? Mono.empty()
+            : respond(responses.create("GET", exchange.getRequest()), Mono.just(dbQueryStatus)));
+  }
+
+
+  @RequestMapping(value = "/getSongTitleById/{songId}", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongTitleById(@PathVariable("songId") String songId,
+      ServerWebExchange exchange) {
+
+    // Answer with no body if the client already has the version of the song that was read
+    return songDal.getSongTitleById(songId)
+        .flatMap(dbQueryStatus -> notModified(dbQueryStatus, exchange) ? Mono.empty()
+            : respond(responses.create("GET", exchange.getRequest()), Mono.just(dbQueryStatus)));
+  }
+
+
+  // Checks the ETag of the song that was read against If-None-Match, adding the ETag and
+  // Cache-Control headers to the response if the song exists. Returns true if the response has
+  // been set to 304
+  private boolean notModified(DbQueryStatus dbQueryStatus, ServerWebExchange exchange) {
+    if (dbQueryStatus.getETag() == null) {
+      return false;
+    }
+    if (!cacheControl.isEmpty()) {
+      exchange.getResponse().getHeaders().set(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+    return exchange.checkNotModified(dbQueryStatus.getETag());
+  }
+
+
+  @RequestMapping(value = "/getSongTitlesByIds", method = RequestMethod.POST)
+  public Mono<ApiResponse> getSongTitlesByIds(@RequestBody List<String> songIds,
+      ServerHttpRequest request) {
+    return respond(responses.create("POST", request), songDal.getSongTitlesByIds(songIds));
+  }
+
+
+  @RequestMapping(value = "/internal/getSongTitlesByIds", method = RequestMethod.POST,
+      consumes = SongWireCodec.CONTENT_TYPE, produces = SongWireCodec.CONTENT_TYPE)
+  public Mono<byte[]> getSongTitlesByIdsBinary(@RequestBody byte[] body) throws IOException {
+
+    // Call implementation method to compute result and return it in the binary encoding
+    return songDal.getSongTitlesByIds(SongWireCodec.decodeTitlesRequest(body))
+        .map(dbQueryStatus -> encode(SongWireResponses::encodeTitles, dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getSongFavouritesCountById/{songId}", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongFavouritesCountById(
+      @PathVariable("songId") String songId, ServerHttpRequest request) {
+    return respond(responses.create("GET", request), songDal.getSongFavouritesCountById(songId));
+  }
+
+
+  @RequestMapping(value = "/getSongCatalog", method = RequestMethod.GET)
+  public Mono<Void> getSongCatalog(
+      @RequestParam(value = "pageSize", defaultValue = "100") int pageSize,
+      @RequestParam(value = "after", required = false) String after, ServerWebExchange exchange)
+      throws IOException {
+
+    // Cap the page size
+    int limit = Math.max(1, Math.min(pageSize, maxCatalogPageSize));
+
+    // Stream the response as the songs are read instead of building it in memory, in the same
+    // form as SongController
+    ServerHttpResponse response = exchange.getResponse();
+    response.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+    CatalogWriter writer = new CatalogWriter(response.bufferFactory(), limit);
+    Flux<DataBuffer> body = Flux.concat(
+        Mono.fromCallable(
+            () -> writer.start(responses.create("GET", exchange.getRequest()).getPath())),
+        songDal.findSongsAfter(after, limit).map(writer::song).onErrorResume(e -> {
+          writer.fail(e instanceof IllegalArgumentException ? e.getMessage()
+              : "Could Not retrieve songs");
+          return Flux.empty();
+        }), Mono.fromCallable(writer::end));
+    return response.writeWith(body);
+  }
+
+
+  // Writes the catalog response one chunk per song, keeping track of the page as it goes
+  private final class CatalogWriter {
+    private final DataBufferFactory bufferFactory;
+    private final int limit;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final JsonGenerator generator;
+
+    private int read;
+    private String lastId;
+    private String error;
+
+    private CatalogWriter(DataBufferFactory bufferFactory, int limit) throws IOException {
+      this.bufferFactory = bufferFactory;
+      this.limit = limit;
+      this.generator = jsonFactory.createGenerator(bytes);
+    }
+
+    private DataBuffer start(String path) throws IOException {
+      generator.writeStartObject();
+      if (path != null) {
+        generator.writeStringField("path", path);
+      }
+      generator.writeArrayFieldStart("data");
+      return chunk();
+    }
+
+    private DataBuffer song(Document song) {
+      try {
+        SongController.writeSong(generator, song);
+        lastId = song.getObjectId("_id").toHexString();
+        read++;
+        return chunk();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void fail(String message) {
+      error = message;
+    }
+
+    private DataBuffer end() throws IOException {
+      generator.writeEndArray();
+
+      // Return the token of the next page, only handed out when the page was full
+      generator.writeStringField("next", error == null && read == limit ? lastId : null);
+      generator.writeStringField("message", error == null ? "Search Successful" : error);
+      generator.writeStringField("status",
+          error == null ? HttpStatus.OK.name() : HttpStatus.INTERNAL_SERVER_ERROR.name());
+      generator.writeEndObject();
+      DataBuffer last = chunk();
+      generator.close();
+      return last;
+    }
+
+    // Hands out what was written since the last chunk
+    private DataBuffer chunk() throws IOException {
+      generator.flush();
+      DataBuffer buffer = bufferFactory.wrap(bytes.toByteArray());
+      bytes.reset();
+      return buffer;
+    }
+  }
+
+
+  @RequestMapping(value = "/getSongsByArtist", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongsByArtist(@RequestParam("artist") String artist,
+      @RequestParam(value = "pageSize", defaultValue = "100") int pageSize,
+      @RequestParam(value = "after", required = false) String after, ServerHttpRequest request) {
+    return respond(responses.create("GET", request), songDal.findSongsByArtist(artist, after,
+        Math.max(1, Math.min(pageSize, maxCatalogPageSize))));
+  }
+
+
+  @RequestMapping(value = "/getSongsByAlbum", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongsByAlbum(@RequestParam("album") String album,
+      @RequestParam(value = "artist", required = false) String artist,
+      @RequestParam(value = "pageSize", defaultValue = "100") int pageSize,
+      @RequestParam(value = "after", required = false) String after, ServerHttpRequest request) {
+    return respond(responses.create("GET", request), songDal.findSongsByAlbum(album, artist, after,
+        Math.max(1, Math.min(pageSize, maxCatalogPageSize))));
+  }
+
+
+  @RequestMapping(value = "/getArtistStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getArtistStats(@RequestParam("artist") String artist,
+      ServerHttpRequest request) {
+
+    // Read the precomputed totals of the artist off the event loop
+    return respond(responses.create("GET", request),
+        Mono.fromCallable(() -> songAggregates.getArtistStats(artist))
+            .subscribeOn(Schedulers.elastic()));
+  }
+
+
+  @RequestMapping(value = "/getAlbumStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getAlbumStats(@RequestParam("artist") String artist,
+      @RequestParam("album") String album, ServerHttpRequest request) {
+
+    // Read the precomputed totals of the album off the event loop
+    return respond(responses.create("GET", request),
+        Mono.fromCallable(() -> songAggregates.getAlbumStats(artist, album))
+            .subscribeOn(Schedulers.elastic()));
+  }
+
+
+  @RequestMapping(value = "/rebuildSongAggregates", method = RequestMethod.POST)
+  public Mono<ApiResponse> rebuildSongAggregates(ServerHttpRequest request) {
+
+    // Rebuild the artist and album totals from the songs once the queued changes are applied,
+    // waiting for it off the event loop
+    Future<Boolean> rebuild = songAggregates.requestRebuild();
+    Mono<DbQueryStatus> rebuilt = Mono.fromCallable(() -> {
+      if (!rebuild.get()) {
+        return new DbQueryStatus("Could Not rebuild totals", DbQueryExecResult.QUERY_ERROR_GENERIC);
+      }
+      DbQueryStatus dbQueryStatus =
+          new DbQueryStatus("Rebuild Successful", DbQueryExecResult.QUERY_OK);
+      dbQueryStatus.setData(songAggregates.getCounters());
+      return dbQueryStatus;
+    }).subscribeOn(Schedulers.elastic()).onErrorReturn(
+        new DbQueryStatus("Could Not rebuild totals", DbQueryExecResult.QUERY_ERROR_GENERIC));
+    return respond(responses.create("POST", request), rebuilt);
+  }
+
+
+  @RequestMapping(value = "/searchSongs", method = RequestMethod.GET)
+  public Mono<ApiResponse> searchSongs(@RequestParam("q") String query,
+      @RequestParam(value = "limit", defaultValue = "10") int limit, ServerHttpRequest request) {
+
+    // Find the most favourited songs containing every word of the query
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus
+        .setData(songSearchIndex.search(query, Math.max(1, Math.min(limit, maxSearchLimit))));
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/autocompleteSongs", method = RequestMethod.GET)
+  public Mono<ApiResponse> autocompleteSongs(@RequestParam("q") String query,
+      @RequestParam(value = "limit", defaultValue = "10") int limit, ServerHttpRequest request) {
+
+    // Find the most favourited songs matching the query, with the last word as a prefix
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus
+        .setData(songSearchIndex.autocomplete(query, Math.max(1, Math.min(limit, maxSearchLimit))));
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getSongSearchIndexStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongSearchIndexStats(ServerHttpRequest request) {
+
+    // Return the size of the search index
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Search index stats retrieved", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus.setData(songSearchIndex.getStats());
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getSongLeaderboard", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongLeaderboard(
+      @RequestParam(value = "limit", defaultValue = "10") int limit, ServerHttpRequest request) {
+
+    // Return the most favourited songs with their ranks
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Leaderboard retrieved", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus.setData(songLeaderboard.getTop(Math.max(1, Math.min(limit, maxSearchLimit))));
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getSongRank/{songId}", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongRank(@PathVariable("songId") String songId,
+      ServerHttpRequest request) {
+
+    // Return the rank of the song, or not found if it is not ranked
+    Map<String, Object> rank = songLeaderboard.getRank(songId);
+    DbQueryStatus dbQueryStatus = rank != null
+        ? new DbQueryStatus("Rank retrieved", DbQueryExecResult.QUERY_OK)
+        : new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+    dbQueryStatus.setData(rank);
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/deleteSongById/{songId}", method = RequestMethod.DELETE)
+  public Mono<ApiResponse> deleteSongById(@PathVariable("songId") String songId,
+      ServerHttpRequest request) {
+
+    // Call implementation method. The delete reaches the profile microservice through the song
+    // outbox
+    return respond(responses.create("DELETE", request), songDal.deleteSongById(songId));
+  }
+
+
+  @RequestMapping(value = "/addSong", method = RequestMethod.POST)
+  public Mono<ApiResponse> addSong(ServerWebExchange exchange) {
+    ApiResponse response = responses.create("POST", exchange.getRequest());
+
+    // Take the parameters from the query string and any form body, as Spring MVC does
+    Mono<Map<String, String>> params = exchange.getFormData().map(form -> {
+      Map<String, String> merged = new HashMap<String, String>(form.toSingleValueMap());
+      merged.putAll(exchange.getRequest().getQueryParams().toSingleValueMap());
+      return merged;
+    });
+
+    return respond(response, params.flatMap(param -> {
+
+      // Ensure all parameters exist
+      if (!(param.containsKey("songName") && param.containsKey("songArtistFullName")
+          && param.containsKey("songAlbum"))) {
+        return Mono.just(new DbQueryStatus("Invalid parameters given for addSong",
+            DbQueryExecResult.QUERY_ERROR_GENERIC));
+      }
+
+      // Create the new song with a new ID
+      Song newSong =
+          new Song(param.get("songName"), param.get("songArtistFullName"), param.get("songAlbum"));
+      newSong.setId(new ObjectId());
+
+      // Call implementation method. The song reaches the profile microservice through the song
+      // outbox
+      return songDal.addSong(newSong);
+    }));
+  }
+
+
+  @RequestMapping(value = "/addSongs", method = RequestMethod.POST)
+  public Mono<ApiResponse> addSongs(ServerHttpRequest request) {
+
+    // Stream the songs in the request body into the database. The ingester reads a blocking
+    // stream, so the body is piped into it as it arrives and both sides run off the event loop
+    Mono<DbQueryStatus> ingested = Mono.fromCallable(() -> {
+      PipedInputStream in = new PipedInputStream(INGEST_PIPE_BYTES);
+      PipedOutputStream out = new PipedOutputStream(in);
+      DataBufferUtils.write(request.getBody().publishOn(Schedulers.elastic()), out)
+          .doFinally(signal -> closeQuietly(out))
+          .subscribe(DataBufferUtils.releaseConsumer(), e -> {
+            // The ingester reports the stream as cut short
+          });
+
+      // Return the ingestion report, or where the stream was cut short
+      try (InputStream body = in) {
+        return songIngester.ingest(body);
+      }
+    }).subscribeOn(Schedulers.elastic()).onErrorReturn(new DbQueryStatus(
+        "Failed to add songs to database", DbQueryExecResult.QUERY_ERROR_GENERIC));
+
+    // The report is kept even if the stream was cut short, since the songs added before it went
+    // wrong stay added
+    ApiResponse response = responses.create("POST", request);
+    return ingested.map(dbQueryStatus -> {
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), null);
+      response.setData(dbQueryStatus.getData());
+      return response;
+    });
+  }
+
+
+  private static void closeQuietly(OutputStream out) {
+    try {
+      out.close();
+    } catch (IOException e) {
+      // Nothing left to write
+    }
+  }
+
+
+  @RequestMapping(value = "/updateSongFavouritesCount/{songId}", method = RequestMethod.PUT)
+  public Mono<ApiResponse> updateFavouritesCount(@PathVariable("songId") String songId,
+      @RequestParam("shouldDecrement") String shouldDecrement,
+      @RequestParam(value = "requestId", required = false) String requestId,
+      ServerHttpRequest request) {
+    ApiResponse response = responses.create("PUT", request);
+
+    // Set decrement based on given shouldDecrement boolean (if valid)
+    if (!(shouldDecrement.equals("true") || shouldDecrement.equals("false"))) {
+      return respond(response,
+          Mono.just(new DbQueryStatus("Invalid parameter: shouldDecrement only accepts true/false",
+              DbQueryExecResult.QUERY_ERROR_GENERIC)));
+    }
+
+    return respond(response,
+        songDal.updateSongFavouritesCount(songId, shouldDecrement.equals("true"), requestId));
+  }
+
+
+  @RequestMapping(value = "/internal/updateSongFavouritesCount", method = RequestMethod.PUT,
+      consumes = SongWireCodec.CONTENT_TYPE, produces = SongWireCodec.CONTENT_TYPE)
+  public Mono<byte[]> updateFavouritesCountBinary(@RequestBody byte[] body) throws IOException {
+
+    // Call implementation method to compute result and return it in the binary encoding
+    SongWireCodec.FavouritesUpdate update = SongWireCodec.decodeFavouritesRequest(body);
+    return songDal
+        .updateSongFavouritesCount(update.getSongId(), update.getShouldDecrement(),
+            update.getRequestId())
+        .map(dbQueryStatus -> encode(SongWireResponses::encodeFavourites, dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getSongCacheStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongCacheStats(ServerHttpRequest request) {
+
+    // Return the current counters of the song cache
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Cache stats retrieved", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus.setData(songCache.getStats());
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getFavouritesWriteBehindStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getFavouritesWriteBehindStats(ServerHttpRequest request) {
+
+    // Return the current counters of the write-behind buffer
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Write-behind stats retrieved", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus.setData(favouritesWriteBehind.getStats());
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  @RequestMapping(value = "/getSongOutboxStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getSongOutboxStats(ServerHttpRequest request) {
+
+    // Return the counters of the song outbox and how far behind delivery is. Reading them queries
+    // the outbox collection, so do it off the event loop
+    Mono<DbQueryStatus> stats = Mono.fromCallable(() -> {
+      DbQueryStatus dbQueryStatus =
+          new DbQueryStatus("Outbox stats retrieved", DbQueryExecResult.QUERY_OK);
+      dbQueryStatus.setData(songOutbox.getStats());
+      return dbQueryStatus;
+    }).subscribeOn(Schedulers.elastic()).onErrorReturn(new DbQueryStatus(
+        "Could Not retrieve outbox stats", DbQueryExecResult.QUERY_ERROR_GENERIC));
+    return respond(responses.create("GET", request), stats);
+  }
+
+
+  @RequestMapping(value = "/getInterServiceClientStats", method = RequestMethod.GET)
+  public Mono<ApiResponse> getInterServiceClientStats(ServerHttpRequest request) {
+
+    // Return the circuit breaker states and call counters of the inter-service client
+    DbQueryStatus dbQueryStatus =
+        new DbQueryStatus("Inter-service client stats retrieved", DbQueryExecResult.QUERY_OK);
+    dbQueryStatus.setData(interServiceClient.getStats());
+    return respond(responses.create("GET", request), Mono.just(dbQueryStatus));
+  }
+
+
+  // Encodes a result in the binary encoding of the internal routes
+  private static byte[] encode(Encoder encoder, DbQueryStatus dbQueryStatus) {
+    try {
+      return encoder.encode(dbQueryStatus);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private interface Encoder {
+    byte[] encode(DbQueryStatus dbQueryStatus) throws IOException;
+  }
+
+
+  // Fills in the response body once the result of the route is ready
+  private Mono<ApiResponse> respond(ApiResponse response, Mono<DbQueryStatus> result) {
+    return result.map(dbQueryStatus -> {
+
+      // Return response of implementation method
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+      return response;
+    });
+  }
+}
@@ -0,0 +1,20 @@
+package com.csc301.songmicroservice;
+
+import java.util.List;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveSongDal {
+	Mono<DbQueryStatus> addSong(Song songToAdd);
+	Mono<DbQueryStatus> findSongById(String songId);
+	Mono<DbQueryStatus> getSongTitleById(String songId);
+	Mono<DbQueryStatus> getSongTitlesByIds(List<String> songIds);
+	Flux<Document> findSongsAfter(String afterSongId, int limit);
+	Mono<DbQueryStatus> findSongsByArtist(String artist, String afterSongId, int limit);
+	Mono<DbQueryStatus> findSongsByAlbum(String album, String artist, String afterSongId, int limit);
+	Mono<DbQueryStatus> getSongFavouritesCountById(String songId);
+	Mono<DbQueryStatus> deleteSongById(String songId);
+	Mono<DbQueryStatus> updateSongFavouritesCount(String songId, boolean shouldDecrement,
+			String requestId);
+}
@@ -0,0 +1,442 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+import com.csc301.interservice.DbQueryExecResult;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking counterpart of SongDalImpl used when the service runs as a reactive web
+ * application. Reads and favourites updates go through ReactiveMongoTemplate, so no thread waits
+ * on MongoDB. The song cache and change listeners are shared with SongDalImpl. With write-behind
+ * enabled, favourites updates and song reads that miss the cache are handed to SongDalImpl on
+ * another thread instead, since they may have to wait for a flush. Songs are always added and
+ * deleted by SongDalImpl on another thread, which keeps them in order with their outbox events.
+ */
+@Repository
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveSongDalImpl implements ReactiveSongDal {
+
+  private static final Logger log = LoggerFactory.getLogger(ReactiveSongDalImpl.class);
+
+  private final ReactiveMongoTemplate db;
+  private final SongDal songDal;
+  private final SongCache songCache;
+  private final FavouritesWriteBehind favouritesWriteBehind;
+  private final SongIndexes songIndexes;
+  private final List<SongChangeListener> listeners;
+
+  @Autowired
+  public ReactiveSongDalImpl(ReactiveMongoTemplate reactiveMongoTemplate, SongDal songDal,
+      SongCache songCache, FavouritesWriteBehind favouritesWriteBehind, SongIndexes songIndexes,
+      List<SongChangeListener> listeners) {
+    this.db = reactiveMongoTemplate;
+    this.songDal = songDal;
+    this.songCache = songCache;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+    this.songIndexes = songIndexes;
+    this.listeners = listeners;
+  }
+
+  // Tells every listener about a change, without letting a failing listener fail the change
+  private void notifyListeners(Consumer<SongChangeListener> notification) {
+    for (SongChangeListener listener : listeners) {
+      try {
+        notification.accept(listener);
+      } catch (Exception e) {
+        log.warn("Song change listener {} failed", listener.getClass().getSimpleName(), e);
+      }
+    }
+  }
+
+  /**
+   * Adds a given song to the database
+   *
+   * @param SongToAdd: The song to add to the database
+   * @return Mono: The result of the insert with the returned data and status
+   */
+  @Override
+  public Mono<DbQueryStatus> addSong(Song songToAdd) {
+
+    // The blocking implementation orders the adds and deletes of each song with their outbox
+    // events and notifications, so both modes write songs through it
+    return onBlockingDal(() -> songDal.addSong(songToAdd));
+  }
+
+  /**
+   * Finds a song in the database by the given ID and returns its information
+   *
+   * @param SongId: The id of the song to search for
+   * @return Mono: The result of the search with the returned data and status
+   */
+  @Override
+  public Mono<DbQueryStatus> findSongById(String songId) {
+    if (readsOnBlockingDal(songId)) {
+      return onBlockingDal(() -> songDal.findSongById(songId));
+    }
+    return findCachedSong(songId).map(found -> {
+      DbQueryStatus dataToReturn =
+          new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(found);
+      dataToReturn.setETag(found.getETag());
+      return dataToReturn;
+    }).defaultIfEmpty(new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND))
+        .onErrorReturn(
+            new DbQueryStatus("Could Not retrieve song", DbQueryExecResult.QUERY_ERROR_GENERIC));
+  }
+
+  /**
+   * Finds a song in the database by the given ID and returns its title
+   *
+   * @param SongId: The id of the song to search for
+   * @return Mono: The result of the search with the returned data and status
+   */
+  @Override
+  public Mono<DbQueryStatus> getSongTitleById(String songId) {
+
+    // Take the title of a cached song, otherwise only read the title and what its ETag is made
+    // of from the database
+    Song cached = songCache.get(songId);
+    if (cached == null && favouritesWriteBehind.isEnabled()) {
+      return onBlockingDal(() -> songDal.getSongTitleById(songId));
+    }
+    Mono<Document> title = cached != null
+        ? Mono.just(new Document(Song.KEY_SONG_NAME, cached.getSongName())
+            .append(Song.KEY_SONG_VERSION, cached.getVersion())
+            .append(Song.KEY_SONG_AMOUNT_FAVOURITES, cached.getSongAmountFavourites()))
+        : findSongFields(songId, Song.KEY_SONG_NAME, Song.KEY_SONG_VERSION,
+            Song.KEY_SONG_AMOUNT_FAVOURITES);
+
+    return title.map(found -> {
+      DbQueryStatus dataToReturn =
+          new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(found.getString(Song.KEY_SONG_NAME));
+      dataToReturn.setETag(SongDalImpl.eTag(found));
+      return dataToReturn;
+    }).defaultIfEmpty(new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND))
+        .onErrorReturn(
+            new DbQueryStatus("Could Not retrieve song", DbQueryExecResult.QUERY_ERROR_GENERIC));
+  }
+
+  /**
+   * Finds the songs in the database with the given IDs and returns their titles in a single query
+   *
+   * @param songIds: The ids of the songs to search for
+   * @return Mono: The result of the search with a map of song id to title and status. Ids that do
+   *         not exist are left out of the map
+   */
+  @Override
+  public Mono<DbQueryStatus> getSongTitlesByIds(List<String> songIds) {
+
+    // Take the titles of cached songs and only query the database for the rest
+    Map<String, String> titles = new HashMap<String, String>();
+    List<ObjectId> objectIds = new ArrayList<ObjectId>();
+    for (String songId : songIds) {
+      Song cached = songCache.get(songId);
+      if (cached != null) {
+        titles.put(songId, cached.getSongName());
+      } else if (ObjectId.isValid(songId)) {
+        objectIds.add(new ObjectId(songId));
+      }
+    }
+
+    // Search by all ids at once, only reading back the id and song name
+    Query query = new Query(Criteria.where("_id").in(objectIds));
+    query.fields().include(Song.KEY_SONG_NAME);
+    Mono<Map<String, String>> found = objectIds.isEmpty() ? Mono.just(titles)
+        : db.find(query, Document.class, db.getCollectionName(Song.class))
+            .collect(() -> titles, (map, song) -> map.put(song.getObjectId("_id").toHexString(),
+                song.getString(Song.KEY_SONG_NAME)));
+
+    return found.map(map -> {
+      DbQueryStatus dataToReturn =
+          new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(map);
+      return dataToReturn;
+    }).onErrorReturn(
+        new DbQueryStatus("Could Not retrieve songs", DbQueryExecResult.QUERY_ERROR_GENERIC));
+  }
+
+  /**
+   * Finds a song by the given ID and returns its favourites count
+   *
+   * @param SongId: The id of the song to search for
+   * @return Mono: The result of the search with the favourites count and status
+   */
+  @Override
+  public Mono<DbQueryStatus> getSongFavouritesCountById(String songId) {
+
+    if (readsOnBlockingDal(songId)) {
+      return onBlockingDal(() -> songDal.getSongFavouritesCountById(songId));
+    }
+
+    // Take the count of a cached song, otherwise only read the count from the database
+    Song cached = songCache.get(songId);
+    Mono<Long> count = cached != null ? Mono.just(cached.getSongAmountFavourites())
+        : findSongFields(songId, Song.KEY_SONG_AMOUNT_FAVOURITES).map(found -> {
+          Number stored = found.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+          return stored == null ? 0L : stored.longValue();
+        });
+
+    return count.map(found -> {
+      DbQueryStatus dataToReturn =
+          new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(found);
+      return dataToReturn;
+    }).defaultIfEmpty(new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND))
+        .onErrorReturn(
+            new DbQueryStatus("Could Not retrieve song", DbQueryExecResult.QUERY_ERROR_GENERIC));
+  }
+
+  /**
+   * Finds a song in the database by the given ID and deletes it
+   *
+   * @param SongId: The id of the song to search for
+   * @return Mono: The result of the delete and status
+   */
+  @Override
+  public Mono<DbQueryStatus> deleteSongById(String songId) {
+
+    // Deleted through the blocking implementation, which orders it after the add of the song
+    return onBlockingDal(() -> songDal.deleteSongById(songId));
+  }
+
+  /**
+   * Finds a song in the database by the given ID and atomically updates its favourites
+   *
+   * @param SongId: The id of the song to search for
+   * @param shouldDecrement: true/false depending on whether this should increment/decrement the
+   *        likes
+   * @param requestId: The id of the update, which is only applied once, or null
+   * @return Mono: The result of the update with the new favourites count and status
+   */
+  @Override
+  public Mono<DbQueryStatus> updateSongFavouritesCount(String songId, boolean shouldDecrement,
+      String requestId) {
+
+    // The write-behind buffer updates the count in memory, only reading the song on a cache miss,
+    // so hand it to the blocking implementation off the event loop
+    if (favouritesWriteBehind.isEnabled()) {
+      return onBlockingDal(
+          () -> songDal.updateSongFavouritesCount(songId, shouldDecrement, requestId));
+    }
+
+    // Apply the change in a single atomic update and read back the updated song
+    long toAdd = shouldDecrement ? -1 : 1;
+    Query query = new Query(SongDalImpl.favouritesCriteria(songId, shouldDecrement, requestId));
+    Mono<DbQueryStatus> updated = db.findAndModify(query,
+        SongDalImpl.favouritesUpdate(toAdd, requestId),
+        FindAndModifyOptions.options().returnNew(true), Song.class).map(song -> {
+
+          // Concurrent updates can finish in either order, so only cache the song if no newer
+          // version of it is cached
+          songCache.putIfNewer(song);
+          notifyListeners(listener -> listener.songFavouritesUpdated(song, toAdd));
+          DbQueryStatus dataToReturn =
+              new DbQueryStatus("Update Successful", DbQueryExecResult.QUERY_OK);
+          dataToReturn.setData(song.getSongAmountFavourites());
+          return dataToReturn;
+        });
+
+    // Return error if the song exists but has no favourites left, otherwise not found
+    Mono<DbQueryStatus> notUpdated = !shouldDecrement
+        ? Mono.just(new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND))
+        : db.exists(new Query(Criteria.where("_id").is(songId)), Song.class)
+            .map(exists -> exists
+                ? new DbQueryStatus("Cannot have negative favourites",
+                    DbQueryExecResult.QUERY_ERROR_GENERIC)
+                : new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+
+    // Return the current count if the update was applied before
+    if (requestId != null) {
+      Query applied = new Query(
+          Criteria.where("_id").is(songId).and(Song.KEY_FAVOURITES_REQUESTS).is(requestId));
+      applied.fields().include(Song.KEY_SONG_AMOUNT_FAVOURITES);
+      notUpdated = db.findOne(applied, Song.class).map(song -> {
+        DbQueryStatus dataToReturn =
+            new DbQueryStatus("Update Already Applied", DbQueryExecResult.QUERY_OK);
+        dataToReturn.setData(song.getSongAmountFavourites());
+        return dataToReturn;
+      }).switchIfEmpty(notUpdated);
+    }
+
+    return updated.switchIfEmpty(notUpdated).onErrorReturn(new DbQueryStatus(
+        "Could Not decrement/increment favourites", DbQueryExecResult.QUERY_ERROR_GENERIC));
+  }
+
+  /**
+   * Finds a song by the given ID, reading from the cache when possible and caching it otherwise.
+   * Only used without write-behind, so the stored favourites count is up to date
+   *
+   * @param SongId: The id of the song to search for
+   * @return Mono: The found song, or empty if it does not exist
+   */
+  private Mono<Song> findCachedSong(String songId) {
+    Song cached = songCache.get(songId);
+    if (cached != null) {
+      return Mono.just(cached);
+    }
+
+    // An update may have cached a newer count while the song was read, so only fill a miss
+    Query query = new Query(Criteria.where("_id").is(songId));
+    return db.findOne(query, Song.class).map(songCache::putIfAbsent);
+  }
+
+  // With write-behind, a read that misses the cache has to add the pending favourites of the
+  // song without a flush moving them into the database at the same time, which the blocking
+  // implementation does by waiting for the flush to end
+  private boolean readsOnBlockingDal(String songId) {
+    return favouritesWriteBehind.isEnabled() && songCache.get(songId) == null;
+  }
+
+  // Runs a call of the blocking implementation off the event loop
+  private Mono<DbQueryStatus> onBlockingDal(Callable<DbQueryStatus> call) {
+    return Mono.fromCallable(call).subscribeOn(Schedulers.elastic());
+  }
+
+  /**
+   * Reads the songs after the given ID in ID order straight from a database cursor, emitting each
+   * one as it arrives. Paging by ID instead of skipping keeps every page as fast as the first
+   *
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @param limit: The max number of songs to read
+   * @return Flux: Each song document, including any favourites not yet written, or an
+   *         IllegalArgumentException if the id to start after is not a song id
+   */
+  @Override
+  public Flux<Document> findSongsAfter(String afterSongId, int limit) {
+    if (afterSongId != null && !ObjectId.isValid(afterSongId)) {
+      return Flux.error(new IllegalArgumentException("Invalid continuation token"));
+    }
+
+    // Start after the given id, or at the start of the collection
+    Bson filter =
+        afterSongId == null ? new Document() : Filters.gt("_id", new ObjectId(afterSongId));
+
+    return Flux.from(db.getCollection(db.getCollectionName(Song.class)).find(filter)
+        .projection(Projections.exclude(Song.KEY_FAVOURITES_REQUESTS))
+        .sort(Sorts.ascending("_id")).limit(limit)
+        .batchSize(Math.min(limit, SongDalImpl.CURSOR_BATCH_SIZE))).map(found -> {
+          String songId = found.getObjectId("_id").toHexString();
+          long delta = favouritesWriteBehind.getPendingDelta(songId);
+          if (delta != 0) {
+            Number stored = found.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+            found.put(Song.KEY_SONG_AMOUNT_FAVOURITES,
+                (stored == null ? 0 : stored.longValue()) + delta);
+          }
+          return found;
+        });
+  }
+
+  /**
+   * Finds the songs of an artist in ID order, one page at a time, reading them through the artist
+   * index
+   *
+   * @param artist: The full name of the artist
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @param limit: The max number of songs to read
+   * @return Mono: The result of the search with the songs and the id to continue after if there
+   *         may be more songs, and status
+   */
+  @Override
+  public Mono<DbQueryStatus> findSongsByArtist(String artist, String afterSongId, int limit) {
+    return findSongsPage(Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, artist),
+        SongIndexes.BY_ARTIST, afterSongId, limit);
+  }
+
+  /**
+   * Finds the songs of an album in ID order, one page at a time, reading them through the album
+   * index, or the artist and album index if the artist is given
+   *
+   * @param album: The name of the album
+   * @param artist: The full name of the artist of the album, or null for albums of any artist
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @param limit: The max number of songs to read
+   * @return Mono: The result of the search with the songs and the id to continue after if there
+   *         may be more songs, and status
+   */
+  @Override
+  public Mono<DbQueryStatus> findSongsByAlbum(String album, String artist, String afterSongId,
+      int limit) {
+    if (artist == null) {
+      return findSongsPage(Filters.eq(Song.KEY_SONG_ALBUM, album), SongIndexes.BY_ALBUM,
+          afterSongId, limit);
+    }
+    return findSongsPage(Filters.and(Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, artist),
+        Filters.eq(Song.KEY_SONG_ALBUM, album)), SongIndexes.BY_ARTIST_AND_ALBUM, afterSongId,
+        limit);
+  }
+
+  // Reads a page of songs matching a filter through the given index
+  private Mono<DbQueryStatus> findSongsPage(Bson filter, Document index, String afterSongId,
+      int limit) {
+    if (afterSongId != null && !ObjectId.isValid(afterSongId)) {
+      return Mono.just(
+          new DbQueryStatus("Invalid continuation token", DbQueryExecResult.QUERY_ERROR_GENERIC));
+    }
+
+    // Hint the index once it exists, so the query fails rather than scanning the collection if
+    // it goes missing
+    return Flux.from(db.getCollection(db.getCollectionName(Song.class))
+        .find(SongDalImpl.pageFilter(filter, afterSongId)).sort(Sorts.ascending("_id"))
+        .hint(songIndexes.hint(index)).limit(limit)).map(found -> {
+          Song song = db.getConverter().read(Song.class, found);
+          song.setSongAmountFavourites(song.getSongAmountFavourites()
+              + favouritesWriteBehind.getPendingDelta(song.getId()));
+          return song;
+        }).collectList().map(page -> {
+
+          // Only hand out a continuation when the page was full
+          Map<String, Object> data = new HashMap<String, Object>();
+          data.put("songs", page);
+          data.put("next", page.size() == limit ? page.get(page.size() - 1).getId() : null);
+          DbQueryStatus dataToReturn =
+              new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+          dataToReturn.setData(data);
+          return dataToReturn;
+        }).onErrorReturn(
+            new DbQueryStatus("Could Not retrieve songs", DbQueryExecResult.QUERY_ERROR_GENERIC));
+  }
+
+  /**
+   * Reads only the given fields of a song straight from the songs collection, without mapping it
+   * to a Song
+   *
+   * @param SongId: The id of the song to search for
+   * @param fields: The fields to read
+   * @return Mono: The fields of the song, or empty if it does not exist
+   */
+  private Mono<Document> findSongFields(String songId, String... fields) {
+    if (!ObjectId.isValid(songId)) {
+      return Mono.empty();
+    }
+    Query query = new Query(Criteria.where("_id").is(new ObjectId(songId)));
+    for (String field : fields) {
+      query.fields().include(field);
+    }
+    query.fields().exclude("_id");
+    return db.findOne(query, Document.class, db.getCollectionName(Song.class));
+  }
+}
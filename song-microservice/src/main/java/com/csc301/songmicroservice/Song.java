@@ -1,16 +1,29 @@
 package com.csc301.songmicroservice;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+// Written to JSON in the same form as getJsonRepresentation, without building the map
 @Document(collection="songs")
-public class Song {
+public class Song implements JsonSerializable {
+	private static final Logger log = LoggerFactory.getLogger(Song.class);
+
 	@Id
 	@JsonIgnore
 	public ObjectId _id;
@@ -20,9 +33,23 @@ public class Song {
 	private String songAlbum;
 	private long songAmountFavourites;
 	
+	// Incremented by every change written to the database
+	private long version;
+	
+	// JSON written ahead of time by preSerialize, cleared whenever the song changes
+	private transient volatile SerializedString serialized;
+	
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	
 	public static final String KEY_SONG_NAME = "songName";
 	public static final String KEY_SONG_ARTIST_FULL_NAME = "songArtistFullName";
-	public static final String KEY_SONG_ALBUM = "songAlbum";	
+	public static final String KEY_SONG_ALBUM = "songAlbum";
+	public static final String KEY_SONG_AMOUNT_FAVOURITES = "songAmountFavourites";
+	public static final String KEY_SONG_VERSION = "version";
+	
+	// Ids of the latest favourites updates applied to the song, only kept in the database so an
+	// update retried by the profile microservice is not applied twice
+	public static final String KEY_FAVOURITES_REQUESTS = "favouritesRequests";
 
 
 	public Song(String songName, String songArtistFullName, String songAlbum) {
@@ -38,6 +65,7 @@ public class Song {
 
 	public void setSongName(String songName) {
 		this.songName = songName;
+		this.serialized = null;
 	}
 
 	public String getSongArtistFullName() {
@@ -46,6 +74,7 @@ public class Song {
 
 	public void setSongArtistFullName(String songArtistFullName) {
 		this.songArtistFullName = songArtistFullName;
+		this.serialized = null;
 	}
 
 	public String getSongAlbum() {
@@ -54,6 +83,7 @@ public class Song {
 
 	public void setSongAlbum(String songAlbum) {
 		this.songAlbum = songAlbum;
+		this.serialized = null;
 	}
 
 	public long getSongAmountFavourites() {
@@ -62,6 +92,27 @@ public class Song {
 
 	public void setSongAmountFavourites(long songAmountFavourites) {
 		this.songAmountFavourites = songAmountFavourites;
+		this.serialized = null;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+		this.serialized = null;
+	}
+
+	// Favourites buffered by the write-behind buffer are not in the version yet, so both are part of
+	// the ETag
+	@JsonIgnore
+	public String getETag() {
+		return eTag(this.version, this.songAmountFavourites);
+	}
+
+	public static String eTag(long version, long songAmountFavourites) {
+		return "\"" + version + "-" + songAmountFavourites + "\"";
 	}
 
 	// ObjectId needs to be converted to string
@@ -71,6 +122,7 @@ public class Song {
 
 	public void setId(ObjectId _id) {
 		this._id = _id;
+		this.serialized = null;
 	}
 	
 	@Override
@@ -89,4 +141,46 @@ public class Song {
 		
 		return jsonRepresentation;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes the JSON of the song once so that every response containing it copies the bytes
+	 * instead of writing each field again. Only worth it for songs that are shared and no longer
+	 * changed, such as the ones in SongCache.
+	 */
+	public void preSerialize() {
+		StringWriter json = new StringWriter();
+		try (JsonGenerator gen = JSON_FACTORY.createGenerator(json)) {
+			writeFields(gen);
+		} catch (IOException e) {
+			log.warn("Could not pre-serialize song {}", getId(), e);
+			return;
+		}
+		this.serialized = new SerializedString(json.toString());
+	}
+
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		SerializedString json = this.serialized;
+		if (json != null) {
+			gen.writeRawValue(json);
+		} else {
+			writeFields(gen);
+		}
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+			TypeSerializer typeSer) throws IOException {
+		serialize(gen, serializers);
+	}
+
+	private void writeFields(JsonGenerator gen) throws IOException {
+		gen.writeStartObject();
+		gen.writeStringField("id", this.getId());
+		gen.writeStringField("songName", this.songName);
+		gen.writeStringField("songArtistFullName", this.songArtistFullName);
+		gen.writeStringField("songAlbum", this.songAlbum);
+		gen.writeStringField("songAmountFavourites", String.valueOf(this.songAmountFavourites));
+		gen.writeEndObject();
+	}
+}
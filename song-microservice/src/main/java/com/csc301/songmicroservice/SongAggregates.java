@@ -0,0 +1,401 @@
+package com.csc301.songmicroservice;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.DbQueryExecResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+/**
+ * Materialized per-artist and per-album totals of the songs collection: the number of songs, the
+ * sum of their favourites and the most favourited song. They are stored in the artistStats and
+ * albumStats collections, keyed by artist and by artist and album, so reading them is a single
+ * lookup by _id.
+ *
+ * Both views are rebuilt with an aggregation pipeline at startup and on demand, and kept up to date
+ * from SongDalImpl in between. Changes are applied in order on a single background thread, so they
+ * never slow down the change itself.
+ *
+ * Each change is numbered when it is queued, after it was written. A rebuild notes the last number
+ * before it reads the songs and after it is done: changes numbered up to the first are already
+ * counted and dropped, and the entries of changes numbered up to the second, which it may or may
+ * not have read, are recomputed from the songs instead of updated. A change that fails to apply
+ * schedules a rebuild, retried until it succeeds.
+ */
+@Component
+public class SongAggregates implements SongChangeListener {
+
+  private static final Logger log = LoggerFactory.getLogger(SongAggregates.class);
+
+  public static final String ARTIST_COLLECTION = "artistStats";
+  public static final String ALBUM_COLLECTION = "albumStats";
+
+  public static final String KEY_SONG_COUNT = "songCount";
+  public static final String KEY_TOTAL_FAVOURITES = "totalFavourites";
+  public static final String KEY_TOP_SONG_ID = "topSongId";
+  public static final String KEY_TOP_SONG_NAME = "topSongName";
+  public static final String KEY_TOP_SONG_FAVOURITES = "topSongFavourites";
+
+  private final MongoTemplate db;
+  private final FavouritesWriteBehind favouritesWriteBehind;
+
+  private static final long REBUILD_RETRY_MS = 5000;
+
+  private final ScheduledExecutorService updater =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "song-aggregates");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  // Number of the last queued change, guarded by this
+  private long lastSequence;
+
+  // Changes numbered up to the first number were read by the last rebuild, and those up to the
+  // second may have been. Entries recomputed since have their own numbers. Only used by the updater
+  private long[] rebuilt = {0, 0};
+  private final Map<List<Object>, long[]> recomputed = new HashMap<List<Object>, long[]>();
+
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+  private final AtomicLong failedUpdates = new AtomicLong();
+  private volatile long lastRebuildMs;
+  private volatile String lastError;
+
+  @Autowired
+  public SongAggregates(MongoTemplate mongoTemplate,
+      FavouritesWriteBehind favouritesWriteBehind) {
+    this.db = mongoTemplate;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildOnStartup() {
+    updater.execute(this::rebuild);
+  }
+
+  @PreDestroy
+  public void stop() {
+
+    // The views are rebuilt on the next start, so queued changes can be dropped
+    updater.shutdownNow();
+  }
+
+  /**
+   * Rebuilds both views from the songs collection after the running and queued changes
+   *
+   * @return Future: Completes with whether the rebuild succeeded
+   */
+  public Future<Boolean> requestRebuild() {
+    return updater.submit(() -> rebuild());
+  }
+
+  /**
+   * Rebuilds both views from the songs collection, replacing each view in one step once it is
+   * computed. Favourites buffered by the write-behind buffer are flushed first so they are counted.
+   *
+   * @return boolean: Whether the rebuild succeeded
+   */
+  boolean rebuild() {
+    long start = System.currentTimeMillis();
+    long from = lastSequence();
+    try {
+      favouritesWriteBehind.flush();
+      rebuild("$" + Song.KEY_SONG_ARTIST_FULL_NAME, ARTIST_COLLECTION);
+      rebuild(new Document(Song.KEY_SONG_ARTIST_FULL_NAME, "$" + Song.KEY_SONG_ARTIST_FULL_NAME)
+          .append(Song.KEY_SONG_ALBUM, "$" + Song.KEY_SONG_ALBUM), ALBUM_COLLECTION);
+      rebuilt = new long[] {from, lastSequence()};
+      recomputed.clear();
+      lastRebuildMs = System.currentTimeMillis() - start;
+      return true;
+    } catch (Exception e) {
+      log.warn("Could not rebuild artist and album totals", e);
+      lastError = e.getMessage();
+      return false;
+    }
+  }
+
+  // Groups the songs by the given key, most favourited first so the first song of each group is
+  // its top song, and writes the groups over the given collection
+  private void rebuild(Object groupKey, String collection) {
+    List<Bson> pipeline = Arrays.asList(
+        Aggregates.sort(Sorts.descending(Song.KEY_SONG_AMOUNT_FAVOURITES)),
+        totals(groupKey), Aggregates.out(collection));
+    songs().aggregate(pipeline).allowDiskUse(true).toCollection();
+  }
+
+  private static Bson totals(Object groupKey) {
+    return Aggregates.group(groupKey, Accumulators.sum(KEY_SONG_COUNT, 1),
+        Accumulators.sum(KEY_TOTAL_FAVOURITES, "$" + Song.KEY_SONG_AMOUNT_FAVOURITES),
+        Accumulators.first(KEY_TOP_SONG_ID, "$_id"),
+        Accumulators.first(KEY_TOP_SONG_NAME, "$" + Song.KEY_SONG_NAME),
+        Accumulators.first(KEY_TOP_SONG_FAVOURITES, "$" + Song.KEY_SONG_AMOUNT_FAVOURITES));
+  }
+
+  // Recomputes one entry of a view from its songs, numbering it like a rebuild
+  private void recompute(View view) {
+    long from = lastSequence();
+    favouritesWriteBehind.flush();
+    Document totals = songs()
+        .aggregate(Arrays.asList(Aggregates.match(view.songFilter),
+            Aggregates.sort(Sorts.descending(Song.KEY_SONG_AMOUNT_FAVOURITES)),
+            totals(new Document("$literal", view.id))))
+        .first();
+    if (totals == null) {
+      view.stats.deleteOne(Filters.eq("_id", view.id));
+    } else {
+      view.stats.replaceOne(Filters.eq("_id", view.id), totals,
+          new ReplaceOptions().upsert(true));
+    }
+    recomputed.put(view.key, new long[] {from, lastSequence()});
+  }
+
+  // Rebuilds both views after a change failed to apply, retrying until a rebuild succeeds
+  private void scheduleRebuild(long delayMs) {
+    if (!updater.isShutdown() && rebuildScheduled.compareAndSet(false, true)) {
+      updater.schedule(() -> {
+        rebuildScheduled.set(false);
+        if (!rebuild()) {
+          scheduleRebuild(REBUILD_RETRY_MS);
+        }
+      }, delayMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private synchronized long lastSequence() {
+    return lastSequence;
+  }
+
+  @Override
+  public void songAdded(Song song) {
+    apply(song, view -> {
+      view.stats.updateOne(Filters.eq("_id", view.id),
+          Updates.combine(Updates.inc(KEY_SONG_COUNT, 1),
+              Updates.inc(KEY_TOTAL_FAVOURITES, song.getSongAmountFavourites())),
+          new UpdateOptions().upsert(true));
+      offerTopSong(view, song);
+    });
+  }
+
+  @Override
+  public void songDeleted(Song song) {
+    apply(song, view -> {
+      view.stats.updateOne(Filters.eq("_id", view.id),
+          Updates.combine(Updates.inc(KEY_SONG_COUNT, -1),
+              Updates.inc(KEY_TOTAL_FAVOURITES, -song.getSongAmountFavourites())));
+      view.stats
+          .deleteOne(Filters.and(Filters.eq("_id", view.id), Filters.lte(KEY_SONG_COUNT, 0)));
+      if (isTopSong(view, song)) {
+        findTopSong(view);
+      }
+    });
+  }
+
+  @Override
+  public void songFavouritesUpdated(Song song, long delta) {
+    apply(song, view -> {
+      view.stats.updateOne(Filters.eq("_id", view.id), Updates.inc(KEY_TOTAL_FAVOURITES, delta));
+
+      // A top song losing favourites may no longer be the top song, so look for the new one
+      if (delta < 0 && isTopSong(view, song)) {
+        findTopSong(view);
+      } else {
+        offerTopSong(view, song);
+      }
+    });
+  }
+
+  // Numbers a change and queues it on the background thread, which applies it to each entry of
+  // the song unless the last rebuild or recompute of the entry may have counted it
+  private synchronized void apply(Song song, Consumer<View> change) {
+    if (updater.isShutdown()) {
+      return;
+    }
+    long sequence = ++lastSequence;
+    updater.execute(() -> {
+      for (View view : views(song)) {
+        try {
+          long[] counted = recomputed.getOrDefault(view.key, rebuilt);
+          if (sequence > counted[1]) {
+            recomputed.remove(view.key);
+            change.accept(view);
+          } else if (sequence > counted[0]) {
+            recompute(view);
+          }
+        } catch (Exception e) {
+
+          // Only the first failure before a rebuild is logged, the rebuild logs its own
+          if (!rebuildScheduled.get()) {
+            log.warn("Could not update totals of {}, rebuilding them", view.id, e);
+          }
+          failedUpdates.incrementAndGet();
+          lastError = e.getMessage();
+          scheduleRebuild(0);
+        }
+      }
+    });
+  }
+
+  // The entries of both views a song counts towards
+  private List<View> views(Song song) {
+    return Arrays.asList(
+        new View(ARTIST_COLLECTION, song.getSongArtistFullName(),
+            Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, song.getSongArtistFullName())),
+        new View(ALBUM_COLLECTION, albumKey(song.getSongArtistFullName(), song.getSongAlbum()),
+            Filters.and(Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, song.getSongArtistFullName()),
+                Filters.eq(Song.KEY_SONG_ALBUM, song.getSongAlbum()))));
+  }
+
+  private static Document albumKey(String artist, String album) {
+    return new Document(Song.KEY_SONG_ARTIST_FULL_NAME, artist).append(Song.KEY_SONG_ALBUM, album);
+  }
+
+  // Makes the song the top song if it has more favourites than the current one, or updates its
+  // count if it already is
+  private static void offerTopSong(View view, Song song) {
+    view.stats.updateOne(
+        Filters.and(Filters.eq("_id", view.id),
+            Filters.or(Filters.eq(KEY_TOP_SONG_ID, null), Filters.eq(KEY_TOP_SONG_ID, song._id),
+                Filters.lt(KEY_TOP_SONG_FAVOURITES, song.getSongAmountFavourites()))),
+        topSong(song._id, song.getSongName(), song.getSongAmountFavourites()));
+  }
+
+  private static boolean isTopSong(View view, Song song) {
+    return view.stats.countDocuments(
+        Filters.and(Filters.eq("_id", view.id), Filters.eq(KEY_TOP_SONG_ID, song._id))) > 0;
+  }
+
+  // Finds the most favourited song of a view entry in the songs collection
+  private void findTopSong(View view) {
+    Document top = songs().find(view.songFilter)
+        .projection(Projections.include(Song.KEY_SONG_NAME, Song.KEY_SONG_AMOUNT_FAVOURITES))
+        .sort(Sorts.descending(Song.KEY_SONG_AMOUNT_FAVOURITES)).first();
+    if (top != null) {
+      Number favourites = top.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+      view.stats.updateOne(Filters.eq("_id", view.id), topSong(top.getObjectId("_id"),
+          top.getString(Song.KEY_SONG_NAME), favourites == null ? 0 : favourites.longValue()));
+    }
+  }
+
+  private static Bson topSong(ObjectId songId, String songName, long favourites) {
+    return Updates.combine(Updates.set(KEY_TOP_SONG_ID, songId),
+        Updates.set(KEY_TOP_SONG_NAME, songName), Updates.set(KEY_TOP_SONG_FAVOURITES, favourites));
+  }
+
+  private MongoCollection<Document> songs() {
+    return db.getCollection(db.getCollectionName(Song.class));
+  }
+
+  /**
+   * Gets the totals of an artist
+   *
+   * @param artist: The full name of the artist
+   * @return DbQueryStatus: The result of the lookup with the totals and status
+   */
+  public DbQueryStatus getArtistStats(String artist) {
+    return getStats(ARTIST_COLLECTION, artist);
+  }
+
+  /**
+   * Gets the totals of an album
+   *
+   * @param artist: The full name of the artist of the album
+   * @param album: The name of the album
+   * @return DbQueryStatus: The result of the lookup with the totals and status
+   */
+  public DbQueryStatus getAlbumStats(String artist, String album) {
+    return getStats(ALBUM_COLLECTION, albumKey(artist, album));
+  }
+
+  private DbQueryStatus getStats(String collection, Object id) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    try {
+      Document found = db.getCollection(collection).find(Filters.eq("_id", id)).first();
+
+      // If the artist or album has songs return its totals
+      if (found != null) {
+        Map<String, Object> stats = new HashMap<String, Object>();
+        if (id instanceof Document) {
+          stats.putAll((Document) id);
+        } else {
+          stats.put(Song.KEY_SONG_ARTIST_FULL_NAME, id);
+        }
+        stats.put(KEY_SONG_COUNT, found.get(KEY_SONG_COUNT));
+        stats.put(KEY_TOTAL_FAVOURITES, found.get(KEY_TOTAL_FAVOURITES));
+        ObjectId topSongId = found.getObjectId(KEY_TOP_SONG_ID);
+        stats.put(KEY_TOP_SONG_ID, topSongId == null ? null : topSongId.toHexString());
+        stats.put(KEY_TOP_SONG_NAME, found.getString(KEY_TOP_SONG_NAME));
+        stats.put(KEY_TOP_SONG_FAVOURITES, found.get(KEY_TOP_SONG_FAVOURITES));
+
+        dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+        dataToReturn.setData(stats);
+        return dataToReturn;
+      }
+
+      // If there are no songs return not found
+      return new DbQueryStatus("No songs Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+
+    } catch (Exception e) {
+
+      // Return error status if failed
+      return new DbQueryStatus("Could Not retrieve totals", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
+
+  /**
+   * Gets the counters of the views
+   *
+   * @return Map: The counters by name
+   */
+  public Map<String, Object> getCounters() {
+    Map<String, Object> statsMap = new HashMap<String, Object>();
+    statsMap.put("lastRebuildMs", lastRebuildMs);
+    statsMap.put("failedUpdates", failedUpdates.get());
+    statsMap.put("lastError", lastError);
+    return statsMap;
+  }
+
+  // An entry of a view, with the filter of the songs it totals
+  private final class View {
+    private final MongoCollection<Document> stats;
+    private final Object id;
+    private final Bson songFilter;
+    private final List<Object> key;
+
+    private View(String collection, Object id, Bson songFilter) {
+      this.stats = db.getCollection(collection);
+      this.id = id;
+      this.songFilter = songFilter;
+      this.key = Arrays.asList(collection, id);
+    }
+  }
+}
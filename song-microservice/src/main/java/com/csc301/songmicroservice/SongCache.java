@@ -0,0 +1,147 @@
+package com.csc301.songmicroservice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Bounded in-process cache of songs by id, kept in front of MongoDB by SongDalImpl. Entries are
+ * evicted by size (frequency based) and expire a fixed time after they were written.
+ *
+ * Reads and updates that finish out of order only replace a cached song with a newer version of
+ * it. A deleted song leaves a tombstone for as long as an entry lives, so a read or update that
+ * was in flight when it was deleted cannot cache it again.
+ */
+@Component
+public class SongCache {
+
+  private final Cache<String, Song> songs;
+  private final Cache<String, Boolean> deleted;
+  private final boolean serializedPayloads;
+
+  @Autowired
+  public SongCache(@Value("${song.cache.maximumSize:10000}") long maximumSize,
+      @Value("${song.cache.expireAfterWriteSeconds:300}") long expireAfterWriteSeconds,
+      @Value("${song.cache.serializedPayloads:true}") boolean serializedPayloads) {
+    this.serializedPayloads = serializedPayloads;
+    this.songs = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS).recordStats().build();
+    this.deleted = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS).build();
+  }
+
+  /**
+   * Gets a song from the cache
+   * 
+   * @param songId: The id of the song to get
+   * @return Song: The cached song, or null if it is not cached
+   */
+  public Song get(String songId) {
+    return songs.getIfPresent(songId);
+  }
+
+  /**
+   * Adds a song to the cache, or replaces the cached one if the given song is a newer version of
+   * it. Cached songs must not be changed afterwards, since their JSON may already have been written
+   * 
+   * @param song: The song to cache
+   */
+  public void putIfNewer(Song song) {
+    preSerialize(song);
+    songs.asMap().compute(song.getId(), (id, cached) -> isDeleted(id) ? null
+        : cached == null || song.getVersion() > cached.getVersion() ? song : cached);
+  }
+
+  /**
+   * Adds a song to the cache unless one with the same id is already cached, which was written by
+   * an update made after the given song was read and is kept. Cached songs must not be changed
+   * afterwards, since their JSON may already have been written
+   * 
+   * @param song: The song to cache
+   * @return Song: The song now cached, either the given one or the one already there, or the given
+   *         one if it was deleted since it was read
+   */
+  public Song putIfAbsent(Song song) {
+    preSerialize(song);
+    Song cached = songs.asMap().compute(song.getId(),
+        (id, current) -> current != null || isDeleted(id) ? current : song);
+    return cached != null ? cached : song;
+  }
+
+  /**
+   * Atomically replaces the cached song with the given id, unless the song was deleted
+   * 
+   * @param songId: The id of the song
+   * @param remapping: Computes the new song from the id and the cached song (null if not cached).
+   *        Returning null removes the song from the cache. Not called if the song was deleted
+   * @return Song: The newly cached song, or null if the song was deleted
+   */
+  public Song compute(String songId, BiFunction<String, Song, Song> remapping) {
+    return songs.asMap().compute(songId,
+        (id, cached) -> isDeleted(id) ? null : preSerialize(remapping.apply(id, cached)));
+  }
+
+  /**
+   * Clears the tombstone of a song added again with the id of a deleted song
+   * 
+   * @param songId: The id of the added song
+   */
+  public void added(String songId) {
+    deleted.invalidate(songId);
+  }
+
+  /**
+   * Checks whether a song was deleted recently enough to still have a tombstone
+   * 
+   * @param songId: The id of the song
+   * @return boolean: Whether the song was deleted
+   */
+  public boolean isDeleted(String songId) {
+    return deleted.getIfPresent(songId) != null;
+  }
+
+  private Song preSerialize(Song song) {
+    if (song != null && serializedPayloads) {
+      song.preSerialize();
+    }
+    return song;
+  }
+
+  /**
+   * Removes a deleted song from the cache and leaves a tombstone in its place. Both are done while
+   * holding the entry of the song, so a song being cached at the same time is either removed or
+   * kept out
+   * 
+   * @param songId: The id of the deleted song
+   */
+  public void remove(String songId) {
+    songs.asMap().compute(songId, (id, cached) -> {
+      deleted.put(id, Boolean.TRUE);
+      return null;
+    });
+  }
+
+  /**
+   * Gets the hit, miss and eviction counters of the cache
+   * 
+   * @return Map: The counters by name
+   */
+  public Map<String, Object> getStats() {
+    CacheStats stats = songs.stats();
+
+    Map<String, Object> statsMap = new HashMap<String, Object>();
+    statsMap.put("size", songs.estimatedSize());
+    statsMap.put("hits", stats.hitCount());
+    statsMap.put("misses", stats.missCount());
+    statsMap.put("evictions", stats.evictionCount());
+    statsMap.put("hitRate", stats.hitRate());
+    return statsMap;
+  }
+}
@@ -0,0 +1,10 @@
+package com.csc301.songmicroservice;
+
+// Notified by SongDalImpl after songs are changed in the database, used to keep views of the songs
+// outside the database up to date. Notifications of concurrent changes to a song can arrive in
+// any order, so favourites updates carry the delta to apply
+public interface SongChangeListener {
+	void songAdded(Song song);
+	void songDeleted(Song song);
+	void songFavouritesUpdated(Song song, long delta);
+}
@@ -1,169 +1,523 @@
 package com.csc301.songmicroservice;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
-import okhttp3.Call;
-import okhttp3.HttpUrl;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
+import org.springframework.web.context.request.WebRequest;
+import com.csc301.interservice.ApiResponse;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.interservice.SongWireCodec;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
 @RequestMapping("/")
 public class SongController {
 
+  private static final Logger log = LoggerFactory.getLogger(SongController.class);
+
   @Autowired
   private final SongDal songDal;
 
-  private OkHttpClient client = new OkHttpClient();
+  @Autowired
+  private final SongCache songCache;
+
+  @Autowired
+  private final FavouritesWriteBehind favouritesWriteBehind;
+
+  @Autowired
+  private final SongIngester songIngester;
+
+  @Autowired
+  private final SongSearchIndex songSearchIndex;
 
+  @Autowired
+  private final SongLeaderboard songLeaderboard;
+
+  @Autowired
+  private final SongOutbox songOutbox;
+
+  @Autowired
+  private final InterServiceClient interServiceClient;
+
+  @Autowired
+  private final SongAggregates songAggregates;
 
-  public SongController(SongDal songDal) {
+  @Autowired
+  private final ApiResponseFactory responses;
+
+  @Value("${song.catalog.maxPageSize:1000}")
+  private int maxCatalogPageSize;
+
+  @Value("${song.search.maxLimit:100}")
+  private int maxSearchLimit;
+
+  @Value("${song.http.cacheControl:no-cache}")
+  private String cacheControl;
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+
+  public SongController(SongDal songDal, SongCache songCache,
+      FavouritesWriteBehind favouritesWriteBehind, SongIngester songIngester,
+      SongSearchIndex songSearchIndex, SongLeaderboard songLeaderboard, SongOutbox songOutbox,
+      InterServiceClient interServiceClient, SongAggregates songAggregates,
+      ApiResponseFactory responses) {
     this.songDal = songDal;
+    this.songCache = songCache;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+    this.songIngester = songIngester;
+    this.songSearchIndex = songSearchIndex;
+    this.songLeaderboard = songLeaderboard;
+    this.songOutbox = songOutbox;
+    this.interServiceClient = interServiceClient;
+    this.songAggregates = songAggregates;
+    this.responses = responses;
   }
 
 
   @RequestMapping(value = "/getSongById/{songId}", method = RequestMethod.GET)
-  public @ResponseBody Map<String, Object> getSongById(@PathVariable("songId") String songId,
-      HttpServletRequest request) {
-
-    // Put path in response body
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("GET %s", Utils.getUrl(request)));
+  public @ResponseBody ApiResponse getSongById(@PathVariable("songId") String songId,
+      HttpServletRequest request, HttpServletResponse httpResponse, WebRequest webRequest) {
 
     // Call implementation method to compute result
     DbQueryStatus dbQueryStatus = songDal.findSongById(songId);
 
+    // Answer with no body if the client already has the version of the song that was read
+    if (notModified(dbQueryStatus, webRequest, httpResponse)) {
+      return null;
+    }
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
     // Return response of implementation method
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
 
     return response;
   }
 
 
   @RequestMapping(value = "/getSongTitleById/{songId}", method = RequestMethod.GET)
-  public @ResponseBody Map<String, Object> getSongTitleById(@PathVariable("songId") String songId,
-      HttpServletRequest request) {
+  public @ResponseBody ApiResponse getSongTitleById(@PathVariable("songId") String songId,
+      HttpServletRequest request, HttpServletResponse httpResponse, WebRequest webRequest) {
+
+    // Call implementation method to compute result
+    DbQueryStatus dbQueryStatus = songDal.getSongTitleById(songId);
+
+    // Answer with no body if the client already has the version of the song that was read
+    if (notModified(dbQueryStatus, webRequest, httpResponse)) {
+      return null;
+    }
 
     // Put path in response body
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("GET %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("GET", request);
+
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
+  // Checks the ETag of the song that was read against If-None-Match, adding the ETag and
+  // Cache-Control headers to the response if the song exists. Returns true if the response has
+  // been set to 304
+  private boolean notModified(DbQueryStatus dbQueryStatus, WebRequest webRequest,
+      HttpServletResponse httpResponse) {
+    if (dbQueryStatus.getETag() == null) {
+      return false;
+    }
+    if (!cacheControl.isEmpty()) {
+      httpResponse.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+    return webRequest.checkNotModified(dbQueryStatus.getETag());
+  }
+
+
+  @RequestMapping(value = "/getSongTitlesByIds", method = RequestMethod.POST)
+  public @ResponseBody ApiResponse getSongTitlesByIds(
+      @RequestBody List<String> songIds, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("POST", request);
 
     // Call implementation method to compute result
-    DbQueryStatus dbQueryStatus = songDal.getSongTitleById(songId);
+    DbQueryStatus dbQueryStatus = songDal.getSongTitlesByIds(songIds);
 
     // Return response of implementation method
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
 
     return response;
   }
 
 
-  @RequestMapping(value = "/deleteSongById/{songId}", method = RequestMethod.DELETE)
-  public @ResponseBody Map<String, Object> deleteSongById(@PathVariable("songId") String songId,
-      HttpServletRequest request) {
+  @RequestMapping(value = "/internal/getSongTitlesByIds", method = RequestMethod.POST,
+      consumes = SongWireCodec.CONTENT_TYPE, produces = SongWireCodec.CONTENT_TYPE)
+  public @ResponseBody byte[] getSongTitlesByIdsBinary(@RequestBody byte[] body)
+      throws IOException {
+
+    // Call implementation method to compute result and return it in the binary encoding
+    DbQueryStatus dbQueryStatus =
+        songDal.getSongTitlesByIds(SongWireCodec.decodeTitlesRequest(body));
+    return SongWireResponses.encodeTitles(dbQueryStatus);
+  }
+
+
+  @RequestMapping(value = "/getSongFavouritesCountById/{songId}", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongFavouritesCountById(
+      @PathVariable("songId") String songId, HttpServletRequest request) {
 
     // Put path in response body
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("DELETE %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("GET", request);
 
-    try {
+    // Call implementation method to compute result
+    DbQueryStatus dbQueryStatus = songDal.getSongFavouritesCountById(songId);
 
-      // Call implementation method to compute result
-      DbQueryStatus dbQueryStatus = songDal.deleteSongById(songId);
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
 
-      // If implementation succeeds, send request to profile microservice to delete song
-      if (dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
-        HttpUrl.Builder urlBuilder =
-            HttpUrl.parse("http://localhost:3002" + "/deleteAllSongsFromDb/" + songId).newBuilder();
-        String url = urlBuilder.build().toString();
-        RequestBody body = RequestBody.create(new byte[0], null);
 
-        Request newRequest = new Request.Builder().url(url).method("PUT", body).build();
+  @RequestMapping(value = "/getSongCatalog", method = RequestMethod.GET)
+  public void getSongCatalog(@RequestParam(value = "pageSize", defaultValue = "100") int pageSize,
+      @RequestParam(value = "after", required = false) String after, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
 
-        Call call = client.newCall(newRequest);
-        call.execute();
+    // Cap the page size
+    int limit = Math.max(1, Math.min(pageSize, maxCatalogPageSize));
+
+    // Stream the response as the songs are read instead of building it in memory
+    response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    try (JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+      generator.writeStartObject();
+      if (responses.isIncludePath()) {
+        generator.writeStringField("path", String.format("GET %s", Utils.getUrl(request)));
       }
 
-      // Return response of implementation method
-      response.put("message", dbQueryStatus.getMessage());
-      response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-          dbQueryStatus.getData());
+      // Call implementation method to write each song as it is read
+      generator.writeArrayFieldStart("data");
+      DbQueryStatus dbQueryStatus = songDal.forEachSongAfter(after, limit, song -> {
+        try {
+          writeSong(generator, song);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      generator.writeEndArray();
+
+      // Return the token of the next page along with the response of the implementation method
+      generator.writeStringField("next", (String) dbQueryStatus.getData());
+      generator.writeStringField("message", dbQueryStatus.getMessage());
+      generator.writeStringField("status",
+          dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)
+              ? HttpStatus.OK.name()
+              : HttpStatus.INTERNAL_SERVER_ERROR.name());
+      generator.writeEndObject();
+    }
+  }
+
+
+  // Writes a song document in the same form as Song.getJsonRepresentation
+  static void writeSong(JsonGenerator generator, Document song) throws IOException {
+    Number favourites = song.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+
+    generator.writeStartObject();
+    generator.writeStringField("id", song.getObjectId("_id").toHexString());
+    generator.writeStringField(Song.KEY_SONG_NAME, song.getString(Song.KEY_SONG_NAME));
+    generator.writeStringField(Song.KEY_SONG_ARTIST_FULL_NAME,
+        song.getString(Song.KEY_SONG_ARTIST_FULL_NAME));
+    generator.writeStringField(Song.KEY_SONG_ALBUM, song.getString(Song.KEY_SONG_ALBUM));
+    generator.writeStringField(Song.KEY_SONG_AMOUNT_FAVOURITES,
+        String.valueOf(favourites == null ? 0 : favourites.longValue()));
+    generator.writeEndObject();
+  }
+
+
+  @RequestMapping(value = "/getSongsByArtist", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongsByArtist(@RequestParam("artist") String artist,
+      @RequestParam(value = "pageSize", defaultValue = "100") int pageSize,
+      @RequestParam(value = "after", required = false) String after, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Call implementation method to read a page of the songs of the artist
+    DbQueryStatus dbQueryStatus = songDal.findSongsByArtist(artist, after,
+        Math.max(1, Math.min(pageSize, maxCatalogPageSize)));
+
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getSongsByAlbum", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongsByAlbum(@RequestParam("album") String album,
+      @RequestParam(value = "artist", required = false) String artist,
+      @RequestParam(value = "pageSize", defaultValue = "100") int pageSize,
+      @RequestParam(value = "after", required = false) String after, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Call implementation method to read a page of the songs of the album
+    DbQueryStatus dbQueryStatus = songDal.findSongsByAlbum(album, artist, after,
+        Math.max(1, Math.min(pageSize, maxCatalogPageSize)));
+
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getArtistStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getArtistStats(@RequestParam("artist") String artist,
+      HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Read the precomputed totals of the artist
+    DbQueryStatus dbQueryStatus = songAggregates.getArtistStats(artist);
+
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getAlbumStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getAlbumStats(@RequestParam("artist") String artist,
+      @RequestParam("album") String album, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Read the precomputed totals of the album
+    DbQueryStatus dbQueryStatus = songAggregates.getAlbumStats(artist, album);
+
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/rebuildSongAggregates", method = RequestMethod.POST)
+  public @ResponseBody ApiResponse rebuildSongAggregates(HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("POST", request);
 
+    // Rebuild the artist and album totals from the songs once the queued changes are applied
+    try {
+      if (songAggregates.requestRebuild().get()) {
+        response.setMessage("Rebuild Successful");
+        response.setStatus(DbQueryExecResult.QUERY_OK, songAggregates.getCounters());
+        return response;
+      }
     } catch (Exception e) {
+      log.warn("Could not rebuild artist and album totals", e);
+    }
+    response.setMessage("Could Not rebuild totals");
+    response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/searchSongs", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse searchSongs(@RequestParam("q") String query,
+      @RequestParam(value = "limit", defaultValue = "10") int limit, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Find the most favourited songs containing every word of the query
+    response.setMessage("Search Successful");
+    response.setStatus(DbQueryExecResult.QUERY_OK,
+        songSearchIndex.search(query, Math.max(1, Math.min(limit, maxSearchLimit))));
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/autocompleteSongs", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse autocompleteSongs(@RequestParam("q") String query,
+      @RequestParam(value = "limit", defaultValue = "10") int limit, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Find the most favourited songs matching the query, with the last word as a prefix
+    response.setMessage("Search Successful");
+    response.setStatus(DbQueryExecResult.QUERY_OK,
+        songSearchIndex.autocomplete(query, Math.max(1, Math.min(limit, maxSearchLimit))));
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getSongSearchIndexStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongSearchIndexStats(HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Return the size of the search index
+    response.setMessage("Search index stats retrieved");
+    response.setStatus(DbQueryExecResult.QUERY_OK, songSearchIndex.getStats());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getSongLeaderboard", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongLeaderboard(
+      @RequestParam(value = "limit", defaultValue = "10") int limit, HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Return the most favourited songs with their ranks
+    response.setMessage("Leaderboard retrieved");
+    response.setStatus(DbQueryExecResult.QUERY_OK,
+        songLeaderboard.getTop(Math.max(1, Math.min(limit, maxSearchLimit))));
 
-      // Catch failed call to profile microservice
-      e.printStackTrace();
-      response.put("message", "Failed to remove song from database");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getSongRank/{songId}", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongRank(@PathVariable("songId") String songId,
+      HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Return the rank of the song, or not found if it is not ranked
+    Map<String, Object> rank = songLeaderboard.getRank(songId);
+    if (rank != null) {
+      response.setMessage("Rank retrieved");
+      response.setStatus(DbQueryExecResult.QUERY_OK, rank);
+    } else {
+      response.setMessage("Song not Found");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_NOT_FOUND, null);
     }
 
     return response;
   }
 
 
+  @RequestMapping(value = "/deleteSongById/{songId}", method = RequestMethod.DELETE)
+  public @ResponseBody ApiResponse deleteSongById(@PathVariable("songId") String songId,
+      HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("DELETE", request);
+
+    // Call implementation method to compute result. The delete reaches the profile microservice
+    // through the song outbox
+    DbQueryStatus dbQueryStatus = songDal.deleteSongById(songId);
+
+    // Return response of implementation method
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
   @RequestMapping(value = "/addSong", method = RequestMethod.POST)
-  public @ResponseBody Map<String, Object> addSong(@RequestParam Map<String, String> params,
+  public @ResponseBody ApiResponse addSong(@RequestParam Map<String, String> params,
       HttpServletRequest request) {
 
     // Put path in response body
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("path", String.format("POST %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("POST", request);
 
     // Ensure all parameters exist
     if (params.containsKey("songName") && params.containsKey("songArtistFullName")
         && params.containsKey("songAlbum")) {
-      try {
 
-        // Create the new song with a new ID
-        Song newSong = new Song(params.get("songName"), params.get("songArtistFullName"),
-            params.get("songAlbum"));
-        ObjectId id = new ObjectId();
-        newSong.setId(id);
+      // Create the new song with a new ID
+      Song newSong = new Song(params.get("songName"), params.get("songArtistFullName"),
+          params.get("songAlbum"));
+      newSong.setId(new ObjectId());
+
+      // Call implementation method to compute result. The song reaches the profile microservice
+      // through the song outbox
+      DbQueryStatus dbQueryStatus = songDal.addSong(newSong);
+
+      // Return response of implementation method
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+    } else {
+      // Catch invalid parameter response
+      response.setMessage("Invalid parameters given for addSong");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+    }
 
-        // Call implementation method to compute result
-        DbQueryStatus dbQueryStatus = songDal.addSong(newSong);
+    return response;
+  }
 
-        // If implementation succeeds, send request to profile microservice to add song
-        if (dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
-          HttpUrl.Builder urlBuilder = HttpUrl
-              .parse("http://localhost:3002" + "/addSongProfile/" + id.toString()).newBuilder();
-          String url = urlBuilder.build().toString();
-          RequestBody body = RequestBody.create(new byte[0], null);
 
-          Request newRequest = new Request.Builder().url(url).method("PUT", body).build();
+  @RequestMapping(value = "/addSongs", method = RequestMethod.POST)
+  public @ResponseBody ApiResponse addSongs(HttpServletRequest request) {
 
-          Call call = client.newCall(newRequest);
-          call.execute();
-        }
+    // Put path in response body
+    ApiResponse response = responses.create("POST", request);
 
-        // Return response of implementation method
-        response.put("message", dbQueryStatus.getMessage());
-        response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-            dbQueryStatus.getData());
+    try {
 
-      } catch (Exception e) {
-        // Catch failed call to profile microservice
-        response.put("message", "Failed to add song to database");
-        response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-      }
-    } else {
-      // Catch invalid parameter response
-      response.put("message", "Invalid parameters given for addSong");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+      // Stream the songs in the request body into the database
+      DbQueryStatus dbQueryStatus = songIngester.ingest(request.getInputStream());
+
+      // Return the ingestion report, or where the stream was cut short. The report is kept even
+      // then, since the songs added before the stream went wrong stay added
+      response.setMessage(dbQueryStatus.getMessage());
+      response.setStatus(dbQueryStatus.getdbQueryExecResult(), null);
+      response.setData(dbQueryStatus.getData());
+
+    } catch (Exception e) {
+      log.warn("Could not add songs to database", e);
+      response.setMessage("Failed to add songs to database");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
     }
 
     return response;
@@ -171,33 +525,111 @@ public class SongController {
 
 
   @RequestMapping(value = "/updateSongFavouritesCount/{songId}", method = RequestMethod.PUT)
-  public @ResponseBody Map<String, Object> updateFavouritesCount(
+  public @ResponseBody ApiResponse updateFavouritesCount(
       @PathVariable("songId") String songId,
-      @RequestParam("shouldDecrement") String shouldDecrement, HttpServletRequest request) {
+      @RequestParam("shouldDecrement") String shouldDecrement,
+      @RequestParam(value = "requestId", required = false) String requestId,
+      HttpServletRequest request) {
 
     // Put path in response body
-    Map<String, Object> response = new HashMap<String, Object>();
-    response.put("data", String.format("PUT %s", Utils.getUrl(request)));
+    ApiResponse response = responses.create("PUT", request);
 
     // Set decrement based on given shouldDecrement boolean (if valid)
     boolean value = false;
     if (shouldDecrement.equals("true")) {
       value = true;
     } else if (!(shouldDecrement.equals("false"))) {
-      response.put("message", "Invalid parameter: shouldDecrement only accepts true/false");
-      response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+      response.setMessage("Invalid parameter: shouldDecrement only accepts true/false");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
       return response;
     } else {
       value = false;
     }
 
     // Call implementation method to compute result
-    DbQueryStatus dbQueryStatus = songDal.updateSongFavouritesCount(songId, value);
+    DbQueryStatus dbQueryStatus = songDal.updateSongFavouritesCount(songId, value, requestId);
 
     // Return response of implementation method
-    response.put("message", dbQueryStatus.getMessage());
-    response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(),
-        dbQueryStatus.getData());
+    response.setMessage(dbQueryStatus.getMessage());
+    response.setStatus(dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/internal/updateSongFavouritesCount", method = RequestMethod.PUT,
+      consumes = SongWireCodec.CONTENT_TYPE, produces = SongWireCodec.CONTENT_TYPE)
+  public @ResponseBody byte[] updateFavouritesCountBinary(@RequestBody byte[] body)
+      throws IOException {
+
+    // Call implementation method to compute result and return it in the binary encoding
+    SongWireCodec.FavouritesUpdate update = SongWireCodec.decodeFavouritesRequest(body);
+    DbQueryStatus dbQueryStatus =
+        songDal.updateSongFavouritesCount(update.getSongId(), update.getShouldDecrement(),
+            update.getRequestId());
+    return SongWireResponses.encodeFavourites(dbQueryStatus);
+  }
+
+
+  @RequestMapping(value = "/getSongCacheStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongCacheStats(HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Return the current counters of the song cache
+    response.setMessage("Cache stats retrieved");
+    response.setStatus(DbQueryExecResult.QUERY_OK, songCache.getStats());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getFavouritesWriteBehindStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getFavouritesWriteBehindStats(
+      HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Return the current counters of the write-behind buffer
+    response.setMessage("Write-behind stats retrieved");
+    response.setStatus(DbQueryExecResult.QUERY_OK, favouritesWriteBehind.getStats());
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getSongOutboxStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getSongOutboxStats(HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    try {
+
+      // Return the counters of the song outbox and how far behind delivery is
+      response.setMessage("Outbox stats retrieved");
+      response.setStatus(DbQueryExecResult.QUERY_OK, songOutbox.getStats());
+
+    } catch (Exception e) {
+      response.setMessage("Could Not retrieve outbox stats");
+      response.setStatus(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+    }
+
+    return response;
+  }
+
+
+  @RequestMapping(value = "/getInterServiceClientStats", method = RequestMethod.GET)
+  public @ResponseBody ApiResponse getInterServiceClientStats(HttpServletRequest request) {
+
+    // Put path in response body
+    ApiResponse response = responses.create("GET", request);
+
+    // Return the circuit breaker states and call counters of the inter-service client
+    response.setMessage("Inter-service client stats retrieved");
+    response.setStatus(DbQueryExecResult.QUERY_OK, interServiceClient.getStats());
 
     return response;
   }
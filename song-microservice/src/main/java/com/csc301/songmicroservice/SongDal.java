@@ -1,9 +1,20 @@
 package com.csc301.songmicroservice;
 
+import java.util.List;
+import java.util.function.Consumer;
+import org.bson.Document;
+
 public interface SongDal {
 	DbQueryStatus addSong(Song songToAdd);
+	DbQueryStatus addSongs(List<Song> songsToAdd);
 	DbQueryStatus findSongById(String songId);
 	DbQueryStatus getSongTitleById(String songId);
+	DbQueryStatus getSongTitlesByIds(List<String> songIds);
+	DbQueryStatus getSongFavouritesCountById(String songId);
+	DbQueryStatus findSongsByArtist(String artist, String afterSongId, int limit);
+	DbQueryStatus findSongsByAlbum(String album, String artist, String afterSongId, int limit);
+	DbQueryStatus forEachSongAfter(String afterSongId, int limit, Consumer<Document> action);
 	DbQueryStatus deleteSongById(String songId);	
-	DbQueryStatus updateSongFavouritesCount(String songId, boolean shouldDecrement);
+	DbQueryStatus updateSongFavouritesCount(String songId, boolean shouldDecrement,
+			String requestId);
 }
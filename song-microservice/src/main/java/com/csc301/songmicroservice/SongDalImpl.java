@@ -1,19 +1,104 @@
 package com.csc301.songmicroservice;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
+import com.csc301.interservice.DbQueryExecResult;
+import com.mongodb.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 
 @Repository
 public class SongDalImpl implements SongDal {
 
+  private static final Logger log = LoggerFactory.getLogger(SongDalImpl.class);
+
+  // Max number of songs fetched from the database per cursor round trip
+  static final int CURSOR_BATCH_SIZE = 500;
+
+  // Number of the latest favourites update ids kept per song. A retried update is only recognised
+  // while fewer updates than this were applied to the song after it
+  static final int FAVOURITES_REQUESTS_KEPT = 128;
+
   private final MongoTemplate db;
+  private final SongCache songCache;
+  private final FavouritesWriteBehind favouritesWriteBehind;
+  private final SongOutbox songOutbox;
+  private final SongIndexes songIndexes;
+  private final List<SongChangeListener> listeners;
+
+  // Adds and deletes hold the lock of each song they write until its outbox event is recorded and
+  // the listeners are notified, so the events and notifications of a song are in the order of its
+  // writes
+  private final ReentrantLock[] songLocks = new ReentrantLock[64];
 
   @Autowired
-  public SongDalImpl(MongoTemplate mongoTemplate) {
+  public SongDalImpl(MongoTemplate mongoTemplate, SongCache songCache,
+      FavouritesWriteBehind favouritesWriteBehind, SongOutbox songOutbox,
+      SongIndexes songIndexes, List<SongChangeListener> listeners) {
     this.db = mongoTemplate;
+    this.songCache = songCache;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+    this.songOutbox = songOutbox;
+    this.songIndexes = songIndexes;
+    this.listeners = listeners;
+    for (int i = 0; i < songLocks.length; i++) {
+      songLocks[i] = new ReentrantLock();
+    }
+  }
+
+  // Locks the songs with the given ids, taking the locks in index order so that adds and deletes
+  // of overlapping songs cannot deadlock
+  private List<ReentrantLock> lockSongs(List<String> songIds) {
+    TreeSet<Integer> indexes = new TreeSet<Integer>();
+    for (String songId : songIds) {
+      indexes.add(Math.floorMod(String.valueOf(songId).hashCode(), songLocks.length));
+    }
+    List<ReentrantLock> locked = new ArrayList<ReentrantLock>();
+    for (int index : indexes) {
+      songLocks[index].lock();
+      locked.add(songLocks[index]);
+    }
+    return locked;
+  }
+
+  private static void unlock(List<ReentrantLock> locked) {
+    for (ReentrantLock lock : locked) {
+      lock.unlock();
+    }
+  }
+
+  // Tells every listener about a change, without letting a failing listener fail the change
+  private void notifyListeners(Consumer<SongChangeListener> notification) {
+    for (SongChangeListener listener : listeners) {
+      try {
+        notification.accept(listener);
+      } catch (Exception e) {
+        log.warn("Song change listener {} failed", listener.getClass().getSimpleName(), e);
+      }
+    }
   }
 
   /**
@@ -28,18 +113,96 @@ public class SongDalImpl implements SongDal {
     // Create new DbQueryStatus
     DbQueryStatus dataToReturn;
 
+    // Give the song its id now so it can be locked while it is added
+    if (songToAdd._id == null) {
+      songToAdd.setId(new ObjectId());
+    }
+    List<ReentrantLock> locked = lockSongs(Collections.singletonList(songToAdd.getId()));
     try {
 
-      // Attempt to insert the song and return data
+      // Attempt to insert the song, queue it for the profile microservice and return data
       db.insert(songToAdd);
+      songOutbox.record(SongOutbox.SONG_ADDED, Collections.singletonList(songToAdd.getId()));
+      notifyListeners(listener -> listener.songAdded(songToAdd));
       dataToReturn = new DbQueryStatus("Add Successful", DbQueryExecResult.QUERY_OK);
-      dataToReturn.setData(songToAdd.getJsonRepresentation());
+      dataToReturn.setData(songToAdd);
       return dataToReturn;
 
     } catch (Exception e) {
 
       // Return error status if failed
       return new DbQueryStatus("Unable to add new song", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    } finally {
+      unlock(locked);
+    }
+  }
+
+  /**
+   * Adds the given songs to the database with a single unordered bulk insert. Songs that fail to
+   * insert, such as ones with a duplicate id, do not stop the rest from being added
+   * 
+   * @param songsToAdd: The songs to add to the database
+   * @return DbQueryStatus: The result of the insert with the ids of the added songs and the errors
+   *         of the songs that failed, and status
+   */
+  @Override
+  public DbQueryStatus addSongs(List<Song> songsToAdd) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    // Give every song its id now so they can be locked while they are added
+    List<String> songIds = new ArrayList<String>();
+    for (Song song : songsToAdd) {
+      if (song._id == null) {
+        song.setId(new ObjectId());
+      }
+      songIds.add(song.getId());
+    }
+    List<ReentrantLock> locked = lockSongs(songIds);
+    try {
+
+      // Attempt to insert all the songs, collecting the errors of any that failed
+      Map<Integer, String> errors = new HashMap<Integer, String>();
+      try {
+        db.bulkOps(BulkMode.UNORDERED, Song.class).insert(songsToAdd).execute();
+      } catch (BulkOperationException e) {
+        for (BulkWriteError error : e.getErrors()) {
+          errors.put(error.getIndex(), error.getMessage());
+        }
+      }
+
+      // Split the songs into the ones that were added and the ones that failed
+      List<String> inserted = new ArrayList<String>();
+      List<String> failed = new ArrayList<String>();
+      for (int i = 0; i < songsToAdd.size(); i++) {
+        if (errors.containsKey(i)) {
+          failed.add(songsToAdd.get(i).getId() + ": " + errors.get(i));
+        } else {
+          Song added = songsToAdd.get(i);
+          inserted.add(added.getId());
+          songCache.added(added.getId());
+          notifyListeners(listener -> listener.songAdded(added));
+        }
+      }
+
+      // Queue the added songs for the profile microservice
+      songOutbox.record(SongOutbox.SONG_ADDED, inserted);
+
+      Map<String, Object> result = new HashMap<String, Object>();
+      result.put("inserted", inserted);
+      result.put("errors", failed);
+
+      dataToReturn = new DbQueryStatus("Add Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(result);
+      return dataToReturn;
+
+    } catch (Exception e) {
+
+      // Return error status if failed
+      return new DbQueryStatus("Unable to add new songs", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    } finally {
+      unlock(locked);
     }
   }
 
@@ -57,15 +220,14 @@ public class SongDalImpl implements SongDal {
 
     try {
 
-      // Create new query to search by id
-      Query query = new Query();
-      query.addCriteria(Criteria.where("_id").is(songId));
-      Song found = db.findOne(query, Song.class);
+      // Search the cache first, then the database
+      Song found = findCachedSong(songId);
 
       // If song exists return info
       if (found != null) {
         dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
-        dataToReturn.setData(found.getJsonRepresentation());
+        dataToReturn.setData(found);
+        dataToReturn.setETag(found.getETag());
         return dataToReturn;
       }
 
@@ -92,15 +254,154 @@ public class SongDalImpl implements SongDal {
 
     try {
 
-      // Create new query to search by id
+      // Take the title of a cached song, otherwise only read the title and what its ETag is made
+      // of from the database
+      Song cached = songCache.get(songId);
+      if (cached != null) {
+        dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+        dataToReturn.setData(cached.getSongName());
+        dataToReturn.setETag(cached.getETag());
+        return dataToReturn;
+      }
+      Document found = favouritesWriteBehind.readFieldsWithPendingDelta(songId,
+          () -> findSongFields(songId, Projections.fields(
+              Projections.include(Song.KEY_SONG_NAME, Song.KEY_SONG_VERSION,
+                  Song.KEY_SONG_AMOUNT_FAVOURITES),
+              Projections.excludeId())));
+
+      // If song exists return its title
+      if (found != null) {
+        dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+        dataToReturn.setData(found.getString(Song.KEY_SONG_NAME));
+        dataToReturn.setETag(eTag(found));
+        return dataToReturn;
+      }
+
+      // If song does not exist return not found
+      return new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+
+    } catch (Exception e) {
+
+      // Return error status if failed
+      return new DbQueryStatus("Could Not retrieve song", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
+
+  /**
+   * Finds a song by the given ID, reading from the cache when possible and caching it otherwise
+   * 
+   * @param SongId: The id of the song to search for
+   * @return Song: The found song, or null if it does not exist
+   */
+  private Song findCachedSong(String songId) {
+    Song found = songCache.get(songId);
+    if (found == null) {
+
+      // Create new query to search by id, adding any favourites not yet written to the database
       Query query = new Query();
       query.addCriteria(Criteria.where("_id").is(songId));
-      Song found = db.findOne(query, Song.class);
+      found =
+          favouritesWriteBehind.readWithPendingDelta(songId, () -> db.findOne(query, Song.class));
 
-      // If song exists return info
+      // An update may have cached a newer count while the song was read, so only fill a miss
       if (found != null) {
+        found = songCache.putIfAbsent(found);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Finds the songs in the database with the given IDs and returns their titles in a single query
+   * 
+   * @param songIds: The ids of the songs to search for
+   * @return DbQueryStatus: The result of the search with a map of song id to title and status. Ids
+   *         that do not exist are left out of the map
+   */
+  @Override
+  public DbQueryStatus getSongTitlesByIds(List<String> songIds) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    try {
+
+      // Take the titles of cached songs and only query the database for the rest
+      Map<String, String> titles = new HashMap<String, String>();
+      List<String> uncachedIds = new ArrayList<String>();
+      for (String songId : songIds) {
+        Song cached = songCache.get(songId);
+        if (cached != null) {
+          titles.put(songId, cached.getSongName());
+        } else {
+          uncachedIds.add(songId);
+        }
+      }
+
+      if (!uncachedIds.isEmpty()) {
+
+        // Search by all ids at once, only reading back the id and song name
+        List<ObjectId> objectIds = new ArrayList<ObjectId>();
+        for (String songId : uncachedIds) {
+          if (ObjectId.isValid(songId)) {
+            objectIds.add(new ObjectId(songId));
+          }
+        }
+
+        // Map each found song to its title
+        for (Document found : songs().find(Filters.in("_id", objectIds))
+            .projection(Projections.include(Song.KEY_SONG_NAME))) {
+          titles.put(found.getObjectId("_id").toHexString(), found.getString(Song.KEY_SONG_NAME));
+        }
+      }
+
+      dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(titles);
+      return dataToReturn;
+
+    } catch (Exception e) {
+
+      // Return error status if failed
+      return new DbQueryStatus("Could Not retrieve songs", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
+
+  /**
+   * Finds a song by the given ID and returns its favourites count
+   * 
+   * @param SongId: The id of the song to search for
+   * @return DbQueryStatus: The result of the search with the favourites count and status
+   */
+  @Override
+  public DbQueryStatus getSongFavouritesCountById(String songId) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    try {
+
+      // Take the count of a cached song, otherwise only read the count from the database and add
+      // any favourites not yet written to it
+      Long count;
+      Song cached = songCache.get(songId);
+      if (cached != null) {
+        count = cached.getSongAmountFavourites();
+      } else {
+        count = favouritesWriteBehind.readFavouritesWithPendingDelta(songId, () -> {
+          Document found = findSongFields(songId, Projections.fields(
+              Projections.include(Song.KEY_SONG_AMOUNT_FAVOURITES), Projections.excludeId()));
+          if (found == null) {
+            return null;
+          }
+          Number stored = found.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+          return stored == null ? 0L : stored.longValue();
+        });
+      }
+
+      // If song exists return its count
+      if (count != null) {
         dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
-        dataToReturn.setData(found.getSongName());
+        dataToReturn.setData(count);
         return dataToReturn;
       }
 
@@ -114,6 +415,184 @@ public class SongDalImpl implements SongDal {
     }
   }
 
+  /**
+   * Reads the songs after the given ID in ID order straight from a database cursor, handing each
+   * one to the given action as it arrives. Paging by ID instead of skipping keeps every page as
+   * fast as the first
+   * 
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @param limit: The max number of songs to read
+   * @param action: Called with each song document, including any favourites not yet written
+   * @return DbQueryStatus: The result of the search with the id of the last song read if there
+   *         may be more songs after it, and status
+   */
+  @Override
+  public DbQueryStatus forEachSongAfter(String afterSongId, int limit, Consumer<Document> action) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    if (afterSongId != null && !ObjectId.isValid(afterSongId)) {
+      return new DbQueryStatus("Invalid continuation token", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+
+    try {
+
+      // Start after the given id, or at the start of the collection
+      Bson filter = afterSongId == null ? new Document()
+          : Filters.gt("_id", new ObjectId(afterSongId));
+
+      String lastId = null;
+      int read = 0;
+      try (MongoCursor<Document> cursor = songs().find(filter)
+          .projection(Projections.exclude(Song.KEY_FAVOURITES_REQUESTS))
+          .sort(Sorts.ascending("_id")).limit(limit)
+          .batchSize(Math.min(limit, CURSOR_BATCH_SIZE)).iterator()) {
+        while (cursor.hasNext()) {
+          Document found = cursor.next();
+          lastId = found.getObjectId("_id").toHexString();
+
+          long delta = favouritesWriteBehind.getPendingDelta(lastId);
+          if (delta != 0) {
+            Number stored = found.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+            long count = (stored == null ? 0 : stored.longValue()) + delta;
+            found.put(Song.KEY_SONG_AMOUNT_FAVOURITES, count);
+          }
+
+          action.accept(found);
+          read++;
+        }
+      }
+
+      // Only hand out a continuation when the page was full
+      dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(read == limit ? lastId : null);
+      return dataToReturn;
+
+    } catch (Exception e) {
+
+      // Return error status if failed
+      return new DbQueryStatus("Could Not retrieve songs", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
+
+  /**
+   * Finds the songs of an artist in ID order, one page at a time, reading them through the artist
+   * index
+   * 
+   * @param artist: The full name of the artist
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @param limit: The max number of songs to read
+   * @return DbQueryStatus: The result of the search with the songs and the id to continue after if
+   *         there may be more songs, and status
+   */
+  @Override
+  public DbQueryStatus findSongsByArtist(String artist, String afterSongId, int limit) {
+    return findSongsPage(Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, artist),
+        SongIndexes.BY_ARTIST, afterSongId, limit);
+  }
+
+  /**
+   * Finds the songs of an album in ID order, one page at a time, reading them through the album
+   * index, or the artist and album index if the artist is given
+   * 
+   * @param album: The name of the album
+   * @param artist: The full name of the artist of the album, or null for albums of any artist
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @param limit: The max number of songs to read
+   * @return DbQueryStatus: The result of the search with the songs and the id to continue after if
+   *         there may be more songs, and status
+   */
+  @Override
+  public DbQueryStatus findSongsByAlbum(String album, String artist, String afterSongId,
+      int limit) {
+    if (artist == null) {
+      return findSongsPage(Filters.eq(Song.KEY_SONG_ALBUM, album), SongIndexes.BY_ALBUM,
+          afterSongId, limit);
+    }
+    return findSongsPage(Filters.and(Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, artist),
+        Filters.eq(Song.KEY_SONG_ALBUM, album)), SongIndexes.BY_ARTIST_AND_ALBUM, afterSongId,
+        limit);
+  }
+
+  /**
+   * Builds the query of a page of songs matching a filter, in ID order after the given ID
+   * 
+   * @param filter: The songs to find
+   * @param afterSongId: The id to start after, or null to start from the first song
+   * @return Bson: The filter of the page
+   */
+  static Bson pageFilter(Bson filter, String afterSongId) {
+    return afterSongId == null ? filter
+        : Filters.and(filter, Filters.gt("_id", new ObjectId(afterSongId)));
+  }
+
+  // Reads a page of songs matching a filter through the given index
+  private DbQueryStatus findSongsPage(Bson filter, Document index, String afterSongId,
+      int limit) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    if (afterSongId != null && !ObjectId.isValid(afterSongId)) {
+      return new DbQueryStatus("Invalid continuation token", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+
+    try {
+
+      // Hint the index once it exists, so the query fails rather than scanning the collection
+      // if it goes missing
+      List<Song> page = new ArrayList<Song>();
+      for (Document found : songs().find(pageFilter(filter, afterSongId))
+          .sort(Sorts.ascending("_id")).hint(songIndexes.hint(index)).limit(limit)) {
+        Song song = db.getConverter().read(Song.class, found);
+        song.setSongAmountFavourites(song.getSongAmountFavourites()
+            + favouritesWriteBehind.getPendingDelta(song.getId()));
+        page.add(song);
+      }
+
+      // Only hand out a continuation when the page was full
+      Map<String, Object> data = new HashMap<String, Object>();
+      data.put("songs", page);
+      data.put("next", page.size() == limit ? page.get(page.size() - 1).getId() : null);
+      dataToReturn = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(data);
+      return dataToReturn;
+
+    } catch (Exception e) {
+
+      // Return error status if failed
+      return new DbQueryStatus("Could Not retrieve songs", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+  }
+
+  // The ETag of a song read as fields, the same as Song.getETag
+  static String eTag(Document fields) {
+    Number version = fields.get(Song.KEY_SONG_VERSION, Number.class);
+    Number favourites = fields.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+    return Song.eTag(version == null ? 0 : version.longValue(),
+        favourites == null ? 0 : favourites.longValue());
+  }
+
+  /**
+   * Reads only the given fields of a song straight from the songs collection, without mapping it
+   * to a Song
+   * 
+   * @param SongId: The id of the song to search for
+   * @param projection: The fields to read
+   * @return Document: The fields of the song, or null if it does not exist
+   */
+  private Document findSongFields(String songId, Bson projection) {
+    if (!ObjectId.isValid(songId)) {
+      return null;
+    }
+    return songs().find(Filters.eq("_id", new ObjectId(songId))).projection(projection).first();
+  }
+
+  private MongoCollection<Document> songs() {
+    return db.getCollection(db.getCollectionName(Song.class));
+  }
+
   /**
    * Finds a song in the database by the given ID and deletes it
    * 
@@ -122,15 +601,22 @@ public class SongDalImpl implements SongDal {
    */
   @Override
   public DbQueryStatus deleteSongById(String songId) {
+    List<ReentrantLock> locked = lockSongs(Collections.singletonList(songId));
     try {
 
       // Create new query to search by id
       Query query = new Query();
       query.addCriteria(Criteria.where("_id").is(songId));
       Song found = db.findAndRemove(query, Song.class);
+      long pendingDelta = favouritesWriteBehind.getPendingDelta(songId);
+      songCache.remove(songId);
+      favouritesWriteBehind.discard(songId);
 
-      // If song delete it
+      // If song delete it and queue the delete for the profile microservice
       if (found != null) {
+        found.setSongAmountFavourites(found.getSongAmountFavourites() + pendingDelta);
+        songOutbox.record(SongOutbox.SONG_DELETED, Collections.singletonList(songId));
+        notifyListeners(listener -> listener.songDeleted(found));
         return new DbQueryStatus("Delete Successful", DbQueryExecResult.QUERY_OK);
       }
 
@@ -141,44 +627,72 @@ public class SongDalImpl implements SongDal {
 
       // Return error status if failed
       return new DbQueryStatus("Could Not delete song", DbQueryExecResult.QUERY_ERROR_GENERIC);
+    } finally {
+      unlock(locked);
     }
   }
 
   /**
-   * Finds a song in the database by the given ID and updates its favourites
+   * Finds a song in the database by the given ID and atomically updates its favourites
    * 
    * @param SongId: The id of the song to search for
    * @param shouldDecrement: true/false depending on whether this should increment/decrement the
    *        likes
-   * @return DbQueryStatus: The result of the search with the returned data and status
+   * @param requestId: The id of the update, which is only applied once, or null
+   * @return DbQueryStatus: The result of the update with the new favourites count and status
    */
   @Override
-  public DbQueryStatus updateSongFavouritesCount(String songId, boolean shouldDecrement) {
+  public DbQueryStatus updateSongFavouritesCount(String songId, boolean shouldDecrement,
+      String requestId) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
     try {
 
-      // Check whether value shouldbe incremented or decremented
+      // Check whether value should be incremented or decremented
       long toAdd = 1;
       if (shouldDecrement) {
         toAdd = -1;
       }
 
-      // Create new query to search by id
-      Query query = new Query();
-      query.addCriteria(Criteria.where("_id").is(songId));
-      Song found = db.findOne(query, Song.class);
+      // Buffer the change in memory instead if write-behind is enabled
+      if (favouritesWriteBehind.isEnabled()) {
+        return recordSongFavouritesCount(songId, toAdd, requestId);
+      }
 
-      // If song exists, update favourites count
-      if (found != null) {
-        toAdd = toAdd + found.getSongAmountFavourites();
+      // Apply the change in a single atomic update and read back the updated song
+      Query query = new Query(favouritesCriteria(songId, shouldDecrement, requestId));
+      Update update = favouritesUpdate(toAdd, requestId);
+      Song updated = db.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+          Song.class);
+
+      // If song was updated, return the new favourites count. Concurrent updates can finish in
+      // either order, so only cache the song if no newer version of it is cached
+      if (updated != null) {
+        long delta = toAdd;
+        songCache.putIfNewer(updated);
+        notifyListeners(listener -> listener.songFavouritesUpdated(updated, delta));
+        dataToReturn = new DbQueryStatus("Update Successful", DbQueryExecResult.QUERY_OK);
+        dataToReturn.setData(updated.getSongAmountFavourites());
+        return dataToReturn;
+      }
 
-        // Ensure add is valid
-        if (toAdd >= 0) {
-          found.setSongAmountFavourites(toAdd);
-          db.findAndReplace(query, found);
-          return new DbQueryStatus("Update Successful", DbQueryExecResult.QUERY_OK);
+      // Return the current count if the update was applied before
+      if (requestId != null) {
+        Query applied = new Query(
+            Criteria.where("_id").is(songId).and(Song.KEY_FAVOURITES_REQUESTS).is(requestId));
+        applied.fields().include(Song.KEY_SONG_AMOUNT_FAVOURITES);
+        Song found = db.findOne(applied, Song.class);
+        if (found != null) {
+          dataToReturn = new DbQueryStatus("Update Already Applied", DbQueryExecResult.QUERY_OK);
+          dataToReturn.setData(found.getSongAmountFavourites());
+          return dataToReturn;
         }
+      }
 
-        // Return error if negative likes
+      // Return error if the song exists but has no favourites left
+      if (shouldDecrement && db.exists(new Query(Criteria.where("_id").is(songId)), Song.class)) {
         return new DbQueryStatus("Cannot have negative favourites",
             DbQueryExecResult.QUERY_ERROR_GENERIC);
       }
@@ -193,4 +707,97 @@ public class SongDalImpl implements SongDal {
           DbQueryExecResult.QUERY_ERROR_GENERIC);
     }
   }
+
+  // Matches the song unless the update was already applied to it, or it has no favourite left to
+  // remove when decrementing so the count can never go negative
+  static Criteria favouritesCriteria(String songId, boolean shouldDecrement, String requestId) {
+    Criteria criteria = Criteria.where("_id").is(songId);
+    if (shouldDecrement) {
+      criteria = criteria.and(Song.KEY_SONG_AMOUNT_FAVOURITES).gte(1);
+    }
+    if (requestId != null) {
+      criteria = criteria.and(Song.KEY_FAVOURITES_REQUESTS).ne(requestId);
+    }
+    return criteria;
+  }
+
+  // Adds to the favourites count, and remembers the id of the update among the latest ones
+  static Update favouritesUpdate(long toAdd, String requestId) {
+    Update update =
+        new Update().inc(Song.KEY_SONG_AMOUNT_FAVOURITES, toAdd).inc(Song.KEY_SONG_VERSION, 1);
+    if (requestId != null) {
+      update.push(Song.KEY_FAVOURITES_REQUESTS).slice(-FAVOURITES_REQUESTS_KEPT).each(requestId);
+    }
+    return update;
+  }
+
+  /**
+   * Updates the favourites of a cached song and records the change to be written to the database
+   * later by the write-behind buffer
+   * 
+   * @param SongId: The id of the song to update
+   * @param toAdd: The amount to add to the favourites count
+   * @param requestId: The id of the update, which is only applied once, or null
+   * @return DbQueryStatus: The result of the update with the new favourites count and status
+   */
+  private DbQueryStatus recordSongFavouritesCount(String songId, long toAdd, String requestId) {
+
+    // Create new DbQueryStatus
+    DbQueryStatus dataToReturn;
+
+    // Make sure the song exists and is cached with its up to date favourites count
+    Song found = findCachedSong(songId);
+    if (found == null) {
+      return new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+    }
+
+    // Update the cached count and record the change together so concurrent updates are not lost.
+    // The cache skips the update if the song has been deleted since it was read
+    Song[] updated = {null};
+    boolean[] negative = {false};
+    Long[] applied = {null};
+    songCache.compute(found.getId(), (id, cached) -> {
+      Song current = cached != null ? cached : found;
+      if (requestId != null && favouritesWriteBehind.isApplied(requestId)) {
+        applied[0] = current.getSongAmountFavourites();
+        return cached;
+      }
+      long count = current.getSongAmountFavourites() + toAdd;
+      if (count < 0) {
+        negative[0] = true;
+        return cached;
+      }
+
+      if (requestId != null) {
+        favouritesWriteBehind.markApplied(requestId);
+      }
+      favouritesWriteBehind.record(id, toAdd);
+
+      updated[0] = new Song(current.getSongName(), current.getSongArtistFullName(),
+          current.getSongAlbum());
+      updated[0].setId(current._id);
+      updated[0].setSongAmountFavourites(count);
+      updated[0].setVersion(current.getVersion());
+      return updated[0];
+    });
+
+    // Return error if negative likes
+    if (negative[0]) {
+      return new DbQueryStatus("Cannot have negative favourites",
+          DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+    if (applied[0] != null) {
+      dataToReturn = new DbQueryStatus("Update Already Applied", DbQueryExecResult.QUERY_OK);
+      dataToReturn.setData(applied[0]);
+      return dataToReturn;
+    }
+    if (updated[0] == null) {
+      return new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+    }
+    notifyListeners(listener -> listener.songFavouritesUpdated(updated[0], toAdd));
+
+    dataToReturn = new DbQueryStatus("Update Successful", DbQueryExecResult.QUERY_OK);
+    dataToReturn.setData(updated[0].getSongAmountFavourites());
+    return dataToReturn;
+  }
 }
@@ -0,0 +1,145 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexModel;
+
+/**
+ * Secondary indexes of the songs collection, created at startup if they do not exist yet. The
+ * artist and album indexes end with _id so that pages of the songs of an artist or album can be
+ * read in _id order straight from the index, without sorting in memory.
+ *
+ * Lookups that rely on an index pass its keys as a hint once the indexes are ready, so they fail
+ * instead of scanning the whole collection if the index goes missing. Until then they run without
+ * a hint, and the health endpoint reports the service out of service. Creation is retried until it
+ * succeeds.
+ */
+@Component
+public class SongIndexes implements HealthIndicator {
+
+  private static final Logger log = LoggerFactory.getLogger(SongIndexes.class);
+
+  // Failures to create the indexes are logged at most once every this many ms
+  private static final long WARN_INTERVAL_MS = 5000;
+
+  public static final Document BY_ARTIST =
+      new Document(Song.KEY_SONG_ARTIST_FULL_NAME, 1).append("_id", 1);
+  public static final Document BY_ALBUM = new Document(Song.KEY_SONG_ALBUM, 1).append("_id", 1);
+  public static final Document BY_ARTIST_AND_ALBUM = new Document(Song.KEY_SONG_ARTIST_FULL_NAME, 1)
+      .append(Song.KEY_SONG_ALBUM, 1).append("_id", 1);
+  public static final Document BY_FAVOURITES = new Document(Song.KEY_SONG_AMOUNT_FAVOURITES, -1);
+
+  private final MongoTemplate db;
+  private final long retryMs;
+
+  private volatile boolean ready;
+  private volatile String lastError;
+  private volatile long lastWarnedAt;
+
+  @Autowired
+  public SongIndexes(MongoTemplate mongoTemplate,
+      @Value("${song.indexes.retryMs:5000}") long retryMs) {
+    this.db = mongoTemplate;
+    this.retryMs = retryMs;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void createOnStartup() {
+    Thread thread = new Thread(() -> {
+      try {
+        while (!createIndexes()) {
+          Thread.sleep(retryMs);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "song-index-creation");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Gets the keys of every secondary index of the songs collection
+   *
+   * @return List: The keys of each index
+   */
+  public static List<Document> getIndexKeys() {
+    return Arrays.asList(BY_ARTIST, BY_ALBUM, BY_ARTIST_AND_ALBUM, BY_FAVOURITES);
+  }
+
+  /**
+   * Creates every secondary index of the songs collection that does not exist yet
+   *
+   * @return boolean: Whether the indexes were created
+   */
+  public boolean createIndexes() {
+    try {
+      createIndexes(db.getCollection(db.getCollectionName(Song.class)));
+      ready = true;
+      return true;
+    } catch (Exception e) {
+      long now = System.currentTimeMillis();
+      if (now - lastWarnedAt >= WARN_INTERVAL_MS) {
+        lastWarnedAt = now;
+        log.warn("Could not create song indexes, retrying", e);
+      }
+      lastError = e.getMessage();
+      return false;
+    }
+  }
+
+  /**
+   * Gets whether every secondary index exists, so lookups can hint them
+   *
+   * @return boolean: Whether the indexes are ready
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Gets the index to hint for a lookup, or null to let MongoDB choose while the indexes are not
+   * ready
+   *
+   * @param keys: The keys of the index the lookup relies on
+   * @return Document: The hint, or null
+   */
+  public Document hint(Document keys) {
+    return ready ? keys : null;
+  }
+
+  @Override
+  public Health health() {
+    if (ready) {
+      return Health.up().build();
+    }
+    Health.Builder health = Health.outOfService().withDetail("songIndexes", "Not created yet");
+    return lastError == null ? health.build() : health.withDetail("lastError", lastError).build();
+  }
+
+  /**
+   * Creates every secondary index of the given songs collection that does not exist yet
+   *
+   * @param songs: The songs collection
+   */
+  public static void createIndexes(MongoCollection<Document> songs) {
+    List<IndexModel> indexes = new ArrayList<IndexModel>();
+    for (Document keys : getIndexKeys()) {
+      indexes.add(new IndexModel(keys));
+    }
+    songs.createIndexes(indexes);
+  }
+}
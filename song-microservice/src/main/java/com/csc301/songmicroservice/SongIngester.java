@@ -0,0 +1,181 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.DbQueryExecResult;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Loads songs in bulk from a stream of JSON songs, either a JSON array or newline delimited JSON
+ * objects. The stream is parsed one song at a time and the songs are added in batches, so the
+ * whole body is never held in memory.
+ */
+@Component
+public class SongIngester {
+
+  private final SongDal songDal;
+  private final int batchSize;
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Autowired
+  public SongIngester(SongDal songDal, @Value("${song.ingest.batchSize:1000}") int batchSize) {
+    this.songDal = songDal;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Adds every song in the given stream to the database and to the profile microservice
+   *
+   * @param in: The stream of songs to add
+   * @return DbQueryStatus: OK with a report of the totals, throughput and every batch if the whole
+   *         stream was read, ERROR_GENERIC with the report so far if the stream is malformed
+   */
+  public DbQueryStatus ingest(InputStream in) throws IOException {
+    long start = System.nanoTime();
+    List<Map<String, Object>> batches = new ArrayList<Map<String, Object>>();
+    Map<String, Object> report = new HashMap<String, Object>();
+    report.put("batches", batches);
+
+    List<Song> batch = new ArrayList<Song>();
+    List<String> rejected = new ArrayList<String>();
+    long received = 0;
+    DbQueryStatus dataToReturn;
+
+    try (JsonParser parser = mapper.getFactory().createParser(in)) {
+
+      // Songs are either the elements of a single array or a sequence of top level objects
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        token = parser.nextToken();
+      }
+
+      while (token != null && token != JsonToken.END_ARRAY) {
+        if (token != JsonToken.START_OBJECT) {
+          throw new JsonParseException(parser, "Expected a song object");
+        }
+
+        JsonNode node = mapper.readTree(parser);
+        received++;
+        Song song = toSong(node);
+        if (song != null) {
+          batch.add(song);
+        } else {
+          rejected.add("Song #" + received + " is missing parameters or has an invalid id");
+        }
+
+        if (batch.size() + rejected.size() >= batchSize) {
+          batches.add(addBatch(batches.size(), batch, rejected));
+          batch = new ArrayList<Song>();
+          rejected = new ArrayList<String>();
+        }
+        token = parser.nextToken();
+      }
+
+      if (!batch.isEmpty() || !rejected.isEmpty()) {
+        batches.add(addBatch(batches.size(), batch, rejected));
+      }
+      dataToReturn = new DbQueryStatus("Ingestion Complete", DbQueryExecResult.QUERY_OK);
+
+    } catch (JsonProcessingException e) {
+
+      // Keep the batches already added and report where the stream went wrong
+      if (!batch.isEmpty() || !rejected.isEmpty()) {
+        batches.add(addBatch(batches.size(), batch, rejected));
+      }
+      dataToReturn = new DbQueryStatus(
+          "Ingestion stopped, malformed JSON at line " + e.getLocation().getLineNr() + ": "
+              + e.getOriginalMessage(),
+          DbQueryExecResult.QUERY_ERROR_GENERIC);
+    }
+
+    // Sum up the batches
+    long inserted = 0;
+    long failed = 0;
+    for (Map<String, Object> batchReport : batches) {
+      inserted += (Integer) batchReport.get("inserted");
+      failed += (Integer) batchReport.get("failed");
+    }
+    long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+    report.put("received", received);
+    report.put("inserted", inserted);
+    report.put("failed", failed);
+    report.put("elapsedMs", elapsedMs);
+    report.put("songsPerSecond", inserted * 1000 / elapsedMs);
+    dataToReturn.setData(report);
+    return dataToReturn;
+  }
+
+  /**
+   * Adds a batch of songs to the database. The inserted songs reach the profile microservice
+   * through the song outbox
+   *
+   * @param index: The number of the batch in the stream
+   * @param songs: The valid songs of the batch
+   * @param rejected: The errors of the songs in the batch that could not be read
+   * @return Map: The report of the batch
+   */
+  private Map<String, Object> addBatch(int index, List<Song> songs, List<String> rejected) {
+    List<String> inserted = new ArrayList<String>();
+    List<String> errors = new ArrayList<String>(rejected);
+
+    if (!songs.isEmpty()) {
+      DbQueryStatus dbQueryStatus = songDal.addSongs(songs);
+      if (dbQueryStatus.getdbQueryExecResult().equals(DbQueryExecResult.QUERY_OK)) {
+        Map<String, List<String>> result = (Map<String, List<String>>) dbQueryStatus.getData();
+        inserted = result.get("inserted");
+        errors.addAll(result.get("errors"));
+      } else {
+        errors.add(dbQueryStatus.getMessage());
+      }
+    }
+
+    Map<String, Object> batchReport = new HashMap<String, Object>();
+    batchReport.put("batch", index);
+    batchReport.put("inserted", inserted.size());
+    batchReport.put("failed", songs.size() - inserted.size() + rejected.size());
+    batchReport.put("errors", errors);
+    return batchReport;
+  }
+
+  /**
+   * Reads a song from its JSON object, keeping its id if it has one
+   *
+   * @param node: The JSON object of the song
+   * @return Song: The song, or null if a parameter is missing or the id is invalid
+   */
+  private Song toSong(JsonNode node) {
+    if (!node.hasNonNull(Song.KEY_SONG_NAME) || !node.hasNonNull(Song.KEY_SONG_ARTIST_FULL_NAME)
+        || !node.hasNonNull(Song.KEY_SONG_ALBUM)) {
+      return null;
+    }
+
+    // Ids can be given as "id", "_id" or extended JSON {"_id": {"$oid": ...}}
+    JsonNode id = node.has("_id") ? node.get("_id") : node.get("id");
+    if (id != null && id.isObject()) {
+      id = id.get("$oid");
+    }
+    if (id != null && !(id.isTextual() && ObjectId.isValid(id.asText()))) {
+      return null;
+    }
+
+    Song song = new Song(node.get(Song.KEY_SONG_NAME).asText(),
+        node.get(Song.KEY_SONG_ARTIST_FULL_NAME).asText(), node.get(Song.KEY_SONG_ALBUM).asText());
+    song.setId(id != null ? new ObjectId(id.asText()) : new ObjectId());
+    song.setSongAmountFavourites(node.path(Song.KEY_SONG_AMOUNT_FAVOURITES).asLong(0));
+    return song;
+  }
+}
@@ -0,0 +1,315 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import com.mongodb.client.model.Projections;
+
+/**
+ * In-memory ranking of every song by favourites count, most favourited first. The ranking is a
+ * treap where every node knows the size of its subtree, so adding, removing or moving a song and
+ * finding the rank of a song all take O(log n).
+ *
+ * The ranking is built from the database at startup and kept up to date from SongDalImpl.
+ */
+@Component
+public class SongLeaderboard implements SongChangeListener {
+
+  private static final Logger log = LoggerFactory.getLogger(SongLeaderboard.class);
+
+  private final MongoTemplate db;
+  private final FavouritesWriteBehind favouritesWriteBehind;
+
+  private Ranking ranking = new Ranking();
+
+  // Ranking being built by a rebuild, which also receives every change made while it is built
+  private Ranking rebuilding;
+
+  @Autowired
+  public SongLeaderboard(MongoTemplate mongoTemplate,
+      FavouritesWriteBehind favouritesWriteBehind) {
+    this.db = mongoTemplate;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildOnStartup() {
+    Thread thread = new Thread(this::rebuild, "song-leaderboard-rebuild");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Rebuilds the ranking from every song in the database, swapping it in once complete
+   */
+  public void rebuild() {
+    Ranking rebuilt = new Ranking();
+    synchronized (this) {
+      rebuilding = rebuilt;
+    }
+
+    try {
+      for (Document found : db.getCollection(db.getCollectionName(Song.class)).find()
+          .projection(Projections.include(Song.KEY_SONG_NAME, Song.KEY_SONG_AMOUNT_FAVOURITES))) {
+        String id = found.getObjectId("_id").toHexString();
+        Number favourites = found.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+        long count = (favourites == null ? 0 : favourites.longValue())
+            + favouritesWriteBehind.getPendingDelta(id);
+
+        // Songs changed since the rebuild started are already up to date
+        synchronized (this) {
+          if (!rebuilt.contains(id) && !rebuilt.deleted.contains(id)) {
+            rebuilt.put(id, found.getString(Song.KEY_SONG_NAME), count);
+          }
+        }
+      }
+
+      synchronized (this) {
+        ranking = rebuilt;
+        rebuilding = null;
+      }
+    } catch (Exception e) {
+      log.warn("Could not rebuild the song leaderboard", e);
+      synchronized (this) {
+        rebuilding = null;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void songAdded(Song song) {
+    ranking.put(song.getId(), song.getSongName(), song.getSongAmountFavourites());
+    if (rebuilding != null) {
+      rebuilding.put(song.getId(), song.getSongName(), song.getSongAmountFavourites());
+    }
+  }
+
+  @Override
+  public synchronized void songDeleted(Song song) {
+    ranking.remove(song.getId());
+    if (rebuilding != null) {
+      rebuilding.remove(song.getId());
+      rebuilding.deleted.add(song.getId());
+    }
+  }
+
+  // Notifications of concurrent updates can arrive in any order, and after the song is deleted,
+  // so only the delta is applied, and only to songs that are ranked
+  @Override
+  public synchronized void songFavouritesUpdated(Song song, long delta) {
+    ranking.add(song.getId(), delta);
+    if (rebuilding != null) {
+      rebuilding.add(song.getId(), delta);
+    }
+  }
+
+  /**
+   * Gets the most favourited songs
+   *
+   * @param limit: The max number of songs to return
+   * @return List: The songs with their rank, most favourited first
+   */
+  public synchronized List<Map<String, Object>> getTop(int limit) {
+    List<Map<String, Object>> top = new ArrayList<Map<String, Object>>();
+
+    // Walk the tree in order, stopping after the limit
+    Deque<Node> stack = new ArrayDeque<Node>();
+    Node node = ranking.root;
+    while ((node != null || !stack.isEmpty()) && top.size() < limit) {
+      while (node != null) {
+        stack.push(node);
+        node = node.left;
+      }
+      node = stack.pop();
+      top.add(node.toJson(top.size() + 1));
+      node = node.right;
+    }
+    return top;
+  }
+
+  /**
+   * Gets the rank of a song
+   *
+   * @param songId: The id of the song
+   * @return Map: The song with its rank, or null if it is not ranked
+   */
+  public synchronized Map<String, Object> getRank(String songId) {
+    Node node = ranking.nodes.get(songId);
+    return node == null ? null : node.toJson(ranking.rank(node));
+  }
+
+  // A song in the ranking, ordered by favourites count then id
+  private static final class Node {
+    private final String id;
+    private final String songName;
+    private final long songAmountFavourites;
+    private final int priority;
+    private Node left;
+    private Node right;
+    private int size = 1;
+
+    private Node(String id, String songName, long songAmountFavourites, int priority) {
+      this.id = id;
+      this.songName = songName;
+      this.songAmountFavourites = songAmountFavourites;
+      this.priority = priority;
+    }
+
+    // Negative if this song ranks above the other
+    private int compareTo(Node other) {
+      int byFavourites = Long.compare(other.songAmountFavourites, songAmountFavourites);
+      return byFavourites != 0 ? byFavourites : id.compareTo(other.id);
+    }
+
+    private Map<String, Object> toJson(long rank) {
+      Map<String, Object> json = new HashMap<String, Object>();
+      json.put("rank", rank);
+      json.put("id", id);
+      json.put(Song.KEY_SONG_NAME, songName);
+      json.put(Song.KEY_SONG_AMOUNT_FAVOURITES, String.valueOf(songAmountFavourites));
+      return json;
+    }
+  }
+
+  // Treap of songs with the node of every song by id
+  private static final class Ranking {
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+    private final Random random = new Random();
+    private Node root;
+
+    // Songs deleted while this ranking is being rebuilt, which the rebuild must not add back
+    private final Set<String> deleted = new HashSet<String>();
+
+    private boolean contains(String id) {
+      return nodes.containsKey(id);
+    }
+
+    private void put(String id, String songName, long songAmountFavourites) {
+      remove(id);
+      Node node = new Node(id, songName, songAmountFavourites, random.nextInt());
+      nodes.put(id, node);
+      root = insert(root, node);
+    }
+
+    // Adds to the favourites count of a ranked song
+    private void add(String id, long delta) {
+      Node node = nodes.get(id);
+      if (node != null) {
+        put(id, node.songName, node.songAmountFavourites + delta);
+      }
+    }
+
+    private void remove(String id) {
+      Node node = nodes.remove(id);
+      if (node != null) {
+        root = delete(root, node);
+      }
+    }
+
+    // Number of songs ranked above the node, plus one
+    private long rank(Node node) {
+      long above = 0;
+      Node current = root;
+      while (current != null) {
+        int compared = node.compareTo(current);
+        if (compared == 0) {
+          return above + size(current.left) + 1;
+        } else if (compared < 0) {
+          current = current.left;
+        } else {
+          above += size(current.left) + 1;
+          current = current.right;
+        }
+      }
+      return above + 1;
+    }
+
+    private static Node insert(Node tree, Node node) {
+      if (tree == null) {
+        return node;
+      }
+      if (node.priority > tree.priority) {
+        Node[] split = split(tree, node);
+        node.left = split[0];
+        node.right = split[1];
+        return update(node);
+      }
+      if (node.compareTo(tree) < 0) {
+        tree.left = insert(tree.left, node);
+      } else {
+        tree.right = insert(tree.right, node);
+      }
+      return update(tree);
+    }
+
+    private static Node delete(Node tree, Node node) {
+      if (tree == null) {
+        return null;
+      }
+      int compared = node.compareTo(tree);
+      if (compared == 0) {
+        return merge(tree.left, tree.right);
+      }
+      if (compared < 0) {
+        tree.left = delete(tree.left, node);
+      } else {
+        tree.right = delete(tree.right, node);
+      }
+      return update(tree);
+    }
+
+    // Splits the tree into the songs ranked above the node and the rest
+    private static Node[] split(Node tree, Node node) {
+      if (tree == null) {
+        return new Node[] {null, null};
+      }
+      if (tree.compareTo(node) < 0) {
+        Node[] split = split(tree.right, node);
+        tree.right = split[0];
+        return new Node[] {update(tree), split[1]};
+      }
+      Node[] split = split(tree.left, node);
+      tree.left = split[1];
+      return new Node[] {split[0], update(tree)};
+    }
+
+    // Joins two trees where every song in the first ranks above every song in the second
+    private static Node merge(Node above, Node below) {
+      if (above == null) {
+        return below;
+      }
+      if (below == null) {
+        return above;
+      }
+      if (above.priority > below.priority) {
+        above.right = merge(above.right, below);
+        return update(above);
+      }
+      below.left = merge(above, below.left);
+      return update(below);
+    }
+
+    private static int size(Node node) {
+      return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+      node.size = size(node.left) + size(node.right) + 1;
+      return node;
+    }
+  }
+}
@@ -2,8 +2,12 @@ package com.csc301.songmicroservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import com.csc301.interservice.InterServiceClient;
+import com.csc301.interservice.TracingConfig;
 
 @SpringBootApplication
+@Import({InterServiceClient.class, TracingConfig.class})
 public class SongMicroserviceApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,290 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import com.csc301.interservice.InterServiceClient;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Outbox of song additions and deletions that still have to reach the profile microservice. Each
+ * change is stored as an event in the songOutbox collection right after the song is written, and
+ * a background dispatcher delivers the events in the order they were recorded. Consecutive events
+ * of the same type are sent as one batch call, and failed calls are retried with exponential
+ * backoff, never skipping ahead of an undelivered event. Both profile calls are idempotent, so an
+ * event delivered twice after a crash does no harm.
+ *
+ * Recording never fails the song write it follows. Events that cannot be stored are kept in memory
+ * and stored by the dispatcher, which delivers nothing until they are, so they keep their place in
+ * the order. Events still in memory are lost if the service stops before they are stored.
+ */
+@Component
+public class SongOutbox {
+
+  private static final Logger log = LoggerFactory.getLogger(SongOutbox.class);
+
+  public static final String COLLECTION = "songOutbox";
+  public static final String SONG_ADDED = "songAdded";
+  public static final String SONG_DELETED = "songDeleted";
+
+  public static final String KEY_TYPE = "type";
+  public static final String KEY_SONG_ID = "songId";
+  public static final String KEY_CREATED_AT = "createdAt";
+
+  private final MongoTemplate db;
+  private final InterServiceClient interServiceClient;
+  private final long pollIntervalMs;
+  private final int batchSize;
+  private final long maxBackoffMs;
+
+  // Events that failed to be stored when recorded, in the order they were recorded
+  private final ConcurrentLinkedQueue<Document> unrecorded = new ConcurrentLinkedQueue<Document>();
+
+  private final AtomicBoolean dispatchRequested = new AtomicBoolean();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong failedAttempts = new AtomicLong();
+  private volatile long consecutiveFailures;
+  private volatile long retryAt;
+  private volatile long lastDeliveryLagMs;
+  private volatile String lastError;
+
+  private ScheduledExecutorService dispatcher;
+
+  @Autowired
+  public SongOutbox(MongoTemplate mongoTemplate, InterServiceClient interServiceClient,
+      @Value("${song.outbox.pollIntervalMs:1000}") long pollIntervalMs,
+      @Value("${song.outbox.batchSize:500}") int batchSize,
+      @Value("${song.outbox.maxBackoffMs:30000}") long maxBackoffMs) {
+    this.db = mongoTemplate;
+    this.interServiceClient = interServiceClient;
+    this.pollIntervalMs = pollIntervalMs;
+    this.batchSize = batchSize;
+    this.maxBackoffMs = maxBackoffMs;
+  }
+
+  @PostConstruct
+  public void start() {
+    dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "song-outbox-dispatcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    dispatcher.scheduleWithFixedDelay(this::dispatch, pollIntervalMs, pollIntervalMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+
+    // Undelivered events stay in the collection for the next start
+    dispatcher.shutdownNow();
+  }
+
+  /**
+   * Creates the event of a song change, to be inserted into the outbox collection
+   *
+   * @param type: SONG_ADDED or SONG_DELETED
+   * @param songId: The id of the changed song
+   * @return Document: The event
+   */
+  public static Document event(String type, String songId) {
+    return new Document("_id", new ObjectId()).append(KEY_TYPE, type).append(KEY_SONG_ID, songId)
+        .append(KEY_CREATED_AT, new Date());
+  }
+
+  /**
+   * Stores the events of song changes and wakes the dispatcher to deliver them. Events that cannot
+   * be stored now are kept for the dispatcher to store, so the change is never lost while the
+   * service runs
+   *
+   * @param type: SONG_ADDED or SONG_DELETED
+   * @param songIds: The ids of the changed songs
+   * @return boolean: Whether the events were stored, rather than kept in memory
+   */
+  public boolean record(String type, List<String> songIds) {
+    List<Document> events = new ArrayList<Document>();
+    for (String songId : songIds) {
+      events.add(event(type, songId));
+    }
+    if (events.isEmpty()) {
+      return true;
+    }
+
+    try {
+      outbox().insertMany(events);
+    } catch (Exception e) {
+      keep(events, e);
+      return false;
+    }
+    wake();
+    return true;
+  }
+
+  /**
+   * Keeps events that failed to be stored, for the dispatcher to store before it delivers anything
+   *
+   * @param events: The events, in the order they were recorded
+   * @param e: Why they could not be stored
+   */
+  public void keep(List<Document> events, Throwable e) {
+
+    // Logged once until the dispatcher stores the kept events
+    if (unrecorded.isEmpty()) {
+      log.warn("Could not store song events, keeping them until they can be stored", e);
+    }
+    unrecorded.addAll(events);
+    lastError = e.getMessage();
+    wake();
+  }
+
+  /**
+   * Delivers stored events now instead of waiting for the next poll, unless a retry is backing off
+   */
+  public void wake() {
+    // Not started when the outbox is used on its own, as in the benchmarks
+    if (dispatcher != null && !dispatcher.isShutdown()
+        && dispatchRequested.compareAndSet(false, true)) {
+      dispatcher.execute(this::dispatch);
+    }
+  }
+
+  /**
+   * Delivers the stored events in order until the outbox is empty or a call fails. Only ever run
+   * on the dispatcher thread.
+   */
+  void dispatch() {
+    dispatchRequested.set(false);
+    try {
+      while (System.currentTimeMillis() >= retryAt) {
+        storeUnrecorded();
+        List<Document> events = outbox().find().sort(Sorts.ascending("_id")).limit(batchSize)
+            .into(new ArrayList<Document>());
+
+        // Send each run of events of the same type as one call, stopping at the first failure
+        int start = 0;
+        while (start < events.size()) {
+          String type = events.get(start).getString(KEY_TYPE);
+          int end = start;
+          List<String> songIds = new ArrayList<String>();
+          while (end < events.size() && type.equals(events.get(end).getString(KEY_TYPE))) {
+            songIds.add(events.get(end).getString(KEY_SONG_ID));
+            end++;
+          }
+
+          send(type, songIds);
+          delivered(events.subList(start, end));
+          start = end;
+        }
+
+        if (events.size() < batchSize) {
+          return;
+        }
+      }
+    } catch (Exception e) {
+
+      // Back off before trying again, doubling the wait after each failure in a row
+      failedAttempts.incrementAndGet();
+      consecutiveFailures++;
+      long backoff = Math.min(maxBackoffMs,
+          pollIntervalMs << Math.min(consecutiveFailures - 1, 20));
+      retryAt = System.currentTimeMillis() + backoff;
+      lastError = e.getMessage();
+
+      // Logged once until a delivery succeeds, then only at debug with each backoff
+      if (consecutiveFailures == 1) {
+        log.warn("Could not deliver song events, retrying in {} ms", backoff, e);
+      } else {
+        log.debug("Could not deliver song events, retrying in {} ms: {}", backoff, lastError);
+      }
+    }
+  }
+
+  // Stores the events that failed to be stored when recorded, oldest first, before any stored
+  // event is delivered. Their ids were made when they were recorded, so they sort in their place
+  private void storeUnrecorded() {
+    for (Document event = unrecorded.peek(); event != null; event = unrecorded.peek()) {
+      try {
+        outbox().insertOne(event);
+      } catch (MongoWriteException e) {
+        // Already stored by an earlier attempt whose reply was lost
+        if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+          throw e;
+        }
+      }
+      unrecorded.poll();
+    }
+  }
+
+  // Sends the ids of songs with the same change to the profile microservice in one call
+  private void send(String type, List<String> songIds) throws Exception {
+    String route = SONG_ADDED.equals(type) ? "/addSongsProfile" : "/deleteSongsFromDb";
+    Map<String, Object> responseValue = interServiceClient.put("profile", route, songIds);
+    if (!"OK".equals(responseValue.get("status"))) {
+      throw new IllegalStateException(
+          "Profile microservice returned " + responseValue.get("status") + " for " + route);
+    }
+  }
+
+  // Removes delivered events from the outbox
+  private void delivered(List<Document> events) {
+    List<ObjectId> ids = new ArrayList<ObjectId>();
+    for (Document event : events) {
+      ids.add(event.getObjectId("_id"));
+    }
+    outbox().deleteMany(Filters.in("_id", ids));
+
+    delivered.addAndGet(events.size());
+    consecutiveFailures = 0;
+    lastDeliveryLagMs =
+        System.currentTimeMillis() - events.get(0).getDate(KEY_CREATED_AT).getTime();
+  }
+
+  private MongoCollection<Document> outbox() {
+    return db.getCollection(COLLECTION);
+  }
+
+  /**
+   * Gets the counters of the outbox, including how far delivery is behind
+   *
+   * @return Map: The counters by name
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> statsMap = new HashMap<String, Object>();
+
+    // Lag is the age of the oldest event not yet delivered
+    Document oldest = outbox().find().sort(Sorts.ascending("_id")).first();
+    statsMap.put("pendingEvents", outbox().countDocuments());
+    statsMap.put("unrecordedEvents", unrecorded.size());
+    statsMap.put("lagMs",
+        oldest == null ? 0 : System.currentTimeMillis() - oldest.getDate(KEY_CREATED_AT).getTime());
+    statsMap.put("lastDeliveryLagMs", lastDeliveryLagMs);
+    statsMap.put("delivered", delivered.get());
+    statsMap.put("failedAttempts", failedAttempts.get());
+    statsMap.put("consecutiveFailures", consecutiveFailures);
+    statsMap.put("nextRetryInMs", Math.max(0, retryAt - System.currentTimeMillis()));
+    statsMap.put("lastError", lastError);
+    return statsMap;
+  }
+}
@@ -0,0 +1,345 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import com.mongodb.client.model.Projections;
+
+/**
+ * In-memory full text index over the name, artist and album of every song. Words map to the ids
+ * of the songs containing them, and the words are kept sorted so that every word starting with a
+ * prefix is a single range lookup. Results are ranked by favourites count.
+ *
+ * The index is built from the database at startup and kept up to date from SongDalImpl.
+ */
+@Component
+public class SongSearchIndex implements SongChangeListener {
+
+  private static final Logger log = LoggerFactory.getLogger(SongSearchIndex.class);
+
+  private final MongoTemplate db;
+  private final FavouritesWriteBehind favouritesWriteBehind;
+
+  // Changes are applied under this lock, searches read without locking
+  private final Object writeLock = new Object();
+  private volatile TermIndex index = new TermIndex();
+
+  // Index being built by a rebuild, which also receives every change made while it is built
+  private TermIndex rebuilding;
+
+  @Autowired
+  public SongSearchIndex(MongoTemplate mongoTemplate,
+      FavouritesWriteBehind favouritesWriteBehind) {
+    this.db = mongoTemplate;
+    this.favouritesWriteBehind = favouritesWriteBehind;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildOnStartup() {
+    Thread thread = new Thread(this::rebuild, "song-search-index-rebuild");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Rebuilds the index from every song in the database, swapping it in once complete
+   */
+  public void rebuild() {
+    TermIndex rebuilt = new TermIndex();
+    synchronized (writeLock) {
+      rebuilding = rebuilt;
+    }
+
+    try {
+      for (Document found : db.getCollection(db.getCollectionName(Song.class)).find()
+          .projection(Projections.include(Song.KEY_SONG_NAME, Song.KEY_SONG_ARTIST_FULL_NAME,
+              Song.KEY_SONG_ALBUM, Song.KEY_SONG_AMOUNT_FAVOURITES))) {
+        String id = found.getObjectId("_id").toHexString();
+        Number favourites = found.get(Song.KEY_SONG_AMOUNT_FAVOURITES, Number.class);
+
+        IndexedSong song = new IndexedSong(id, found.getString(Song.KEY_SONG_NAME),
+            found.getString(Song.KEY_SONG_ARTIST_FULL_NAME), found.getString(Song.KEY_SONG_ALBUM),
+            (favourites == null ? 0 : favourites.longValue())
+                + favouritesWriteBehind.getPendingDelta(id));
+
+        // Songs changed since the rebuild started are already up to date
+        synchronized (writeLock) {
+          rebuilt.addIfAbsent(song);
+        }
+      }
+
+      synchronized (writeLock) {
+        index = rebuilt;
+        rebuilding = null;
+      }
+    } catch (Exception e) {
+      log.warn("Could not rebuild the song search index", e);
+      synchronized (writeLock) {
+        rebuilding = null;
+      }
+    }
+  }
+
+  @Override
+  public void songAdded(Song song) {
+    synchronized (writeLock) {
+      index.add(indexed(song));
+
+      // Favourites deltas are applied to each index, so they cannot share the song
+      if (rebuilding != null) {
+        rebuilding.add(indexed(song));
+      }
+    }
+  }
+
+  @Override
+  public void songDeleted(Song song) {
+    synchronized (writeLock) {
+      index.remove(song.getId());
+      if (rebuilding != null) {
+        rebuilding.remove(song.getId());
+        rebuilding.deleted.add(song.getId());
+      }
+    }
+  }
+
+  // Notifications of concurrent updates can arrive in any order, and after the song is deleted,
+  // so only the delta is applied, and only to songs in the index. Songs the rebuild has not read
+  // yet are read with the update
+  @Override
+  public void songFavouritesUpdated(Song song, long delta) {
+    synchronized (writeLock) {
+      index.addFavourites(song.getId(), delta);
+      if (rebuilding != null) {
+        rebuilding.addFavourites(song.getId(), delta);
+      }
+    }
+  }
+
+  private static IndexedSong indexed(Song song) {
+    return new IndexedSong(song.getId(), song.getSongName(), song.getSongArtistFullName(),
+        song.getSongAlbum(), song.getSongAmountFavourites());
+  }
+
+  /**
+   * Finds the most favourited songs containing every word of the query
+   *
+   * @param query: The words to search for
+   * @param limit: The max number of songs to return
+   * @return List: The matching songs, most favourited first
+   */
+  public List<Map<String, String>> search(String query, int limit) {
+    TermIndex current = index;
+    List<Set<String>> matches = new ArrayList<Set<String>>();
+    for (String term : tokenize(query)) {
+      matches.add(current.terms.getOrDefault(term, Collections.emptySet()));
+    }
+    return current.top(intersect(matches), limit);
+  }
+
+  /**
+   * Finds the most favourited songs containing every word of the query, treating the last word as
+   * a prefix so that results show up while it is still being typed
+   *
+   * @param query: The words to search for
+   * @param limit: The max number of songs to return
+   * @return List: The matching songs, most favourited first
+   */
+  public List<Map<String, String>> autocomplete(String query, int limit) {
+    TermIndex current = index;
+    List<String> terms = tokenize(query);
+    if (terms.isEmpty()) {
+      return new ArrayList<Map<String, String>>();
+    }
+
+    List<Set<String>> matches = new ArrayList<Set<String>>();
+    for (String term : terms.subList(0, terms.size() - 1)) {
+      matches.add(current.terms.getOrDefault(term, Collections.emptySet()));
+    }
+
+    // Every word starting with the prefix sorts between the prefix and the prefix followed by the
+    // highest character
+    String prefix = terms.get(terms.size() - 1);
+    Set<String> prefixMatches = new HashSet<String>();
+    for (Set<String> ids : current.terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true)
+        .values()) {
+      prefixMatches.addAll(ids);
+    }
+    matches.add(prefixMatches);
+
+    return current.top(intersect(matches), limit);
+  }
+
+  /**
+   * Gets the size of the index
+   *
+   * @return Map: The number of songs and words in the index, and whether it is being rebuilt
+   */
+  public Map<String, Object> getStats() {
+    TermIndex current = index;
+    Map<String, Object> statsMap = new HashMap<String, Object>();
+    statsMap.put("songs", current.songs.size());
+    statsMap.put("terms", current.terms.size());
+    statsMap.put("rebuilding", rebuilding != null);
+    return statsMap;
+  }
+
+  // Splits text into lower case words
+  static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<String>();
+    if (text == null) {
+      return terms;
+    }
+    for (String term : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+      if (!term.isEmpty()) {
+        terms.add(term);
+      }
+    }
+    return terms;
+  }
+
+  // Intersects the id sets, starting from the smallest
+  private static Collection<String> intersect(List<Set<String>> matches) {
+    if (matches.isEmpty()) {
+      return Collections.emptySet();
+    }
+    matches.sort(Comparator.comparingInt(Set::size));
+
+    List<String> result = new ArrayList<String>();
+    for (String id : matches.get(0)) {
+      boolean inAll = true;
+      for (int i = 1; i < matches.size() && inAll; i++) {
+        inAll = matches.get(i).contains(id);
+      }
+      if (inAll) {
+        result.add(id);
+      }
+    }
+    return result;
+  }
+
+  // Searchable fields of a song
+  private static final class IndexedSong {
+    private final String id;
+    private final String songName;
+    private final String songArtistFullName;
+    private final String songAlbum;
+    private volatile long songAmountFavourites;
+
+    private IndexedSong(String id, String songName, String songArtistFullName, String songAlbum,
+        long songAmountFavourites) {
+      this.id = id;
+      this.songName = songName;
+      this.songArtistFullName = songArtistFullName;
+      this.songAlbum = songAlbum;
+      this.songAmountFavourites = songAmountFavourites;
+    }
+
+    private Set<String> terms() {
+      Set<String> terms = new LinkedHashSet<String>(tokenize(songName));
+      terms.addAll(tokenize(songArtistFullName));
+      terms.addAll(tokenize(songAlbum));
+      return terms;
+    }
+
+    private Map<String, String> toJson() {
+      Map<String, String> json = new HashMap<String, String>();
+      json.put("id", id);
+      json.put(Song.KEY_SONG_NAME, songName);
+      json.put(Song.KEY_SONG_ARTIST_FULL_NAME, songArtistFullName);
+      json.put(Song.KEY_SONG_ALBUM, songAlbum);
+      json.put(Song.KEY_SONG_AMOUNT_FAVOURITES, String.valueOf(songAmountFavourites));
+      return json;
+    }
+  }
+
+  // Songs by id and the ids of the songs containing each word. Changed only under the write lock
+  private static final class TermIndex {
+    private final ConcurrentHashMap<String, IndexedSong> songs =
+        new ConcurrentHashMap<String, IndexedSong>();
+    private final ConcurrentSkipListMap<String, Set<String>> terms =
+        new ConcurrentSkipListMap<String, Set<String>>();
+
+    // Songs deleted while this index is being rebuilt, which the rebuild must not add back
+    private final Set<String> deleted = new HashSet<String>();
+
+    private void add(IndexedSong song) {
+      remove(song.id);
+      songs.put(song.id, song);
+      for (String term : song.terms()) {
+        terms.computeIfAbsent(term, t -> ConcurrentHashMap.newKeySet()).add(song.id);
+      }
+    }
+
+    private void addIfAbsent(IndexedSong song) {
+      if (!songs.containsKey(song.id) && !deleted.contains(song.id)) {
+        add(song);
+      }
+    }
+
+    private void remove(String id) {
+      IndexedSong song = songs.remove(id);
+      if (song != null) {
+        for (String term : song.terms()) {
+          Set<String> ids = terms.get(term);
+          if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+              terms.remove(term);
+            }
+          }
+        }
+      }
+    }
+
+    private void addFavourites(String id, long delta) {
+      IndexedSong song = songs.get(id);
+      if (song != null) {
+        song.songAmountFavourites += delta;
+      }
+    }
+
+    // Keeps the most favourited songs with a min heap of the best seen so far
+    private List<Map<String, String>> top(Collection<String> ids, int limit) {
+      Comparator<IndexedSong> byFavourites =
+          Comparator.comparingLong((IndexedSong song) -> song.songAmountFavourites)
+              .thenComparing(song -> song.id, Comparator.reverseOrder());
+      PriorityQueue<IndexedSong> best = new PriorityQueue<IndexedSong>(byFavourites);
+      for (String id : ids) {
+        IndexedSong song = songs.get(id);
+        if (song != null) {
+          best.add(song);
+          if (best.size() > limit) {
+            best.poll();
+          }
+        }
+      }
+
+      List<IndexedSong> sorted = new ArrayList<IndexedSong>(best);
+      sorted.sort(byFavourites.reversed());
+      List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+      for (IndexedSong song : sorted) {
+        results.add(song.toJson());
+      }
+      return results;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.csc301.songmicroservice;
+
+import javax.servlet.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import com.mongodb.MongoClientOptions;
+import brave.Tracing;
+import brave.http.HttpTracing;
+import brave.mongodb.MongoDBTracing;
+import brave.servlet.TracingFilter;
+import brave.spring.webmvc.SpanCustomizingAsyncHandlerInterceptor;
+
+/**
+ * Tracing of the song microservice on top of the shared TracingConfig: a span for every servlet
+ * request and every command the MongoDB driver sends. Calls to the profile microservice are traced
+ * by InterServiceClient.
+ */
+@Configuration
+public class SongTracingConfig {
+
+  // Used by Spring Boot to create the MongoClient behind MongoTemplate
+  @Bean
+  public MongoClientOptions mongoClientOptions(Tracing tracing) {
+    return MongoClientOptions.builder()
+        .addCommandListener(MongoDBTracing.create(tracing).commandListener()).build();
+  }
+
+  // Server spans named after the matched route, for the servlet stack
+  @Configuration
+  @ConditionalOnWebApplication(type = Type.SERVLET)
+  @Import(SpanCustomizingAsyncHandlerInterceptor.class)
+  public static class ServletTracingConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private SpanCustomizingAsyncHandlerInterceptor spanCustomizingInterceptor;
+
+    @Bean
+    public FilterRegistrationBean<Filter> tracingFilter(HttpTracing httpTracing) {
+      FilterRegistrationBean<Filter> registration =
+          new FilterRegistrationBean<Filter>(TracingFilter.create(httpTracing));
+      registration.setOrder(Integer.MIN_VALUE);
+      return registration;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+      registry.addInterceptor(spanCustomizingInterceptor);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+import java.util.Map;
+import com.csc301.interservice.SongWireCodec;
+
+/**
+ * Writes the results of the internal binary routes with the SongWireCodec shared with the profile
+ * microservice
+ */
+final class SongWireResponses {
+
+  private SongWireResponses() {}
+
+  /**
+   * Encodes the result of a title lookup
+   *
+   * @param dbQueryStatus: The result, with a map of song id to title if it is OK
+   * @return byte[]: The response
+   */
+  static byte[] encodeTitles(DbQueryStatus dbQueryStatus) throws IOException {
+    return SongWireCodec.encodeTitlesResponse(status(dbQueryStatus),
+        (Map<String, String>) dbQueryStatus.getData());
+  }
+
+  /**
+   * Encodes the result of a favourites count update
+   *
+   * @param dbQueryStatus: The result, with the new count if it is OK
+   * @return byte[]: The response
+   */
+  static byte[] encodeFavourites(DbQueryStatus dbQueryStatus) throws IOException {
+    SongWireCodec.Status status = status(dbQueryStatus);
+    return SongWireCodec.encodeFavouritesResponse(status,
+        status == SongWireCodec.Status.OK ? ((Number) dbQueryStatus.getData()).longValue() : 0);
+  }
+
+  private static SongWireCodec.Status status(DbQueryStatus dbQueryStatus) {
+    switch (dbQueryStatus.getdbQueryExecResult()) {
+      case QUERY_OK:
+        return SongWireCodec.Status.OK;
+      case QUERY_ERROR_NOT_FOUND:
+        return SongWireCodec.Status.NOT_FOUND;
+      default:
+        return SongWireCodec.Status.ERROR;
+    }
+  }
+}
@@ -3,6 +3,8 @@ package com.csc301.songmicroservice;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import com.csc301.interservice.DbQueryExecResult;
 
 import okhttp3.RequestBody;
 
@@ -22,6 +24,11 @@ public class Utils {
 		}
 		return requestUrl;
 	}
+
+	// Same as above for routes served by the reactive controller
+	public static String getUrl(ServerHttpRequest req) {
+		return req.getURI().toString();
+	}
 	
 	// Sets the response status and data for a response from the server. You will not always be able to use this function
 	public static Map<String, Object> setResponseStatus(Map<String, Object> response, DbQueryExecResult dbQueryExecResult, Object data) {	
@@ -0,0 +1,56 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import com.csc301.interservice.ApiResponse;
+import com.csc301.interservice.DbQueryExecResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ApiResponseTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void writesTheSameJsonAsTheResponseMap() throws Exception {
+		Song song = new Song("Song \"Quoted\"", "Artist", "Album");
+		song.setId(new ObjectId());
+		song.setSongAmountFavourites(7);
+
+		Map<String, Object> expected = new HashMap<String, Object>();
+		expected.put("path", "GET http://localhost:3001/getSongById/" + song.getId());
+		expected.put("message", "Search Successful");
+		expected = Utils.setResponseStatus(expected, DbQueryExecResult.QUERY_OK,
+				song.getJsonRepresentation());
+		JsonNode expectedJson = mapper.readTree(mapper.writeValueAsBytes(expected));
+
+		ApiResponse response = new ApiResponse((String) expected.get("path"));
+		response.setMessage("Search Successful");
+		response.setStatus(DbQueryExecResult.QUERY_OK, song);
+		assertEquals(expectedJson, mapper.readTree(mapper.writeValueAsBytes(response)));
+
+		// A song written ahead of time gives the same JSON until it is changed
+		song.preSerialize();
+		assertEquals(expectedJson, mapper.readTree(mapper.writeValueAsBytes(response)));
+		song.setSongAmountFavourites(8);
+		assertEquals("8", mapper.readTree(mapper.writeValueAsBytes(response)).get("data")
+				.get(Song.KEY_SONG_AMOUNT_FAVOURITES).asText());
+	}
+
+	@Test
+	public void leavesOutThePathAndTheDataOfFailedQueries() throws Exception {
+		ApiResponse response = new ApiResponse(null);
+		response.setMessage("Song not Found");
+		response.setStatus(DbQueryExecResult.QUERY_ERROR_NOT_FOUND, "ignored");
+
+		JsonNode json = mapper.readTree(mapper.writeValueAsBytes(response));
+		assertFalse(json.has("path"));
+		assertFalse(json.has("data"));
+		assertEquals("NOT_FOUND", json.get("status").asText());
+	}
+}
@@ -0,0 +1,169 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * Flushes the write-behind buffer into an in-process MongoDB stand-in, checking that every delta
+ * is counted exactly once in the database or in memory while and after it is flushed.
+ */
+public class FavouritesWriteBehindTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private MongoTemplate db;
+	private String dreams;
+	private String rumours;
+
+	@Before
+	public void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		InetSocketAddress address = server.bind();
+		client = new MongoClient(new ServerAddress(address));
+		db = spy(new MongoTemplate(client, "write-behind-test"));
+
+		dreams = addSong("Dreams", 10L);
+		rumours = addSong("Rumours", 20L);
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.shutdownNow();
+	}
+
+	private String addSong(String songName, Object songAmountFavourites) {
+		ObjectId id = new ObjectId();
+		db.getCollection(db.getCollectionName(Song.class)).insertOne(new Document("_id", id)
+				.append(Song.KEY_SONG_NAME, songName)
+				.append(Song.KEY_SONG_AMOUNT_FAVOURITES, songAmountFavourites)
+				.append(Song.KEY_SONG_VERSION, 0L));
+		return id.toHexString();
+	}
+
+	private long storedFavourites(String songId) {
+		return db.findOne(new Query(Criteria.where("_id").is(songId)), Song.class)
+				.getSongAmountFavourites();
+	}
+
+	private long readFavourites(FavouritesWriteBehind writeBehind, String songId) {
+		return writeBehind.readFavouritesWithPendingDelta(songId, () -> storedFavourites(songId));
+	}
+
+	@Test
+	public void flushMovesPendingDeltasIntoTheDatabase() {
+		FavouritesWriteBehind writeBehind = new FavouritesWriteBehind(db, false, 500, 1000);
+		writeBehind.record(dreams, 1);
+		writeBehind.record(dreams, 1);
+		writeBehind.record(rumours, -1);
+
+		assertEquals(2, writeBehind.getPendingDelta(dreams));
+		assertEquals(10, storedFavourites(dreams));
+		assertEquals(12, readFavourites(writeBehind, dreams));
+
+		writeBehind.flush();
+
+		assertEquals(0, writeBehind.getPendingDelta(dreams));
+		assertEquals(12, storedFavourites(dreams));
+		assertEquals(19, storedFavourites(rumours));
+		assertEquals(0, writeBehind.getStats().get("pendingSongs"));
+		assertEquals(2L, writeBehind.getStats().get("flushedSongs"));
+	}
+
+	@Test
+	public void deltasRecordedDuringAFlushStayPendingAndReadersWaitForIt() throws Exception {
+		CountDownLatch executing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			BulkOperations bulk = spy((BulkOperations) invocation.callRealMethod());
+			doAnswer(execute -> {
+				executing.countDown();
+				release.await();
+				return execute.callRealMethod();
+			}).when(bulk).execute();
+			return bulk;
+		}).when(db).bulkOps(any(), any(Class.class));
+
+		FavouritesWriteBehind writeBehind = new FavouritesWriteBehind(db, false, 500, 1000);
+		writeBehind.record(dreams, 5);
+		CompletableFuture<Void> flush = CompletableFuture.runAsync(writeBehind::flush);
+		assertTrue(executing.await(5, TimeUnit.SECONDS));
+
+		// The in flight delta still counts, and a new one is added to it
+		writeBehind.record(dreams, 1);
+		assertEquals(6, writeBehind.getPendingDelta(dreams));
+
+		// A read while the flush writes waits for it rather than counting the delta twice
+		CompletableFuture<Long> read =
+				CompletableFuture.supplyAsync(() -> readFavourites(writeBehind, dreams));
+		Thread.sleep(100);
+		assertFalse(read.isDone());
+
+		// A song that is not being written is read without waiting
+		assertEquals(20, readFavourites(writeBehind, rumours));
+
+		release.countDown();
+		flush.get(5, TimeUnit.SECONDS);
+		assertEquals(16, (long) read.get(5, TimeUnit.SECONDS));
+		assertEquals(15, storedFavourites(dreams));
+		assertEquals(1, writeBehind.getPendingDelta(dreams));
+
+		writeBehind.flush();
+		assertEquals(16, storedFavourites(dreams));
+		assertEquals(0, writeBehind.getPendingDelta(dreams));
+	}
+
+	@Test
+	public void onlyTheUpdatesThatFailedAreKeptForTheNextFlush() {
+		String broken = addSong("Broken", "not a number");
+		FavouritesWriteBehind writeBehind = new FavouritesWriteBehind(db, false, 500, 1000);
+		writeBehind.record(dreams, 3);
+		writeBehind.record(broken, 2);
+		writeBehind.record(rumours, 4);
+
+		writeBehind.flush();
+
+		assertEquals(13, storedFavourites(dreams));
+		assertEquals(24, storedFavourites(rumours));
+		assertEquals(0, writeBehind.getPendingDelta(dreams));
+		assertEquals(0, writeBehind.getPendingDelta(rumours));
+		assertEquals(2, writeBehind.getPendingDelta(broken));
+		assertEquals(1L, writeBehind.getStats().get("failedFlushes"));
+		assertEquals(2L, writeBehind.getStats().get("flushedSongs"));
+	}
+
+	@Test
+	public void stopFlushesWhatIsPending() throws InterruptedException {
+		FavouritesWriteBehind writeBehind = new FavouritesWriteBehind(db, true, 60000, 1000);
+		writeBehind.start();
+		writeBehind.record(dreams, 7);
+		assertEquals(10, storedFavourites(dreams));
+
+		writeBehind.stop();
+
+		assertEquals(17, storedFavourites(dreams));
+		assertEquals(0, writeBehind.getPendingDelta(dreams));
+	}
+}
@@ -0,0 +1,65 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import com.csc301.interservice.DbQueryExecResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+public class MetricsAspectTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private <T> T proxy(T target) {
+		AspectJProxyFactory factory = new AspectJProxyFactory(target);
+		factory.addAspect(new MetricsAspect(registry));
+		return factory.getProxy();
+	}
+
+	private long count(String dal, String method, String result) {
+		return registry.get(MetricsAspect.QUERY_TIMER).tag("dal", dal).tag("method", method)
+				.tag("result", result).timer().count();
+	}
+
+	@Test
+	public void queriesAreTimedByResult() {
+		SongDal songDal = mock(SongDal.class);
+		when(songDal.findSongById("found"))
+				.thenReturn(new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK));
+		when(songDal.findSongById("missing")).thenReturn(
+				new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+		when(songDal.findSongById("broken")).thenThrow(new IllegalStateException());
+
+		SongDal timed = proxy(songDal);
+		timed.findSongById("found");
+		timed.findSongById("found");
+		timed.findSongById("missing");
+		try {
+			timed.findSongById("broken");
+			fail("Expected the exception to be rethrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(2, count("SongDal", "findSongById", "QUERY_OK"));
+		assertEquals(1, count("SongDal", "findSongById", "QUERY_ERROR_NOT_FOUND"));
+		assertEquals(1, count("SongDal", "findSongById", MetricsAspect.EXCEPTION));
+	}
+
+	@Test
+	public void reactiveQueriesAreTimedWhenTheyComplete() {
+		ReactiveSongDal songDal = mock(ReactiveSongDal.class);
+		when(songDal.getSongTitleById("missing")).thenReturn(Mono.just(
+				new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND)));
+
+		Mono<DbQueryStatus> title = proxy(songDal).getSongTitleById("missing");
+		assertEquals(0, registry.find(MetricsAspect.QUERY_TIMER).timers().size());
+		title.block();
+		assertEquals(1, count("ReactiveSongDal", "getSongTitleById", "QUERY_ERROR_NOT_FOUND"));
+	}
+}
@@ -0,0 +1,66 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+public class SongCacheTest {
+
+	private final SongCache songCache = new SongCache(100, 300, true);
+	private final ObjectId id = new ObjectId();
+
+	private Song version(long version, long songAmountFavourites) {
+		Song song = new Song("Dreams", "Fleetwood Mac", "Rumours");
+		song.setId(id);
+		song.setVersion(version);
+		song.setSongAmountFavourites(songAmountFavourites);
+		return song;
+	}
+
+	@Test
+	public void updatesFinishingOutOfOrderKeepTheNewerSong() {
+		Song newer = version(2, 2);
+		songCache.putIfNewer(newer);
+		songCache.putIfNewer(version(1, 1));
+
+		assertSame(newer, songCache.get(id.toHexString()));
+		assertEquals("\"2-2\"", songCache.get(id.toHexString()).getETag());
+
+		Song newest = version(3, 3);
+		songCache.putIfNewer(newest);
+		assertSame(newest, songCache.get(id.toHexString()));
+	}
+
+	@Test
+	public void readsDoNotReplaceUpdatedSongs() {
+		Song updated = version(2, 2);
+		songCache.putIfNewer(updated);
+
+		assertSame(updated, songCache.putIfAbsent(version(1, 1)));
+		assertSame(updated, songCache.get(id.toHexString()));
+	}
+
+	@Test
+	public void deletedSongsAreNotCachedAgain() {
+		songCache.putIfNewer(version(1, 1));
+		songCache.remove(id.toHexString());
+		assertTrue(songCache.isDeleted(id.toHexString()));
+
+		// Reads and updates that were in flight when the song was deleted
+		songCache.putIfNewer(version(2, 2));
+		Song read = version(1, 1);
+		assertSame(read, songCache.putIfAbsent(read));
+		assertNull(songCache.compute(id.toHexString(), (songId, cached) -> version(2, 2)));
+		assertNull(songCache.get(id.toHexString()));
+
+		// Unless a song is added again with the same id
+		songCache.added(id.toHexString());
+		Song added = version(0, 0);
+		songCache.putIfAbsent(added);
+		assertSame(added, songCache.get(id.toHexString()));
+	}
+}
@@ -0,0 +1,73 @@
+package com.csc301.songmicroservice;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import com.csc301.interservice.DbQueryExecResult;
+
+public class SongControllerAddSongsTest {
+
+	private MockMvc mvc;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		SongDal songDal = mock(SongDal.class);
+		when(songDal.addSongs(anyList())).thenAnswer(invocation -> {
+			List<String> inserted = new ArrayList<String>();
+			for (Song song : (List<Song>) invocation.getArgument(0)) {
+				inserted.add(song.getSongName());
+			}
+			Map<String, List<String>> result = new HashMap<String, List<String>>();
+			result.put("inserted", inserted);
+			result.put("errors", Collections.<String>emptyList());
+			DbQueryStatus dbQueryStatus = new DbQueryStatus("Songs Added", DbQueryExecResult.QUERY_OK);
+			dbQueryStatus.setData(result);
+			return dbQueryStatus;
+		});
+
+		SongController controller = new SongController(songDal, null, null,
+				new SongIngester(songDal, 2), null, null, null, null, null, new ApiResponseFactory());
+		mvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	private static String song(int n) {
+		return "{\"songName\": \"Song " + n + "\", \"songArtistFullName\": \"Artist\", "
+				+ "\"songAlbum\": \"Album\"}";
+	}
+
+	@Test
+	public void reportsEverySongOfACompleteStream() throws Exception {
+		mvc.perform(post("/addSongs").content("[" + song(1) + ", " + song(2) + ", " + song(3) + "]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("OK"))
+				.andExpect(jsonPath("$.data.received").value(3))
+				.andExpect(jsonPath("$.data.inserted").value(3))
+				.andExpect(jsonPath("$.data.batches.length()").value(2));
+	}
+
+	@Test
+	public void reportsTheSongsAddedBeforeAStreamWentWrong() throws Exception {
+		mvc.perform(post("/addSongs").content(song(1) + "\n" + song(2) + "\n" + song(3) + "\n{"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("INTERNAL_SERVER_ERROR"))
+				.andExpect(jsonPath("$.message").value(startsWith("Ingestion stopped, malformed JSON")))
+				.andExpect(jsonPath("$.data.received").value(3))
+				.andExpect(jsonPath("$.data.inserted").value(3))
+				.andExpect(jsonPath("$.data.batches.length()").value(2));
+	}
+}
@@ -0,0 +1,80 @@
+package com.csc301.songmicroservice;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import com.csc301.interservice.DbQueryExecResult;
+
+public class SongControllerETagTest {
+
+	private SongDal songDal;
+	private MockMvc mvc;
+	private Song song;
+
+	@Before
+	public void setUp() {
+		song = new Song("Song", "Artist", "Album");
+		song.setId(new ObjectId());
+		song.setVersion(3);
+		song.setSongAmountFavourites(5);
+
+		songDal = mock(SongDal.class);
+		when(songDal.findSongById(song.getId())).thenAnswer(invocation -> ok(song, song.getETag()));
+		when(songDal.getSongTitleById(song.getId()))
+				.thenAnswer(invocation -> ok(song.getSongName(), song.getETag()));
+
+		SongController controller = new SongController(songDal, null, null, null, null, null, null,
+				null, null, new ApiResponseFactory());
+		ReflectionTestUtils.setField(controller, "cacheControl", "max-age=60");
+		mvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@Test
+	public void answersNotModifiedWhileTheSongIsUnchanged() throws Exception {
+		mvc.perform(get("/getSongById/" + song.getId())).andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"3-5\""))
+				.andExpect(header().string("Cache-Control", "max-age=60"))
+				.andExpect(jsonPath("$.data.songAmountFavourites").value("5"));
+
+		mvc.perform(get("/getSongById/" + song.getId()).header("If-None-Match", "\"3-5\""))
+				.andExpect(status().isNotModified()).andExpect(content().string(""));
+	}
+
+	@Test
+	public void titleHasTheETagOfTheSongItWasReadFrom() throws Exception {
+		mvc.perform(get("/getSongTitleById/" + song.getId())).andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"3-5\""))
+				.andExpect(jsonPath("$.data").value("Song"));
+
+		mvc.perform(get("/getSongTitleById/" + song.getId()).header("If-None-Match", "\"3-5\""))
+				.andExpect(status().isNotModified()).andExpect(content().string(""));
+	}
+
+	@Test
+	public void answersWithTheSongOnceItChanges() throws Exception {
+		song.setSongAmountFavourites(6);
+		song.setVersion(4);
+
+		mvc.perform(get("/getSongById/" + song.getId()).header("If-None-Match", "\"3-5\""))
+				.andExpect(status().isOk()).andExpect(header().string("ETag", "\"4-6\""))
+				.andExpect(jsonPath("$.data.songAmountFavourites").value("6"));
+	}
+
+	private static DbQueryStatus ok(Object data, String eTag) {
+		DbQueryStatus dbQueryStatus = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(data);
+		dbQueryStatus.setETag(eTag);
+		return dbQueryStatus;
+	}
+}
@@ -0,0 +1,129 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * Updates favourites counts against an in-process MongoDB stand-in, checking that an update
+ * retried with the same request id is applied once, with and without write-behind.
+ */
+public class SongFavouritesCountTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private MongoTemplate db;
+	private final SongChangeListener listener = mock(SongChangeListener.class);
+	private String songId;
+
+	@Before
+	public void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		InetSocketAddress address = server.bind();
+		client = new MongoClient(new ServerAddress(address));
+		db = new MongoTemplate(client, "favourites-test");
+
+		Song song = new Song("Dreams", "Fleetwood Mac", "Rumours");
+		db.insert(song);
+		songId = song.getId();
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.shutdownNow();
+	}
+
+	private SongDalImpl songDal(FavouritesWriteBehind favouritesWriteBehind) {
+		return new SongDalImpl(db, new SongCache(100, 300, true), favouritesWriteBehind,
+				new SongOutbox(db, mock(InterServiceClient.class), 1000, 500, 30000),
+				new SongIndexes(db, 5000), Collections.singletonList(listener));
+	}
+
+	private long storedFavourites() {
+		return db.findOne(new Query(Criteria.where("_id").is(songId)), Song.class)
+				.getSongAmountFavourites();
+	}
+
+	@Test
+	public void retriedUpdatesAreAppliedOnce() {
+		SongDalImpl songDal = songDal(new FavouritesWriteBehind(db, false, 500, 1000));
+
+		DbQueryStatus first = songDal.updateSongFavouritesCount(songId, false, "like-1");
+		DbQueryStatus retried = songDal.updateSongFavouritesCount(songId, false, "like-1");
+		assertEquals(DbQueryExecResult.QUERY_OK, first.getdbQueryExecResult());
+		assertEquals(DbQueryExecResult.QUERY_OK, retried.getdbQueryExecResult());
+		assertEquals(1L, first.getData());
+		assertEquals(1L, retried.getData());
+
+		songDal.updateSongFavouritesCount(songId, false, "like-2");
+		songDal.updateSongFavouritesCount(songId, true, "unlike-1");
+		assertEquals(1L, songDal.updateSongFavouritesCount(songId, true, "unlike-1").getData());
+
+		assertEquals(1, storedFavourites());
+		verify(listener, times(3)).songFavouritesUpdated(any(), anyLong());
+	}
+
+	@Test
+	public void updatesWithoutARequestIdAreAllApplied() {
+		SongDalImpl songDal = songDal(new FavouritesWriteBehind(db, false, 500, 1000));
+
+		songDal.updateSongFavouritesCount(songId, false, null);
+		songDal.updateSongFavouritesCount(songId, false, null);
+
+		assertEquals(2, storedFavourites());
+	}
+
+	@Test
+	public void retriedUpdatesAreRecordedOnceWithWriteBehind() throws InterruptedException {
+		FavouritesWriteBehind favouritesWriteBehind =
+				new FavouritesWriteBehind(db, true, 60000, 1000);
+		favouritesWriteBehind.start();
+		SongDalImpl songDal = songDal(favouritesWriteBehind);
+
+		songDal.updateSongFavouritesCount(songId, false, "like-1");
+		DbQueryStatus retried = songDal.updateSongFavouritesCount(songId, false, "like-1");
+		assertEquals(DbQueryExecResult.QUERY_OK, retried.getdbQueryExecResult());
+		assertEquals(1L, retried.getData());
+		assertEquals(1, favouritesWriteBehind.getPendingDelta(songId));
+
+		favouritesWriteBehind.stop();
+		assertEquals(1, storedFavourites());
+		verify(listener, times(1)).songFavouritesUpdated(any(), anyLong());
+	}
+
+	@Test
+	public void requestIdsAreNotListedWithTheSong() {
+		SongDalImpl songDal = songDal(new FavouritesWriteBehind(db, false, 500, 1000));
+		songDal.updateSongFavouritesCount(songId, false, "like-1");
+
+		List<Document> listed = new ArrayList<Document>();
+		songDal.forEachSongAfter(null, 10, listed::add);
+
+		assertEquals(1, listed.size());
+		assertEquals(1L, ((Number) listed.get(0).get(Song.KEY_SONG_AMOUNT_FAVOURITES)).longValue());
+		assertFalse(listed.get(0).containsKey(Song.KEY_FAVOURITES_REQUESTS));
+	}
+}
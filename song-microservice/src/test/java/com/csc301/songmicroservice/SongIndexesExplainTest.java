@@ -0,0 +1,137 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+/**
+ * Explains the artist and album page queries without a hint against an embedded mongod, whose
+ * query planner has to pick the song indexes by itself, so a missing or unusable index fails.
+ */
+public class SongIndexesExplainTest {
+
+	private static MongodExecutable mongod;
+	private static MongoClient client;
+
+	private MongoDatabase database;
+	private String middleId;
+
+	@BeforeClass
+	public static void startMongod() throws IOException {
+		int port = Network.getFreeServerPort();
+		mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+				.version(Version.Main.PRODUCTION)
+				.net(new Net("localhost", port, Network.localhostIsIPv6())).build());
+		mongod.start();
+		client = new MongoClient("localhost", port);
+	}
+
+	@AfterClass
+	public static void stopMongod() {
+		if (client != null) {
+			client.close();
+		}
+		if (mongod != null) {
+			mongod.stop();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		database = client.getDatabase("csc301-explain-test");
+		database.drop();
+
+		// Many songs per artist and album, as in MOCK_DATA
+		MongoCollection<Document> songs = database.getCollection("songs");
+		List<Document> inserted = new ArrayList<Document>();
+		for (int i = 0; i < 1000; i++) {
+			inserted.add(new Document("_id", new ObjectId())
+					.append(Song.KEY_SONG_NAME, "Song " + i)
+					.append(Song.KEY_SONG_ARTIST_FULL_NAME, "Artist " + i % 10)
+					.append(Song.KEY_SONG_ALBUM, "Album " + i % 50)
+					.append(Song.KEY_SONG_AMOUNT_FAVOURITES, i));
+		}
+		songs.insertMany(inserted);
+		middleId = inserted.get(500).getObjectId("_id").toHexString();
+
+		SongIndexes.createIndexes(songs);
+	}
+
+	@Test
+	public void artistAndAlbumPagesAreReadInIndexOrder() {
+		Bson byArtist = Filters.eq(Song.KEY_SONG_ARTIST_FULL_NAME, "Artist 3");
+		Bson byAlbum = Filters.eq(Song.KEY_SONG_ALBUM, "Album 7");
+		Bson byArtistAndAlbum = Filters.and(byArtist, byAlbum);
+
+		for (String after : new String[] {null, middleId}) {
+			assertPlannerUsesIndex(byArtist, SongIndexes.BY_ARTIST, after);
+			assertPlannerUsesIndex(byAlbum, SongIndexes.BY_ALBUM, after);
+			assertPlannerUsesIndex(byArtistAndAlbum, SongIndexes.BY_ARTIST_AND_ALBUM, after);
+		}
+	}
+
+	private void assertPlannerUsesIndex(Bson filter, Document index, String after) {
+		BsonDocument pageFilter = SongDalImpl.pageFilter(filter, after)
+				.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+		Document find = new Document("find", "songs").append("filter", pageFilter)
+				.append("sort", new Document("_id", 1)).append("limit", 100);
+		Document explain = database
+				.runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+		Document winningPlan = ((Document) explain.get("queryPlanner"))
+				.get("winningPlan", Document.class);
+
+		// The index has to hand out the songs in _id order, without a sort in memory
+		List<Document> stages = new ArrayList<Document>();
+		collectStages(winningPlan, stages);
+		List<Object> indexesScanned = new ArrayList<Object>();
+		for (Document stage : stages) {
+			String name = stage.getString("stage");
+			assertFalse("Collection scan for " + pageFilter + ": " + winningPlan.toJson(),
+					name.equals("COLLSCAN"));
+			assertFalse("Sort in memory for " + pageFilter + ": " + winningPlan.toJson(),
+					name.equals("SORT"));
+			if (name.equals("IXSCAN")) {
+				indexesScanned.add(stage.get("keyPattern"));
+			}
+		}
+		assertEquals("Wrong index for " + pageFilter + ": " + winningPlan.toJson(),
+				Collections.singletonList(index), indexesScanned);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void collectStages(Document stage, List<Document> stages) {
+		stages.add(stage);
+		Document inputStage = stage.get("inputStage", Document.class);
+		if (inputStage != null) {
+			collectStages(inputStage, stages);
+		}
+		List<Document> inputStages = (List<Document>) stage.get("inputStages");
+		if (inputStages != null) {
+			for (Document input : inputStages) {
+				collectStages(input, stages);
+			}
+		}
+	}
+}
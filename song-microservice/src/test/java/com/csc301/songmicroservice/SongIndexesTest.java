@@ -0,0 +1,67 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoCollection;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+public class SongIndexesTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private MongoTemplate db;
+	private MongoCollection<Document> songs;
+
+	@Before
+	public void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		InetSocketAddress address = server.bind();
+		client = new MongoClient(new ServerAddress(address));
+		db = new MongoTemplate(client, "indexes-test");
+		songs = db.getCollection(db.getCollectionName(Song.class));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.shutdownNow();
+	}
+
+	private List<Document> indexKeys() {
+		List<Document> keys = new ArrayList<Document>();
+		for (Document index : songs.listIndexes()) {
+			keys.add(index.get("key", Document.class));
+		}
+		return keys;
+	}
+
+	@Test
+	public void lookupsOnlyHintIndexesOnceTheyExist() {
+		SongIndexes songIndexes = new SongIndexes(db, 5000);
+		assertFalse(songIndexes.isReady());
+		assertNull(songIndexes.hint(SongIndexes.BY_ARTIST));
+		assertEquals(Status.OUT_OF_SERVICE, songIndexes.health().getStatus());
+
+		assertTrue(songIndexes.createIndexes());
+
+		assertTrue(songIndexes.isReady());
+		assertEquals(SongIndexes.BY_ARTIST, songIndexes.hint(SongIndexes.BY_ARTIST));
+		assertEquals(Status.UP, songIndexes.health().getStatus());
+		assertTrue(indexKeys().containsAll(SongIndexes.getIndexKeys()));
+	}
+}
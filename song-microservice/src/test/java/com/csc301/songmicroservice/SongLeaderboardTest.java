@@ -0,0 +1,175 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+public class SongLeaderboardTest {
+
+	private final SongLeaderboard leaderboard = new SongLeaderboard(mock(MongoTemplate.class),
+			mock(FavouritesWriteBehind.class));
+
+	private static Song song(String id, long songAmountFavourites) {
+		Song song = new Song("Song " + id, "Artist", "Album");
+		song.setId(new ObjectId(id));
+		song.setSongAmountFavourites(songAmountFavourites);
+		return song;
+	}
+
+	private static String id(int n) {
+		return String.format("%024x", n);
+	}
+
+	private List<String> topIds(int limit) {
+		List<String> ids = new ArrayList<String>();
+		for (Map<String, Object> ranked : leaderboard.getTop(limit)) {
+			ids.add((String) ranked.get("id"));
+		}
+		return ids;
+	}
+
+	private long rank(String id) {
+		return (Long) leaderboard.getRank(id).get("rank");
+	}
+
+	@Test
+	public void songsAreRankedByFavourites() {
+		leaderboard.songAdded(song(id(1), 5));
+		leaderboard.songAdded(song(id(2), 20));
+		leaderboard.songAdded(song(id(3), 10));
+
+		assertEquals(Arrays.asList(id(2), id(3), id(1)), topIds(10));
+		assertEquals(Arrays.asList(id(2), id(3)), topIds(2));
+		assertEquals(1, rank(id(2)));
+		assertEquals(2, rank(id(3)));
+		assertEquals(3, rank(id(1)));
+
+		Map<String, Object> top = leaderboard.getTop(1).get(0);
+		assertEquals(1L, top.get("rank"));
+		assertEquals("Song " + id(2), top.get(Song.KEY_SONG_NAME));
+		assertEquals("20", top.get(Song.KEY_SONG_AMOUNT_FAVOURITES));
+	}
+
+	@Test
+	public void tiesAreRankedById() {
+		leaderboard.songAdded(song(id(3), 7));
+		leaderboard.songAdded(song(id(1), 7));
+		leaderboard.songAdded(song(id(2), 7));
+
+		assertEquals(Arrays.asList(id(1), id(2), id(3)), topIds(10));
+		assertEquals(1, rank(id(1)));
+		assertEquals(3, rank(id(3)));
+	}
+
+	@Test
+	public void favouritesChangesMoveTheSong() {
+		leaderboard.songAdded(song(id(1), 1));
+		leaderboard.songAdded(song(id(2), 2));
+		leaderboard.songAdded(song(id(3), 3));
+
+		leaderboard.songFavouritesUpdated(song(id(1), 4), 3);
+		assertEquals(Arrays.asList(id(1), id(3), id(2)), topIds(10));
+		assertEquals(1, rank(id(1)));
+		assertEquals("4", leaderboard.getRank(id(1)).get(Song.KEY_SONG_AMOUNT_FAVOURITES));
+
+		// Falling into a tie
+		leaderboard.songFavouritesUpdated(song(id(1), 2), -2);
+		assertEquals(Arrays.asList(id(3), id(1), id(2)), topIds(10));
+		assertEquals(3, leaderboard.getTop(10).size());
+	}
+
+	@Test
+	public void updatesArrivingOutOfOrderAreAllCounted() {
+		leaderboard.songAdded(song(id(1), 0));
+		leaderboard.songAdded(song(id(2), 1));
+
+		// Two likes of song 1, the second notified first
+		leaderboard.songFavouritesUpdated(song(id(1), 2), 1);
+		leaderboard.songFavouritesUpdated(song(id(1), 1), 1);
+
+		assertEquals("2", leaderboard.getRank(id(1)).get(Song.KEY_SONG_AMOUNT_FAVOURITES));
+		assertEquals(Arrays.asList(id(1), id(2)), topIds(10));
+	}
+
+	@Test
+	public void updatesArrivingAfterADeleteDoNotRankTheSongAgain() {
+		leaderboard.songAdded(song(id(1), 5));
+		leaderboard.songAdded(song(id(2), 1));
+
+		leaderboard.songDeleted(song(id(1), 5));
+		leaderboard.songFavouritesUpdated(song(id(1), 6), 1);
+
+		assertNull(leaderboard.getRank(id(1)));
+		assertEquals(Arrays.asList(id(2)), topIds(10));
+	}
+
+	@Test
+	public void deletedSongsAreNoLongerRanked() {
+		leaderboard.songAdded(song(id(1), 30));
+		leaderboard.songAdded(song(id(2), 20));
+		leaderboard.songAdded(song(id(3), 10));
+
+		// Deleting the top song moves every other song up
+		leaderboard.songDeleted(song(id(1), 30));
+		assertNull(leaderboard.getRank(id(1)));
+		assertEquals(Arrays.asList(id(2), id(3)), topIds(10));
+		assertEquals(1, rank(id(2)));
+		assertEquals(2, rank(id(3)));
+
+		leaderboard.songDeleted(song(id(3), 10));
+		assertEquals(Arrays.asList(id(2)), topIds(10));
+
+		// Deleting a song that is not ranked changes nothing
+		leaderboard.songDeleted(song(id(4), 0));
+		assertEquals(Arrays.asList(id(2)), topIds(10));
+
+		leaderboard.songDeleted(song(id(2), 20));
+		assertTrue(leaderboard.getTop(10).isEmpty());
+	}
+
+	@Test
+	public void rankingMatchesASortedListAfterManyChanges() {
+		Random random = new Random(301);
+		Map<String, Long> expected = new HashMap<String, Long>();
+
+		for (int i = 0; i < 2000; i++) {
+			String songId = id(random.nextInt(200));
+			if (random.nextInt(4) == 0) {
+				leaderboard.songDeleted(song(songId, 0));
+				expected.remove(songId);
+			} else if (!expected.containsKey(songId)) {
+				// Few distinct counts, so many songs are tied
+				long songAmountFavourites = random.nextInt(10);
+				leaderboard.songAdded(song(songId, songAmountFavourites));
+				expected.put(songId, songAmountFavourites);
+			} else {
+				long delta = random.nextInt(5) - 2;
+				long songAmountFavourites = expected.get(songId) + delta;
+				leaderboard.songFavouritesUpdated(song(songId, songAmountFavourites), delta);
+				expected.put(songId, songAmountFavourites);
+			}
+		}
+
+		List<String> sorted = new ArrayList<String>(expected.keySet());
+		sorted.sort(Comparator.<String, Long>comparing(expected::get).reversed()
+				.thenComparing(Comparator.naturalOrder()));
+
+		assertEquals(sorted, topIds(Integer.MAX_VALUE));
+		assertEquals(sorted.subList(0, 5), topIds(5));
+		for (int i = 0; i < sorted.size(); i++) {
+			assertEquals(i + 1, rank(sorted.get(i)));
+		}
+	}
+}
@@ -6,7 +6,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest
+// Against the configured MongoDB, not the embedded one SongIndexesExplainTest starts
+@SpringBootTest(properties = "spring.autoconfigure.exclude="
+		+ "org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration")
 public class SongMicroserviceApplicationTests {
 
 	@Test
@@ -0,0 +1,216 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.InterServiceClient;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoCollection;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * Records and delivers song events against an in-process MongoDB stand-in, with the profile
+ * microservice mocked. The dispatcher is never started, so each test runs dispatch itself.
+ */
+public class SongOutboxTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private MongoTemplate db;
+	private MongoCollection<Document> stored;
+	private MongoCollection<Document> outbox;
+	private final InterServiceClient interServiceClient = mock(InterServiceClient.class);
+	private SongOutbox songOutbox;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws IOException {
+		server = new MongoServer(new MemoryBackend());
+		InetSocketAddress address = server.bind();
+		client = new MongoClient(new ServerAddress(address));
+		db = spy(new MongoTemplate(client, "outbox-test"));
+
+		// The outbox collection can be made to fail inserts
+		stored = db.getCollection(SongOutbox.COLLECTION);
+		outbox = mock(MongoCollection.class, delegatesTo(stored));
+		doReturn(outbox).when(db).getCollection(SongOutbox.COLLECTION);
+
+		when(interServiceClient.put(eq("profile"), any(), any())).thenReturn(status("OK"));
+		songOutbox = new SongOutbox(db, interServiceClient, 1000, 500, 30000);
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.shutdownNow();
+	}
+
+	private static Map<String, Object> status(String status) {
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("status", status);
+		return response;
+	}
+
+	private SongDalImpl songDal(SongChangeListener... listeners) {
+		return new SongDalImpl(db, new SongCache(100, 300, true),
+				new FavouritesWriteBehind(db, false, 500, 1000), songOutbox,
+				new SongIndexes(db, 5000), Arrays.asList(listeners));
+	}
+
+	private long pendingEvents() {
+		return (long) songOutbox.getStats().get("pendingEvents");
+	}
+
+	@Test
+	public void deliversRunsOfTheSameChangeInOrder() throws IOException {
+		songOutbox.record(SongOutbox.SONG_ADDED, Arrays.asList("a", "b"));
+		songOutbox.record(SongOutbox.SONG_DELETED, Collections.singletonList("a"));
+		songOutbox.record(SongOutbox.SONG_ADDED, Collections.singletonList("c"));
+
+		songOutbox.dispatch();
+
+		InOrder calls = inOrder(interServiceClient);
+		calls.verify(interServiceClient).put("profile", "/addSongsProfile", Arrays.asList("a", "b"));
+		calls.verify(interServiceClient).put("profile", "/deleteSongsFromDb", Arrays.asList("a"));
+		calls.verify(interServiceClient).put("profile", "/addSongsProfile", Arrays.asList("c"));
+		assertEquals(0, pendingEvents());
+		assertEquals(4L, songOutbox.getStats().get("delivered"));
+	}
+
+	@Test
+	public void failedDeliveriesAreKeptAndRetriedAfterABackoff() throws IOException {
+		when(interServiceClient.put(eq("profile"), any(), any())).thenReturn(status("NOT_OK"));
+		songOutbox.record(SongOutbox.SONG_ADDED, Collections.singletonList("a"));
+
+		songOutbox.dispatch();
+		assertEquals(1, pendingEvents());
+		assertEquals(1L, songOutbox.getStats().get("consecutiveFailures"));
+		assertTrue((long) songOutbox.getStats().get("nextRetryInMs") > 0);
+
+		// Still backing off, so nothing is sent
+		when(interServiceClient.put(eq("profile"), any(), any())).thenReturn(status("OK"));
+		songOutbox.dispatch();
+		assertEquals(1, pendingEvents());
+	}
+
+	@Test
+	public void eventsThatFailToBeStoredAreStoredAndDeliveredInOrderLater()
+			throws IOException, InterruptedException {
+		songOutbox = new SongOutbox(db, interServiceClient, 10, 500, 10);
+		doThrow(new MongoException("outbox unavailable")).when(outbox).insertMany(anyList());
+		assertFalse(songOutbox.record(SongOutbox.SONG_ADDED, Collections.singletonList("a")));
+		assertEquals(0, pendingEvents());
+		assertEquals(1, songOutbox.getStats().get("unrecordedEvents"));
+
+		// A later event that is stored waits behind the one kept in memory
+		doThrow(new MongoException("outbox unavailable")).when(outbox).insertOne(any());
+		doAnswer(delegatesTo(stored)).when(outbox).insertMany(anyList());
+		assertTrue(songOutbox.record(SongOutbox.SONG_DELETED, Collections.singletonList("a")));
+		songOutbox.dispatch();
+		verifyZeroInteractions(interServiceClient);
+		assertEquals(1, pendingEvents());
+		assertEquals(1, songOutbox.getStats().get("unrecordedEvents"));
+
+		// Once it is stored both are delivered, in the order they were recorded
+		doAnswer(delegatesTo(stored)).when(outbox).insertOne(any());
+		Thread.sleep(50);
+		songOutbox.dispatch();
+		InOrder calls = inOrder(interServiceClient);
+		calls.verify(interServiceClient).put("profile", "/addSongsProfile", Arrays.asList("a"));
+		calls.verify(interServiceClient).put("profile", "/deleteSongsFromDb", Arrays.asList("a"));
+		assertEquals(0, pendingEvents());
+		assertEquals(0, songOutbox.getStats().get("unrecordedEvents"));
+	}
+
+	@Test
+	public void addedSongIsNotReportedAsFailedWhenItsEventCannotBeStored() throws IOException {
+		doThrow(new MongoException("outbox unavailable")).when(outbox).insertMany(anyList());
+		SongDalImpl songDal = songDal();
+
+		Song song = new Song("Dreams", "Fleetwood Mac", "Rumours");
+		DbQueryStatus status = songDal.addSong(song);
+
+		assertEquals(DbQueryExecResult.QUERY_OK, status.getdbQueryExecResult());
+		assertEquals("Dreams", songDal.getSongTitleById(song.getId()).getData());
+		assertEquals(1, songOutbox.getStats().get("unrecordedEvents"));
+
+		// The event is stored and delivered by the next dispatch
+		songOutbox.dispatch();
+		verify(interServiceClient).put("profile", "/addSongsProfile",
+				Collections.singletonList(song.getId()));
+		assertEquals(0, songOutbox.getStats().get("unrecordedEvents"));
+		assertEquals(0, pendingEvents());
+	}
+
+	@Test
+	public void deleteRacingAnAddIsRecordedAndNotifiedAfterIt() throws Exception {
+		SongChangeListener listener = mock(SongChangeListener.class);
+		SongDalImpl songDal = songDal(listener);
+
+		// Hold the add between inserting the song and storing its event
+		CountDownLatch recording = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			recording.countDown();
+			release.await();
+			return delegatesTo(stored).answer(invocation);
+		}).when(outbox).insertMany(anyList());
+
+		Song song = new Song("Dreams", "Fleetwood Mac", "Rumours");
+		song.setId(new ObjectId());
+		Thread adder = new Thread(() -> songDal.addSong(song));
+		adder.start();
+		recording.await();
+
+		// The delete finds the song but waits for the add to be recorded
+		Thread deleter = new Thread(() -> songDal.deleteSongById(song.getId()));
+		deleter.start();
+		deleter.join(200);
+		assertTrue(deleter.isAlive());
+
+		release.countDown();
+		adder.join();
+		deleter.join();
+
+		songOutbox.dispatch();
+		InOrder calls = inOrder(interServiceClient, listener);
+		calls.verify(listener).songAdded(song);
+		calls.verify(listener).songDeleted(any());
+		calls.verify(interServiceClient).put("profile", "/addSongsProfile",
+				Collections.singletonList(song.getId()));
+		calls.verify(interServiceClient).put("profile", "/deleteSongsFromDb",
+				Collections.singletonList(song.getId()));
+	}
+}
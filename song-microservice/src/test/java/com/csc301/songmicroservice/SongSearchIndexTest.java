@@ -0,0 +1,102 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SongSearchIndexTest {
+
+	private SongSearchIndex index;
+	private Song delilah;
+	private Song dreams;
+	private Song tuesday;
+
+	@Before
+	public void setUp() {
+		index = new SongSearchIndex(null, null);
+		delilah = addSong("Hey There Delilah", "Plain White T's", "All That We Needed", 10);
+		dreams = addSong("Dreams", "Fleetwood Mac", "Rumours", 50);
+		tuesday = addSong("Ruby Tuesday", "The Rolling Stones", "Between the Buttons", 30);
+	}
+
+	private Song addSong(String songName, String songArtistFullName, String songAlbum,
+			long songAmountFavourites) {
+		Song song = new Song(songName, songArtistFullName, songAlbum);
+		song.setId(new ObjectId());
+		song.setSongAmountFavourites(songAmountFavourites);
+		index.songAdded(song);
+		return song;
+	}
+
+	private static Song withFavourites(Song song, long songAmountFavourites) {
+		Song updated = new Song(song.getSongName(), song.getSongArtistFullName(),
+				song.getSongAlbum());
+		updated.setId(song._id);
+		updated.setSongAmountFavourites(songAmountFavourites);
+		return updated;
+	}
+
+	private static List<String> ids(List<Map<String, String>> results) {
+		List<String> ids = new ArrayList<String>();
+		for (Map<String, String> result : results) {
+			ids.add(result.get("id"));
+		}
+		return ids;
+	}
+
+	@Test
+	public void searchMatchesEveryWordAcrossFields() {
+		assertEquals(listOf(delilah), ids(index.search("delilah WHITE", 10)));
+		assertTrue(index.search("delilah rumours", 10).isEmpty());
+	}
+
+	@Test
+	public void autocompleteRanksPrefixMatchesByFavourites() {
+		assertEquals(listOf(dreams, tuesday), ids(index.autocomplete("ru", 10)));
+		assertEquals(listOf(dreams), ids(index.autocomplete("ru", 1)));
+	}
+
+	@Test
+	public void followsFavouritesUpdatesAndDeletes() {
+		tuesday.setSongAmountFavourites(60);
+		index.songFavouritesUpdated(tuesday, 30);
+		assertEquals(listOf(tuesday, dreams), ids(index.autocomplete("ru", 10)));
+
+		index.songDeleted(dreams);
+		assertEquals(listOf(tuesday), ids(index.autocomplete("ru", 10)));
+		assertTrue(index.search("fleetwood", 10).isEmpty());
+	}
+
+	@Test
+	public void countsUpdatesArrivingOutOfOrder() {
+		// Two likes, the second notified first
+		index.songFavouritesUpdated(withFavourites(tuesday, 32), 1);
+		index.songFavouritesUpdated(withFavourites(tuesday, 31), 1);
+
+		assertEquals("32",
+				index.search("tuesday", 10).get(0).get(Song.KEY_SONG_AMOUNT_FAVOURITES));
+	}
+
+	@Test
+	public void updatesArrivingAfterADeleteDoNotAddTheSongBack() {
+		index.songDeleted(dreams);
+		index.songFavouritesUpdated(withFavourites(dreams, 51), 1);
+
+		assertTrue(index.search("fleetwood", 10).isEmpty());
+		assertEquals(listOf(tuesday), ids(index.autocomplete("ru", 10)));
+	}
+
+	private static List<String> listOf(Song... songs) {
+		List<String> ids = new ArrayList<String>();
+		for (Song song : songs) {
+			ids.add(song.getId());
+		}
+		return ids;
+	}
+}
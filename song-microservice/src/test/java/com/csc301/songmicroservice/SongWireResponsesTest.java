@@ -0,0 +1,73 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import com.csc301.interservice.DbQueryExecResult;
+import com.csc301.interservice.SongWireCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SongWireResponsesTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void resultsKeepTheirStatus() throws Exception {
+		Map<String, String> titles = new HashMap<String, String>();
+		titles.put(new ObjectId().toHexString(), "Dreams");
+		DbQueryStatus found = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+		found.setData(titles);
+		SongWireCodec.Result<Map<String, String>> decodedTitles =
+				SongWireCodec.decodeTitlesResponse(SongWireResponses.encodeTitles(found));
+		assertEquals(SongWireCodec.Status.OK, decodedTitles.getStatus());
+		assertEquals(titles, decodedTitles.getData());
+
+		DbQueryStatus updated = new DbQueryStatus("Update Successful", DbQueryExecResult.QUERY_OK);
+		updated.setData(42L);
+		assertEquals(Long.valueOf(42), SongWireCodec
+				.decodeFavouritesResponse(SongWireResponses.encodeFavourites(updated)).getData());
+
+		DbQueryStatus notFound =
+				new DbQueryStatus("Song not Found", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		assertEquals(SongWireCodec.Status.NOT_FOUND, SongWireCodec
+				.decodeFavouritesResponse(SongWireResponses.encodeFavourites(notFound)).getStatus());
+
+		DbQueryStatus failed =
+				new DbQueryStatus("Could Not update song", DbQueryExecResult.QUERY_ERROR_GENERIC);
+		assertEquals(SongWireCodec.Status.ERROR, SongWireCodec
+				.decodeTitlesResponse(SongWireResponses.encodeTitles(failed)).getStatus());
+	}
+
+	@Test
+	public void binaryIsAtLeastFortyPercentSmallerThanJson() throws Exception {
+		List<String> songIds = new ArrayList<String>();
+		Map<String, String> titles = new HashMap<String, String>();
+		for (int i = 0; i < 500; i++) {
+			String songId = new ObjectId().toHexString();
+			songIds.add(songId);
+			titles.put(songId, "Song " + i);
+		}
+		DbQueryStatus found = new DbQueryStatus("Search Successful", DbQueryExecResult.QUERY_OK);
+		found.setData(titles);
+
+		// The JSON route takes a JSON array and answers with path, message, status and data
+		Map<String, Object> jsonResponse = new HashMap<String, Object>();
+		jsonResponse.put("path", "POST http://localhost:3001/getSongTitlesByIds");
+		jsonResponse.put("message", found.getMessage());
+		jsonResponse = Utils.setResponseStatus(jsonResponse, found.getdbQueryExecResult(),
+				found.getData());
+
+		int jsonBytes = mapper.writeValueAsBytes(songIds).length
+				+ mapper.writeValueAsBytes(jsonResponse).length;
+		int binaryBytes = SongWireCodec.encodeTitlesRequest(songIds).length
+				+ SongWireResponses.encodeTitles(found).length;
+		assertTrue("binary " + binaryBytes + " bytes, JSON " + jsonBytes + " bytes",
+				binaryBytes * 10 < jsonBytes * 6);
+	}
+}